@@ -3,16 +3,27 @@ package software.amazon.samples;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.SneakyThrows;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.samples.backpressure.BackpressureController;
+import software.amazon.samples.backpressure.ConnectorHealthCache;
+import software.amazon.samples.metrics.RouterMetrics;
 import software.amazon.samples.module.AppConfigModule;
 import software.amazon.samples.module.RedisModule;
+import software.amazon.samples.payload.PayloadProjector;
+import software.amazon.samples.transform.TransformCache;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Handler for requests to Lambda function.
@@ -21,7 +32,7 @@ import java.util.Base64;
  * @version 1.0 20 Oct 2021
  */
 
-public class MessageRouterLambda implements RequestHandler<KinesisEvent, String> {
+public class MessageRouterLambda implements RequestHandler<KinesisEvent, StreamsEventResponse> {
 
     private static final String STATUS_EVENT_TYPE_PROPERTY = "eventType";
     private static final String STATUS_CONNECTED_VALUE = "connected";
@@ -29,16 +40,41 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
     private static final String KINESIS_INFO = "kinesis";
     private static final String KINESIS_INFO_PARTITION_KEY_PROPERTY = "partitionKey";
     private static final String KINESIS_INFO_DATA = "data";
+    private static final String KINESIS_INFO_SEQUENCE_NUMBER = "sequenceNumber";
 
     private static final Logger logger = LoggerFactory.getLogger(
             MessageRouterLambda.class + "::LAMBDA_BODY");
 
-    final AppConfigModule config = AppConfigModule.getInstance();
-    final RedisModule redis = RedisModule.getInstance();
+    final AppConfigModule config;
+    final RedisModule redis;
+    final RouterMetrics metrics = RouterMetrics.getInstance();
+    final PayloadProjector projector = new PayloadProjector(new ObjectMapper());
+    final TransformCache transforms;
+    final BackpressureController backpressure;
+
+    public MessageRouterLambda() {
+        this(AppConfigModule.getInstance(), RedisModule.getInstance());
+    }
+
+    MessageRouterLambda(final AppConfigModule config, final RedisModule redis) {
+        this.config = config;
+        this.redis = redis;
+        this.transforms = new TransformCache(config.getTransformExpressionIndicator(),
+                                             config.getModelParametersDataTypeIndicator());
+        this.backpressure = new BackpressureController(
+                config.getBackpressurePolicy(),
+                new ConnectorHealthCache(redis, config.getHealthHashName(),
+                                         config.getBackpressureHealthCacheTtlInMillis()),
+                metrics, config.getBackpressureMaxQueueDepth(),
+                config.getBackpressureMaxProcessingLagInMillis(),
+                config.getBackpressureHealthStaleAfterInMillis(),
+                config.getBackpressureDownsampleRate());
+    }
 
     @SneakyThrows
     @Override
-    public String handleRequest(final KinesisEvent kinesisEvent, final Context context) {
+    public StreamsEventResponse handleRequest(final KinesisEvent kinesisEvent,
+                                              final Context context) {
 
         // Get event JSON from Kinesis
         ObjectMapper mapper = new ObjectMapper();
@@ -64,23 +100,39 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
             throw new Exception("Lambda triggered with empty records array!");
         }
 
+        metrics.reset();
+
         // Connect to the Redis
         if (!redis.connect(config.getRedisConfigurationEndpoint())) {
             logger.error("Can't connect to redis", logger.isErrorEnabled());
             throw new Exception("Can't connect to redis");
         }
 
-        boolean everythingOk = true;
+        // Records to be redelivered by Kinesis, which resumes from the lowest sequence number
+        List<StreamsEventResponse.BatchItemFailure> batchItemFailures = new ArrayList<>();
         try {
 
             // Loop through each record in Kinesis event
             int recordIndex = -1;
             for (final JsonNode recordNode : recordsArrayNode) {
+                recordIndex++;
+
+                // Stop before the Lambda times out, so only the unprocessed tail is retried
+                // instead of the whole batch
+                if (isDeadlineClose(context)) {
+                    int unprocessed = reportUnprocessedTail(recordsArrayNode, recordIndex,
+                                                            batchItemFailures);
+                    metrics.increment("earlyExits");
+                    metrics.add("unprocessedRecords", unprocessed);
+                    logger.warn("Lambda remaining time below {} ms, {} of {} records left " +
+                                        "for redelivery", config.getDeadlineSafetyMarginInMillis(),
+                                unprocessed, recordCount, logger.isWarnEnabled());
+                    break;
+                }
 
                 try {
                     logger.debug("======================== BEGIN MESSAGE ========================",
                                  logger.isDebugEnabled());
-                    recordIndex++;
 
                     logger.debug("One record from Kinesis: {}", recordNode.toString(),
                                  logger.isDebugEnabled());
@@ -110,58 +162,80 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
                     String partitionKey = partitionKeyNode.asText();
                     logger.debug("partitionKey=[{}]", partitionKey, logger.isDebugEnabled());
 
-                    // Get payload from the record
-                    JsonNode payload = getPayloadNodeFromKinesisNode(kinesisInfo);
-                    logger.debug("Kinesis data payload: {}", payload,
-                                 logger.isDebugEnabled());
-                    if (!thisIsNodeWithValue(payload)) {
+                    // Get payload from the record. It is parsed later, once the thing model
+                    // is known, so that properties outside the model are never materialized.
+                    byte[] payloadData = getPayloadDataFromKinesisNode(kinesisInfo);
+                    if (payloadData == null || payloadData.length == 0) {
                         logger.warn("Row {} from the batch has no payload", recordIndex,
                                     logger.isWarnEnabled());
                         continue;
                     }
 
                     //handle extracted message
-                    handleMessage(thisIsStatusMessage(payload), recordIndex, partitionKey, payload);
+                    handleMessage(recordIndex, partitionKey, payloadData);
 
                     logger.debug("========================== END MESSAGE ========================",
                                  logger.isDebugEnabled());
 
                 } catch (Exception e) {
-                    everythingOk = false;
+                    addBatchItemFailure(recordNode, batchItemFailures);
                     logger.error("Row {} from the batch throws exception: {}", recordIndex,
                                  e.getMessage(), logger.isErrorEnabled());
                 }
             }
+
+            // Send the latest telemetry of devices conflated in this batch
+            backpressure.flush(this::sendMessageToInstance);
         } finally {
             redis.disconnect();
+            metrics.logSummary();
         }
 
-        if (everythingOk) {
+        if (batchItemFailures.isEmpty()) {
             logger.info("Kinesis Event handled successfully", logger.isInfoEnabled());
-            return "200 OK";
         } else {
-            throw new Exception("Kinesis Event handled with lambda internal error");
+            logger.error("Kinesis Event handled with {} records reported for redelivery",
+                         batchItemFailures.size(), logger.isErrorEnabled());
         }
+        return new StreamsEventResponse(batchItemFailures);
     }
 
+    private boolean isDeadlineClose(final Context context) {
+        return context != null
+                && context.getRemainingTimeInMillis() < config.getDeadlineSafetyMarginInMillis();
+    }
 
-    @SneakyThrows
-    private boolean handleMessage(final boolean isStatusMessage, final int recordIndex,
-                                  final String partitionKey,
-                                  final JsonNode payload) {
+    private int reportUnprocessedTail(final JsonNode recordsArrayNode, final int fromIndex,
+                                      final List<StreamsEventResponse.BatchItemFailure> failures) {
+        for (int i = fromIndex; i < recordsArrayNode.size(); i++) {
+            addBatchItemFailure(recordsArrayNode.get(i), failures);
+        }
+        return recordsArrayNode.size() - fromIndex;
+    }
 
-        if (isStatusMessage) {
-            logger.debug("--> This is a status message", logger.isDebugEnabled());
+    private void addBatchItemFailure(final JsonNode recordNode,
+                                     final List<StreamsEventResponse.BatchItemFailure> failures) {
+        JsonNode sequenceNumberNode = recordNode.path(KINESIS_INFO)
+                                                .path(KINESIS_INFO_SEQUENCE_NUMBER);
+        if (thisIsNodeWithValue(sequenceNumberNode)) {
+            failures.add(new StreamsEventResponse.BatchItemFailure(sequenceNumberNode.asText()));
         } else {
-            logger.debug("--> This is a device metrics message", logger.isDebugEnabled());
+            logger.error("Record without sequence number can't be reported for redelivery",
+                         logger.isErrorEnabled());
         }
+    }
+
+
+    @SneakyThrows
+    private boolean handleMessage(final int recordIndex, final String partitionKey,
+                                  final byte[] payloadData) {
 
         String clientId = partitionKey;
 
         // Check clientId - exists?
         if (doesntHaveValue(clientId)) {
-            logger.warn("Row {} from the batch with payload [ {} ] has no clientId",
-                        recordIndex, payload, logger.isWarnEnabled());
+            logger.warn("Row {} from the batch has no clientId", recordIndex,
+                        logger.isWarnEnabled());
             return false;
         }
 
@@ -174,8 +248,8 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
                     "Row {} from the batch witch clientId={}, this key is reserved in the redis.",
                     recordIndex, clientId, logger.isErrorEnabled());
         }
-        logger.debug("Row {} from the batch: clientId={}, payload={}, Redis deviceData={}",
-                     recordIndex, clientId, payload, deviceData, logger.isDebugEnabled());
+        logger.debug("Row {} from the batch: clientId={}, Redis deviceData={}",
+                     recordIndex, clientId, deviceData, logger.isDebugEnabled());
 
         if (deviceData == null || deviceData.isEmpty()) {
             logger.error("Data from not registered device [{}] - ignored", clientId,
@@ -183,13 +257,32 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
         } else {
 
             ObjectMapper mapper = new ObjectMapper();
+            ObjectNode finalJson = (ObjectNode) mapper.readTree(deviceData);
+
+            JsonNode payload = readPayload(payloadData, clientId, deviceData, finalJson);
+            logger.debug("Kinesis data payload: {}", payload, logger.isDebugEnabled());
+            if (!thisIsNodeWithValue(payload)) {
+                logger.warn("Row {} from the batch has no payload", recordIndex,
+                            logger.isWarnEnabled());
+                return false;
+            }
+
+            boolean isStatusMessage = thisIsStatusMessage(payload);
+            if (isStatusMessage) {
+                logger.debug("--> This is a status message", logger.isDebugEnabled());
+            } else {
+                logger.debug("--> This is a device metrics message", logger.isDebugEnabled());
+                // Transform inputs which are not model properties are removed once used
+                applyTransforms(clientId, deviceData, payload, finalJson);
+                retainModelProperties(payload, finalJson);
+            }
+
             // Prepare parts of the message to send to topic according to payload type
             // (measurement from the device, or status from the AWS)
             JsonNode payloadJson = null;
             if (!isStatusMessage) {
                 payloadJson = payload;
             }
-            ObjectNode finalJson = (ObjectNode) mapper.readTree(deviceData);
 
             JsonNode topicNode = finalJson.path(config.getInstanceIndicator());
             if (!thisIsNodeWithValue(topicNode)) {
@@ -228,7 +321,13 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
                     prepareJsonToSend(isStatusMessage, payloadJson, finalJson, statusToSend,
                                       clientId);
                     String redisPayload = finalJson.toString();
-                    sendMessageToInstance(clientId, topic, redisPayload);
+                    if (isStatusMessage) {
+                        backpressure.flushDevice(clientId, this::sendMessageToInstance);
+                        sendMessageToInstance(clientId, topic, redisPayload);
+                    } else {
+                        backpressure.sendTelemetry(clientId, topic, redisPayload,
+                                                   this::sendMessageToInstance);
+                    }
 
                 } else {
                     logger.error("Device with clientId={} has message with unsupperted status {}" +
@@ -270,12 +369,22 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
                 clientId, topic,
                 messagesSent, redisPayload, logger.isDebugEnabled());
 
-        // If there is no subscriber, or if there is more than one subscriber, log error.
-        // Should be precisely one subscriber.
+        // If there is no subscriber, park the message until the instance subscribes.
+        // If there is more than one subscriber, log error. Should be precisely one subscriber.
         if (messagesSent == 0) {
-            logger.error("Device {} sends payload to topic {}, " +
-                                 "but it hasn't subscriber", clientId, topic,
-                         logger.isErrorEnabled());
+            if (config.getParkedMessagesMaxMessages() > 0) {
+                redis.parkString(topic + config.getParkedMessagesKeySuffix(), redisPayload,
+                                 config.getParkedMessagesMaxMessages(),
+                                 config.getParkedMessagesTtlInSeconds());
+                metrics.increment("parkedMessages");
+                logger.warn("Device {} sends payload to topic {}, " +
+                                    "but it hasn't subscriber - message parked", clientId, topic,
+                            logger.isWarnEnabled());
+            } else {
+                logger.error("Device {} sends payload to topic {}, " +
+                                     "but it hasn't subscriber", clientId, topic,
+                             logger.isErrorEnabled());
+            }
         } else if (messagesSent > 1) {
             logger.error("Device {} sends payload to topic {}, " +
                                  "but it has {} subscribers", clientId, topic,
@@ -312,22 +421,80 @@ public class MessageRouterLambda implements RequestHandler<KinesisEvent, String>
     }
 
 
-    private JsonNode getPayloadNodeFromKinesisNode(final JsonNode kinesis) {
+    private byte[] getPayloadDataFromKinesisNode(final JsonNode kinesis) {
 
-        JsonNode payloadNode = null;
+        byte[] payloadData = null;
         try {
             JsonNode dataNode = kinesis.path(KINESIS_INFO_DATA);
             if (thisIsNodeWithValue(dataNode)) {
-                byte[] decodedDataBytes = Base64.getDecoder().decode(dataNode.asText());
-                String decodedData = new String(decodedDataBytes);
-                ObjectMapper mapper = new ObjectMapper();
-                payloadNode = mapper.readTree(decodedData);
+                payloadData = Base64.getDecoder().decode(dataNode.asText());
             }
         } catch (Exception e) {
             logger.error("Message from Kinesis get payload exception: {}", e.getMessage(),
                          logger.isErrorEnabled());
         }
-        return payloadNode;
+        return payloadData;
+    }
+
+    private JsonNode readPayload(final byte[] payloadData, final String clientId,
+                                 final String deviceData, final ObjectNode deviceJson) {
+
+        try {
+            JsonNode modelNode = deviceJson.path(config.getThingModelIndicator());
+            if (!config.isPayloadProjectionEnabled() || !modelNode.isObject()) {
+                return new ObjectMapper().readTree(payloadData);
+            }
+
+            // Keep the model properties, the inputs of the transforms and whatever is needed to
+            // recognize a status message
+            Set<String> keysToKeep = getModelPropertyNames(modelNode);
+            keysToKeep.add(config.getClientStatusMessageIndicatorName());
+            keysToKeep.add(STATUS_EVENT_TYPE_PROPERTY);
+            if (config.isTransformEnabled()) {
+                transforms.get(clientId, deviceData, modelNode)
+                          .ifPresent(transform -> keysToKeep.addAll(transform.getInputNames()));
+            }
+
+            PayloadProjector.Projection projection = projector.project(payloadData, keysToKeep);
+            metrics.increment("projectedPayloads");
+            metrics.add("projectionBytesIn", payloadData.length);
+            metrics.add("projectionBytesRemoved", projection.getRemovedBytes());
+            return projection.getPayload();
+        } catch (IOException e) {
+            logger.error("Message from Kinesis get payload exception: {}", e.getMessage(),
+                         logger.isErrorEnabled());
+            return null;
+        }
+    }
+
+    private void retainModelProperties(final JsonNode payload, final ObjectNode deviceJson) {
+
+        // Status keys were only kept to recognize the message type
+        JsonNode modelNode = deviceJson.path(config.getThingModelIndicator());
+        if (config.isPayloadProjectionEnabled() && modelNode.isObject() && payload.isObject()) {
+            ((ObjectNode) payload).retain(getModelPropertyNames(modelNode));
+        }
+    }
+
+    private void applyTransforms(final String clientId, final String deviceData,
+                                 final JsonNode payload, final ObjectNode deviceJson) {
+
+        JsonNode modelNode = deviceJson.path(config.getThingModelIndicator());
+        if (!config.isTransformEnabled() || !modelNode.isObject() || !payload.isObject()) {
+            return;
+        }
+        transforms.get(clientId, deviceData, modelNode).ifPresent(transform -> {
+            long start = System.nanoTime();
+            int transformedProperties = transform.apply((ObjectNode) payload);
+            metrics.add("transformNanos", System.nanoTime() - start);
+            metrics.add("transformedProperties", transformedProperties);
+        });
+    }
+
+    private Set<String> getModelPropertyNames(final JsonNode modelNode) {
+        Set<String> propertyNames = new HashSet<>();
+        modelNode.fieldNames().forEachRemaining(propertyNames::add);
+        return propertyNames;
     }
 
     private boolean doesntHaveValue(final String s) {
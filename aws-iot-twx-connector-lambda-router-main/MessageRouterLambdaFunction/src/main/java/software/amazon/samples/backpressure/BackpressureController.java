@@ -0,0 +1,138 @@
+package software.amazon.samples.backpressure;
+
+import software.amazon.samples.metrics.RouterMetrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the backpressure policy to telemetry going to saturated connector instances.
+ * <p>
+ * Conflated messages are held until the end of the batch, or until a status message of the
+ * same device is sent, so a device never sees its telemetry overtake its own disconnect.
+ * Downsampling counters survive between invocations, otherwise every batch would forward the
+ * first message of each device. Instances are not thread safe.
+ */
+
+public class BackpressureController {
+
+    private static final int MAX_DOWNSAMPLE_COUNTERS = 10000;
+
+    private final BackpressurePolicy policy;
+    private final ConnectorHealthCache healthCache;
+    private final RouterMetrics metrics;
+    private final long maxQueueDepth;
+    private final long maxProcessingLagMillis;
+    private final long staleAfterMillis;
+    private final int downsampleRate;
+
+    private final Map<String, PendingMessage> conflated = new LinkedHashMap<>();
+    private final Map<String, Integer> downsampleCounters =
+            new LinkedHashMap<String, Integer>() {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_DOWNSAMPLE_COUNTERS;
+                }
+            };
+
+    public BackpressureController(final BackpressurePolicy policy,
+                                  final ConnectorHealthCache healthCache,
+                                  final RouterMetrics metrics, final long maxQueueDepth,
+                                  final long maxProcessingLagMillis, final long staleAfterMillis,
+                                  final int downsampleRate) {
+        this.policy = policy;
+        this.healthCache = healthCache;
+        this.metrics = metrics;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxProcessingLagMillis = maxProcessingLagMillis;
+        this.staleAfterMillis = staleAfterMillis;
+        this.downsampleRate = Math.max(1, downsampleRate);
+    }
+
+    /**
+     * Sends a telemetry message, or conflates, downsamples or sheds it when the instance behind
+     * the topic is saturated.
+     */
+    public void sendTelemetry(final String clientId, final String topic, final String payload,
+                              final MessageSender sender) {
+        if (policy == BackpressurePolicy.NONE || !isSaturated(topic)) {
+            flushDevice(clientId, sender);
+            sender.send(clientId, topic, payload);
+            return;
+        }
+        switch (policy) {
+            case CONFLATE:
+                if (conflated.put(clientId, new PendingMessage(clientId, topic, payload)) != null) {
+                    metrics.increment("conflatedMessages");
+                }
+                break;
+            case DOWNSAMPLE:
+                int count = downsampleCounters.getOrDefault(clientId, 0);
+                downsampleCounters.put(clientId, (count + 1) % downsampleRate);
+                if (count == 0) {
+                    sender.send(clientId, topic, payload);
+                } else {
+                    metrics.increment("downsampledMessages");
+                }
+                break;
+            case SHED:
+                metrics.increment("shedMessages");
+                break;
+            default:
+                sender.send(clientId, topic, payload);
+        }
+    }
+
+    /**
+     * Sends the conflated message of a device ahead of a status message.
+     */
+    public void flushDevice(final String clientId, final MessageSender sender) {
+        PendingMessage pending = conflated.remove(clientId);
+        if (pending != null) {
+            sender.send(pending.clientId, pending.topic, pending.payload);
+        }
+    }
+
+    /**
+     * Sends all conflated messages, called at the end of each batch.
+     */
+    public void flush(final MessageSender sender) {
+        List<PendingMessage> pendingMessages = new ArrayList<>(conflated.values());
+        conflated.clear();
+        for (PendingMessage pending : pendingMessages) {
+            sender.send(pending.clientId, pending.topic, pending.payload);
+        }
+    }
+
+    private boolean isSaturated(final String topic) {
+        ConnectorHealth health = healthCache.get(topic);
+        boolean saturated = health != null && health.isSaturated(
+                maxQueueDepth, maxProcessingLagMillis, staleAfterMillis,
+                System.currentTimeMillis());
+        if (saturated) {
+            metrics.increment("saturatedTopicMessages");
+        }
+        return saturated;
+    }
+
+    /**
+     * Publishes a message to an instance topic.
+     */
+    public interface MessageSender {
+        void send(String clientId, String topic, String payload);
+    }
+
+    private static class PendingMessage {
+        private final String clientId;
+        private final String topic;
+        private final String payload;
+
+        private PendingMessage(final String clientId, final String topic, final String payload) {
+            this.clientId = clientId;
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+}
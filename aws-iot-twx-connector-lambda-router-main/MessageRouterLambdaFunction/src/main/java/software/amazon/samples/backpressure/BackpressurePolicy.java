@@ -0,0 +1,17 @@
+package software.amazon.samples.backpressure;
+
+/**
+ * What the router does with telemetry for a connector instance that reports saturation. Status
+ * messages are always forwarded.
+ */
+
+public enum BackpressurePolicy {
+    /** Forward everything, the connector health is ignored */
+    NONE,
+    /** Forward only the latest telemetry message of each device in a batch */
+    CONFLATE,
+    /** Forward every n-th telemetry message of each device */
+    DOWNSAMPLE,
+    /** Drop telemetry until the connector recovers */
+    SHED
+}
@@ -0,0 +1,63 @@
+package software.amazon.samples.backpressure;
+
+/**
+ * Health record published by a connector instance, in the form
+ * {@code queueDepth,processingLagMillis,thingworxLatencyMillis,timestampMillis}.
+ */
+
+public class ConnectorHealth {
+
+    private final long queueDepth;
+    private final long processingLagMillis;
+    private final long thingworxLatencyMillis;
+    private final long timestampMillis;
+
+    private ConnectorHealth(final long queueDepth, final long processingLagMillis,
+                            final long thingworxLatencyMillis, final long timestampMillis) {
+        this.queueDepth = queueDepth;
+        this.processingLagMillis = processingLagMillis;
+        this.thingworxLatencyMillis = thingworxLatencyMillis;
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * @param record health record from Redis
+     * @return parsed record, or null when the record is malformed
+     */
+    public static ConnectorHealth parse(final String record) {
+        if (record == null) {
+            return null;
+        }
+        String[] fields = record.split(",");
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            return new ConnectorHealth(Long.parseLong(fields[0].trim()),
+                                       Long.parseLong(fields[1].trim()),
+                                       Long.parseLong(fields[2].trim()),
+                                       Long.parseLong(fields[3].trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A record older than staleAfterMillis says nothing about the instance, which is then
+     * treated as healthy, so a stopped publisher never blocks telemetry.
+     */
+    public boolean isSaturated(final long maxQueueDepth, final long maxProcessingLagMillis,
+                               final long staleAfterMillis, final long nowMillis) {
+        if (nowMillis - timestampMillis > staleAfterMillis) {
+            return false;
+        }
+        return queueDepth >= maxQueueDepth || processingLagMillis >= maxProcessingLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + queueDepth + ", processingLagMillis=" + processingLagMillis
+                + ", thingworxLatencyMillis=" + thingworxLatencyMillis
+                + ", timestampMillis=" + timestampMillis;
+    }
+}
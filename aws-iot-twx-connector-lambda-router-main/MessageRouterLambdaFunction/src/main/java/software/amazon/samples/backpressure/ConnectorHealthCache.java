@@ -0,0 +1,79 @@
+package software.amazon.samples.backpressure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.samples.module.RedisModule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Health of all connector instances, read from a single Redis hash at most once per TTL. The
+ * hash field is the instance topic. Survives between invocations of a warm Lambda container.
+ */
+
+public class ConnectorHealthCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(
+            ConnectorHealthCache.class + "::LAMBDA_BODY");
+
+    private final Supplier<Map<String, String>> reader;
+    private final String hashName;
+    private final long ttlMillis;
+
+    private Map<String, ConnectorHealth> healthByTopic = Collections.emptyMap();
+    private boolean loaded;
+    private long loadedAtMillis;
+
+    public ConnectorHealthCache(final RedisModule redis, final String hashName,
+                                final long ttlMillis) {
+        this(() -> redis.getStringMap(hashName), hashName, ttlMillis);
+    }
+
+    ConnectorHealthCache(final Supplier<Map<String, String>> reader, final String hashName,
+                         final long ttlMillis) {
+        this.reader = reader;
+        this.hashName = hashName;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param topic instance topic
+     * @return last known health of the instance, or null when it publishes none
+     */
+    public ConnectorHealth get(final String topic) {
+        return get(topic, System.currentTimeMillis());
+    }
+
+    ConnectorHealth get(final String topic, final long nowMillis) {
+        if (!loaded || nowMillis - loadedAtMillis >= ttlMillis) {
+            load(nowMillis);
+        }
+        return healthByTopic.get(topic);
+    }
+
+    private void load(final long now) {
+        // A failed read keeps the previous state, the next message retries after the TTL
+        loaded = true;
+        loadedAtMillis = now;
+        try {
+            Map<String, ConnectorHealth> loadedHealth = new HashMap<>();
+            reader.get().forEach((topic, record) -> {
+                ConnectorHealth health = ConnectorHealth.parse(record);
+                if (health == null) {
+                    logger.warn("Malformed health record [{}] of instance {} - ignored", record,
+                                topic, logger.isWarnEnabled());
+                } else {
+                    loadedHealth.put(topic, health);
+                }
+            });
+            healthByTopic = loadedHealth;
+            logger.debug("Connector health loaded: {}", healthByTopic, logger.isDebugEnabled());
+        } catch (Exception e) {
+            logger.error("Couldn't read connector health from {}: {}", hashName, e.getMessage(),
+                         logger.isErrorEnabled());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package software.amazon.samples.metrics;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counters collected while handling one Kinesis batch. They are written to the log as one
+ * summary line at the end of the invocation, so they can be extracted with CloudWatch Logs
+ * Insights or a metric filter.
+ */
+
+public class RouterMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(
+            RouterMetrics.class + "::LAMBDA_BODY");
+
+    @Getter
+    private static final RouterMetrics instance = new RouterMetrics();
+
+    // Lambda handles one batch at a time per container, no synchronization needed
+    private final Map<String, Long> counters = new TreeMap<>();
+
+    private RouterMetrics() {
+    }
+
+    public void reset() {
+        counters.clear();
+    }
+
+    public void increment(final String name) {
+        add(name, 1);
+    }
+
+    public void add(final String name, final long delta) {
+        counters.merge(name, delta, Long::sum);
+    }
+
+    public long get(final String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    public void logSummary() {
+        logger.info("Router metrics: {}", counters, logger.isInfoEnabled());
+    }
+}
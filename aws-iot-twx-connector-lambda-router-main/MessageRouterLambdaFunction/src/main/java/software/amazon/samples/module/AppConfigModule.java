@@ -7,6 +7,7 @@ import lombok.Getter;
 import lombok.SneakyThrows;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.samples.backpressure.BackpressurePolicy;
 import software.amazon.samples.appconfig.cache.ConfigurationCache;
 import software.amazon.samples.appconfig.model.ConfigurationKey;
 import software.amazon.samples.appconfig.utils.AppConfigUtility;
@@ -48,23 +49,56 @@ public class AppConfigModule {
     private static final String INSTANCE_INDICATOR = "instanceIndicator";
     private static final String THING_MODEL_INDICATOR = "thingModelIndicator";
     private static final String THING_NAME_INDICATOR = "thingNameIndicator";
+    private static final String MODEL_PARAMETERS_DATA_TYPE_INDICATOR =
+            "modelParametersDataTypeIndicator";
     private static final String THING_CONNECTION_STATUSES = "thingConnectionStatuses";
     private static final String THING_CONNECTION_STATUS_CONNECTED = "connected";
     private static final String THING_CONNECTION_STATUS_DISCONNECTED = "disconnected";
+    private static final String PARKED_MESSAGES = "parkedMessages";
+    private static final String PARKED_MESSAGES_KEY_SUFFIX = "keySuffix";
+    private static final String PARKED_MESSAGES_MAX_MESSAGES = "maxMessages";
+    private static final String PARKED_MESSAGES_TTL_IN_SECONDS = "ttlInSeconds";
+    private static final String DEFAULT_PARKED_MESSAGES_KEY_SUFFIX = ":parked";
+    private static final int DEFAULT_PARKED_MESSAGES_MAX_MESSAGES = 10000;
+    private static final int DEFAULT_PARKED_MESSAGES_TTL_IN_SECONDS = 300;
+    private static final String HEALTH = "health";
+    private static final String HEALTH_HASH_NAME = "hashName";
+    private static final String DEFAULT_HEALTH_HASH_NAME = "connectorHealth";
 
     // Specific for this lambda
     private static final String MESSAGE_ROUTER_LAMBDA = "messageRouterLambda";
     private static final String CLIENT_STATUS_MESSAGE_INDICATOR = "clientStatusMessageIndicator";
     private static final String CLIENT_STATUS_MESSAGE_INDICATOR_NAME = "name";
     private static final String CLIENT_STATUS_MESSAGE_INDICATOR_VALUE = "value";
+    private static final String PAYLOAD_PROJECTION = "payloadProjection";
+    private static final String PAYLOAD_PROJECTION_ENABLED = "enabled";
+    private static final String TRANSFORM = "transform";
+    private static final String TRANSFORM_ENABLED = "enabled";
+    private static final String TRANSFORM_EXPRESSION_INDICATOR = "expressionIndicator";
+    private static final String DEFAULT_TRANSFORM_EXPRESSION_INDICATOR = "transform";
+    private static final String BACKPRESSURE = "backpressure";
+    private static final String BACKPRESSURE_POLICY = "policy";
+    private static final String BACKPRESSURE_MAX_QUEUE_DEPTH = "maxQueueDepth";
+    private static final String BACKPRESSURE_MAX_PROCESSING_LAG_IN_MILLIS =
+            "maxProcessingLagInMillis";
+    private static final String BACKPRESSURE_DOWNSAMPLE_RATE = "downsampleRate";
+    private static final String BACKPRESSURE_HEALTH_CACHE_TTL_IN_MILLIS =
+            "healthCacheTtlInMillis";
+    private static final String BACKPRESSURE_HEALTH_STALE_AFTER_IN_MILLIS =
+            "healthStaleAfterInMillis";
+    private static final int DEFAULT_BACKPRESSURE_MAX_QUEUE_DEPTH = 1000;
+    private static final int DEFAULT_BACKPRESSURE_MAX_PROCESSING_LAG_IN_MILLIS = 5000;
+    private static final int DEFAULT_BACKPRESSURE_DOWNSAMPLE_RATE = 10;
+    private static final int DEFAULT_BACKPRESSURE_HEALTH_CACHE_TTL_IN_MILLIS = 1000;
+    private static final int DEFAULT_BACKPRESSURE_HEALTH_STALE_AFTER_IN_MILLIS = 10000;
+    private static final String DEADLINE = "deadline";
+    private static final String DEADLINE_SAFETY_MARGIN_IN_MILLIS = "safetyMarginInMillis";
+    private static final int DEFAULT_DEADLINE_SAFETY_MARGIN_IN_MILLIS = 5000;
 
 
     private static final Logger logger = LoggerFactory.getLogger(
             AppConfigModule.class + "::LAMBDA_BODY");
 
-    @Getter(AccessLevel.PUBLIC)
-    private static final AppConfigModule instance = new AppConfigModule();
-
     // Variables with values from AppConfig. Change they according to what you need from config.
 
     // Redis
@@ -82,27 +116,73 @@ public class AppConfigModule {
     private String thingModelIndicator;
     @Getter(AccessLevel.PUBLIC)
     private String thingNameIndicator;
+    @Getter(AccessLevel.PUBLIC)
+    private String modelParametersDataTypeIndicator;
 
     @Getter(AccessLevel.PUBLIC)
     private String thingConnectionStatusConnected;
     @Getter(AccessLevel.PUBLIC)
     private String thingConnectionStatusDisconnected;
 
+    @Getter(AccessLevel.PUBLIC)
+    private String parkedMessagesKeySuffix;
+    @Getter(AccessLevel.PUBLIC)
+    private int parkedMessagesMaxMessages;
+    @Getter(AccessLevel.PUBLIC)
+    private int parkedMessagesTtlInSeconds;
+    @Getter(AccessLevel.PUBLIC)
+    private String healthHashName;
+
     // Specific for this lambda
     @Getter(AccessLevel.PUBLIC)
     private String clientStatusMessageIndicatorName;
     @Getter(AccessLevel.PUBLIC)
     private String clientStatusMessageIndicatorValue;
+    @Getter(AccessLevel.PUBLIC)
+    private boolean payloadProjectionEnabled;
+    @Getter(AccessLevel.PUBLIC)
+    private boolean transformEnabled;
+    @Getter(AccessLevel.PUBLIC)
+    private String transformExpressionIndicator;
+    @Getter(AccessLevel.PUBLIC)
+    private BackpressurePolicy backpressurePolicy;
+    @Getter(AccessLevel.PUBLIC)
+    private int backpressureMaxQueueDepth;
+    @Getter(AccessLevel.PUBLIC)
+    private int backpressureMaxProcessingLagInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private int backpressureDownsampleRate;
+    @Getter(AccessLevel.PUBLIC)
+    private int backpressureHealthCacheTtlInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private int backpressureHealthStaleAfterInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private int deadlineSafetyMarginInMillis;
 
 
     private AppConfigModule() {
-        getConfig();
+        getConfig(getAppConfigContent());
     }
 
-    @SneakyThrows
-    private void getConfig() {
+    private AppConfigModule(final String appConfigContent) {
+        getConfig(appConfigContent);
+    }
 
-        final String appConfigResponse = getAppConfigContent();
+    // AppConfig is fetched on first use, not when the class is loaded for fromContent
+    public static AppConfigModule getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Reads the configuration from the given AppConfig content instead of fetching it, so the
+     * handler can run without AWS access.
+     */
+    public static AppConfigModule fromContent(final String appConfigContent) {
+        return new AppConfigModule(appConfigContent);
+    }
+
+    @SneakyThrows
+    private void getConfig(final String appConfigResponse) {
 
         YAMLMapper mapper = new YAMLMapper();
         JsonNode rootNode = mapper.readTree(appConfigResponse);
@@ -133,12 +213,33 @@ public class AppConfigModule {
         logger.debug("AppConfig: thingConnectionStatusDisconnected={}",
                      thingConnectionStatusDisconnected,
                      logger.isDebugEnabled());
+        logger.debug("AppConfig: parkedMessagesKeySuffix={}, parkedMessagesMaxMessages={}, " +
+                             "parkedMessagesTtlInSeconds={}",
+                     parkedMessagesKeySuffix, parkedMessagesMaxMessages,
+                     parkedMessagesTtlInSeconds, logger.isDebugEnabled());
+        logger.debug("AppConfig: healthHashName={}", healthHashName, logger.isDebugEnabled());
         logger.debug("AppConfig: clientStatusMessageIndicatorName={}",
                      clientStatusMessageIndicatorName,
                      logger.isDebugEnabled());
         logger.debug("AppConfig: clientStatusMessageIndicatorValue={}",
                      clientStatusMessageIndicatorValue,
                      logger.isDebugEnabled());
+        logger.debug("AppConfig: payloadProjectionEnabled={}", payloadProjectionEnabled,
+                     logger.isDebugEnabled());
+        logger.debug("AppConfig: transformEnabled={}, transformExpressionIndicator={}",
+                     transformEnabled, transformExpressionIndicator,
+                     logger.isDebugEnabled());
+        logger.debug("AppConfig: backpressurePolicy={}, backpressureMaxQueueDepth={}, " +
+                             "backpressureMaxProcessingLagInMillis={}, " +
+                             "backpressureDownsampleRate={}, " +
+                             "backpressureHealthCacheTtlInMillis={}, " +
+                             "backpressureHealthStaleAfterInMillis={}",
+                     backpressurePolicy, backpressureMaxQueueDepth,
+                     backpressureMaxProcessingLagInMillis, backpressureDownsampleRate,
+                     backpressureHealthCacheTtlInMillis, backpressureHealthStaleAfterInMillis,
+                     logger.isDebugEnabled());
+        logger.debug("AppConfig: deadlineSafetyMarginInMillis={}", deadlineSafetyMarginInMillis,
+                     logger.isDebugEnabled());
     }
 
     private void getSpecificConfigurationForThisLambda(final JsonNode rootNode) {
@@ -149,6 +250,58 @@ public class AppConfigModule {
                 .path(CLIENT_STATUS_MESSAGE_INDICATOR_NAME).asText();
         clientStatusMessageIndicatorValue = statusIndicatorNode
                 .path(CLIENT_STATUS_MESSAGE_INDICATOR_VALUE).asText();
+
+        // Projection is on unless explicitly disabled in AppConfig
+        payloadProjectionEnabled = rootNode
+                .path(MESSAGE_ROUTER_LAMBDA)
+                .path(PAYLOAD_PROJECTION)
+                .path(PAYLOAD_PROJECTION_ENABLED).asBoolean(true);
+
+        // Transform stage is optional and off unless enabled in AppConfig
+        JsonNode transformNode = rootNode
+                .path(MESSAGE_ROUTER_LAMBDA)
+                .path(TRANSFORM);
+        transformEnabled = transformNode
+                .path(TRANSFORM_ENABLED).asBoolean(false);
+        transformExpressionIndicator = transformNode
+                .path(TRANSFORM_EXPRESSION_INDICATOR)
+                .asText(DEFAULT_TRANSFORM_EXPRESSION_INDICATOR);
+
+        // Backpressure is off unless a policy is set in AppConfig
+        JsonNode backpressureNode = rootNode
+                .path(MESSAGE_ROUTER_LAMBDA)
+                .path(BACKPRESSURE);
+        String policy = backpressureNode
+                .path(BACKPRESSURE_POLICY).asText(BackpressurePolicy.NONE.name());
+        try {
+            backpressurePolicy = BackpressurePolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown backpressure policy {} - using {}", policy,
+                         BackpressurePolicy.NONE, logger.isErrorEnabled());
+            backpressurePolicy = BackpressurePolicy.NONE;
+        }
+        backpressureMaxQueueDepth = backpressureNode
+                .path(BACKPRESSURE_MAX_QUEUE_DEPTH)
+                .asInt(DEFAULT_BACKPRESSURE_MAX_QUEUE_DEPTH);
+        backpressureMaxProcessingLagInMillis = backpressureNode
+                .path(BACKPRESSURE_MAX_PROCESSING_LAG_IN_MILLIS)
+                .asInt(DEFAULT_BACKPRESSURE_MAX_PROCESSING_LAG_IN_MILLIS);
+        backpressureDownsampleRate = backpressureNode
+                .path(BACKPRESSURE_DOWNSAMPLE_RATE)
+                .asInt(DEFAULT_BACKPRESSURE_DOWNSAMPLE_RATE);
+        backpressureHealthCacheTtlInMillis = backpressureNode
+                .path(BACKPRESSURE_HEALTH_CACHE_TTL_IN_MILLIS)
+                .asInt(DEFAULT_BACKPRESSURE_HEALTH_CACHE_TTL_IN_MILLIS);
+        backpressureHealthStaleAfterInMillis = backpressureNode
+                .path(BACKPRESSURE_HEALTH_STALE_AFTER_IN_MILLIS)
+                .asInt(DEFAULT_BACKPRESSURE_HEALTH_STALE_AFTER_IN_MILLIS);
+
+        // Time left before the Lambda timeout at which no further record is started
+        deadlineSafetyMarginInMillis = rootNode
+                .path(MESSAGE_ROUTER_LAMBDA)
+                .path(DEADLINE)
+                .path(DEADLINE_SAFETY_MARGIN_IN_MILLIS)
+                .asInt(DEFAULT_DEADLINE_SAFETY_MARGIN_IN_MILLIS);
     }
 
     private void getTwxCloudConnectorConfiguration(final JsonNode rootNode) {
@@ -166,6 +319,8 @@ public class AppConfigModule {
                 .path(THING_MODEL_INDICATOR).asText();
         thingNameIndicator = propertyNode
                 .path(THING_NAME_INDICATOR).asText();
+        modelParametersDataTypeIndicator = propertyNode
+                .path(MODEL_PARAMETERS_DATA_TYPE_INDICATOR).asText();
 
         JsonNode statusNode = thingworxClientNode
                 .path(THING_CONNECTION_STATUSES);
@@ -173,6 +328,20 @@ public class AppConfigModule {
                 .path(THING_CONNECTION_STATUS_CONNECTED).asText();
         thingConnectionStatusDisconnected = statusNode
                 .path(THING_CONNECTION_STATUS_DISCONNECTED).asText();
+
+        JsonNode parkedMessagesNode = thingworxClientNode
+                .path(PARKED_MESSAGES);
+        parkedMessagesKeySuffix = parkedMessagesNode
+                .path(PARKED_MESSAGES_KEY_SUFFIX).asText(DEFAULT_PARKED_MESSAGES_KEY_SUFFIX);
+        parkedMessagesMaxMessages = parkedMessagesNode
+                .path(PARKED_MESSAGES_MAX_MESSAGES).asInt(DEFAULT_PARKED_MESSAGES_MAX_MESSAGES);
+        parkedMessagesTtlInSeconds = parkedMessagesNode
+                .path(PARKED_MESSAGES_TTL_IN_SECONDS)
+                .asInt(DEFAULT_PARKED_MESSAGES_TTL_IN_SECONDS);
+
+        healthHashName = thingworxClientNode
+                .path(HEALTH)
+                .path(HEALTH_HASH_NAME).asText(DEFAULT_HEALTH_HASH_NAME);
     }
 
     private void getRedisConfiguration(final JsonNode rootNode) {
@@ -228,4 +397,8 @@ public class AppConfigModule {
     private Duration getDefaultCacheItemTtl() {
         return Duration.ofSeconds(30);
     }
+
+    private static final class InstanceHolder {
+        private static final AppConfigModule INSTANCE = new AppConfigModule();
+    }
 }
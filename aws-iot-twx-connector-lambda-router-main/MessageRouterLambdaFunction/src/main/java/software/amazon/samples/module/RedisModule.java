@@ -2,7 +2,9 @@ package software.amazon.samples.module;
 
 import lombok.Getter;
 import org.redisson.Redisson;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBucket;
+import org.redisson.api.RListAsync;
 import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.StringCodec;
@@ -11,6 +13,9 @@ import org.redisson.config.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Wrapper with singleton for Redis access.
  *
@@ -29,7 +34,7 @@ public class RedisModule {
     private static final String REDIS_LOCAL = "redis://172.17.0.2:6379";
     RedissonClient redisson = null;
 
-    private RedisModule() {
+    protected RedisModule() {
     }
 
     public boolean connect(final String endpoint) {
@@ -94,4 +99,27 @@ public class RedisModule {
                      logger.isDebugEnabled());
         return publishResult;
     }
+
+    public Map<String, String> getStringMap(final String key) {
+        Map<String, String> value = redisson.<String, String>getMap(key, StringCodec.INSTANCE)
+                                            .readAllMap();
+        logger.debug("Redisson map.readAllMap[{}]: [{}]", key, value, logger.isDebugEnabled());
+        return value;
+    }
+
+    /**
+     * Appends a message to a bounded list which expires when nobody reads it. Only the newest
+     * maxMessages messages are kept.
+     */
+    public void parkString(final String key, final String message, final int maxMessages,
+                           final long ttlInSeconds) {
+        RBatch batch = redisson.createBatch();
+        RListAsync<String> list = batch.getList(key, StringCodec.INSTANCE);
+        list.addAsync(message);
+        list.trimAsync(-maxMessages, -1);
+        list.expireAsync(ttlInSeconds, TimeUnit.SECONDS);
+        batch.execute();
+        logger.debug("Redisson parked message in list[{}], payload[{}]", key, message,
+                     logger.isDebugEnabled());
+    }
 }
@@ -0,0 +1,88 @@
+package software.amazon.samples.payload;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Reads a device payload keeping only the top level properties that are needed downstream.
+ * Values of all other properties are skipped on the token stream and never turned into nodes.
+ */
+
+public class PayloadProjector {
+
+    private final ObjectMapper mapper;
+
+    public PayloadProjector(final ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Parses the payload and keeps only the properties with names from keysToKeep.
+     *
+     * @param data       raw JSON payload as received from Kinesis
+     * @param keysToKeep names of the top level properties to keep
+     * @return projection with the kept properties and the number of removed bytes. Payloads which
+     * are not JSON objects are returned whole.
+     * @throws IOException when the payload is not valid JSON
+     */
+    public Projection project(final byte[] data, final Set<String> keysToKeep) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new Projection(mapper.readTree(data), 0);
+            }
+
+            ObjectNode projected = mapper.createObjectNode();
+            long removedBytes = 0;
+            // Start offset of the last skipped property. Its end is only known once the parser
+            // reaches the next token, because string values are consumed lazily.
+            long skippedFrom = -1;
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                long fieldStart = parser.getTokenLocation().getByteOffset();
+                if (skippedFrom >= 0) {
+                    removedBytes += fieldStart - skippedFrom;
+                    skippedFrom = -1;
+                }
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (keysToKeep.contains(name)) {
+                    projected.set(name, mapper.readTree(parser));
+                } else {
+                    parser.skipChildren();
+                    skippedFrom = fieldStart;
+                }
+            }
+            if (skippedFrom >= 0 && token == JsonToken.END_OBJECT) {
+                removedBytes += parser.getTokenLocation().getByteOffset() - skippedFrom;
+            }
+            return new Projection(projected, removedBytes);
+        }
+    }
+
+    /**
+     * Result of a payload projection.
+     */
+    public static class Projection {
+        private final JsonNode payload;
+        private final long removedBytes;
+
+        public Projection(final JsonNode payload, final long removedBytes) {
+            this.payload = payload;
+            this.removedBytes = removedBytes;
+        }
+
+        public JsonNode getPayload() {
+            return payload;
+        }
+
+        public long getRemovedBytes() {
+            return removedBytes;
+        }
+    }
+}
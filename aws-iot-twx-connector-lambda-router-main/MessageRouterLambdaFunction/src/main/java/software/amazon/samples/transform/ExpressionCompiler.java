@@ -0,0 +1,266 @@
+package software.amazon.samples.transform;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compiles simple arithmetic expressions into method handle trees.
+ * <p>
+ * Supported syntax: numbers, property names, {@code + - * /}, unary minus, parentheses and the
+ * functions {@code clamp(x, min, max)}, {@code min(a, b)}, {@code max(a, b)}, {@code abs(x)} and
+ * {@code round(x)}, which rounds halves towards positive infinity like
+ * {@link Math#round(double)}. Every compiled expression has the type {@code (double[])double},
+ * where the array holds the values of the referenced properties at the slots given by the slot
+ * resolver.
+ * Evaluation does not allocate, a missing input is represented by NaN and propagates to the
+ * result.
+ */
+
+public class ExpressionCompiler {
+
+    private static final MethodType DOUBLE_FROM_SLOTS =
+            MethodType.methodType(double.class, double[].class);
+    private static final MethodHandle SLOT_GETTER =
+            MethodHandles.arrayElementGetter(double[].class);
+
+    private static final MethodHandle ADD;
+    private static final MethodHandle SUBTRACT;
+    private static final MethodHandle MULTIPLY;
+    private static final MethodHandle DIVIDE;
+    private static final MethodHandle NEGATE;
+    private static final Map<String, MethodHandle> FUNCTIONS = new HashMap<>();
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType unary = MethodType.methodType(double.class, double.class);
+            MethodType binary = MethodType.methodType(double.class, double.class, double.class);
+            MethodType ternary = MethodType.methodType(double.class, double.class, double.class,
+                                                       double.class);
+            ADD = lookup.findStatic(ExpressionCompiler.class, "add", binary);
+            SUBTRACT = lookup.findStatic(ExpressionCompiler.class, "subtract", binary);
+            MULTIPLY = lookup.findStatic(ExpressionCompiler.class, "multiply", binary);
+            DIVIDE = lookup.findStatic(ExpressionCompiler.class, "divide", binary);
+            NEGATE = lookup.findStatic(ExpressionCompiler.class, "negate", unary);
+            FUNCTIONS.put("clamp", lookup.findStatic(ExpressionCompiler.class, "clamp", ternary));
+            FUNCTIONS.put("min", lookup.findStatic(Math.class, "min", binary));
+            FUNCTIONS.put("max", lookup.findStatic(Math.class, "max", binary));
+            FUNCTIONS.put("abs", lookup.findStatic(Math.class, "abs", unary));
+            FUNCTIONS.put("round", lookup.findStatic(ExpressionCompiler.class, "round", unary));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String expression;
+    private final ToIntFunction<String> slotResolver;
+    private int position;
+
+    private ExpressionCompiler(final String expression, final ToIntFunction<String> slotResolver) {
+        this.expression = expression;
+        this.slotResolver = slotResolver;
+    }
+
+    /**
+     * Compiles an expression.
+     *
+     * @param expression   expression text
+     * @param slotResolver returns the slot index in the input array for a property name
+     * @return method handle of type {@code (double[])double}
+     * @throws IllegalArgumentException when the expression can't be parsed
+     */
+    public static MethodHandle compile(final String expression,
+                                       final ToIntFunction<String> slotResolver) {
+        ExpressionCompiler compiler = new ExpressionCompiler(expression, slotResolver);
+        MethodHandle handle = compiler.parseExpression();
+        compiler.skipWhitespace();
+        if (compiler.position < expression.length()) {
+            throw compiler.error("Unexpected character '" + expression.charAt(compiler.position)
+                                         + "'");
+        }
+        return handle;
+    }
+
+    // expression := term (('+' | '-') term)*
+    private MethodHandle parseExpression() {
+        MethodHandle result = parseTerm();
+        while (true) {
+            if (consume('+')) {
+                result = combine(ADD, result, parseTerm());
+            } else if (consume('-')) {
+                result = combine(SUBTRACT, result, parseTerm());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    // term := unary (('*' | '/') unary)*
+    private MethodHandle parseTerm() {
+        MethodHandle result = parseUnary();
+        while (true) {
+            if (consume('*')) {
+                result = combine(MULTIPLY, result, parseUnary());
+            } else if (consume('/')) {
+                result = combine(DIVIDE, result, parseUnary());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    // unary := '-' unary | primary
+    private MethodHandle parseUnary() {
+        if (consume('-')) {
+            return combine(NEGATE, parseUnary());
+        }
+        return parsePrimary();
+    }
+
+    // primary := number | name | name '(' arguments ')' | '(' expression ')'
+    private MethodHandle parsePrimary() {
+        skipWhitespace();
+        if (consume('(')) {
+            MethodHandle inner = parseExpression();
+            expect(')');
+            return inner;
+        }
+        if (position >= expression.length()) {
+            throw error("Unexpected end of expression");
+        }
+        char current = expression.charAt(position);
+        if (Character.isDigit(current) || current == '.') {
+            return constant(parseNumber());
+        }
+        if (Character.isLetter(current) || current == '_') {
+            String name = parseName();
+            if (consume('(')) {
+                return parseFunction(name);
+            }
+            return MethodHandles.insertArguments(SLOT_GETTER, 1, slotResolver.applyAsInt(name));
+        }
+        throw error("Unexpected character '" + current + "'");
+    }
+
+    private MethodHandle parseFunction(final String name) {
+        MethodHandle function = FUNCTIONS.get(name);
+        if (function == null) {
+            throw error("Unknown function '" + name + "'");
+        }
+        List<MethodHandle> arguments = new ArrayList<>();
+        if (!consume(')')) {
+            do {
+                arguments.add(parseExpression());
+            } while (consume(','));
+            expect(')');
+        }
+        if (arguments.size() != function.type().parameterCount()) {
+            throw error("Function '" + name + "' expects " + function.type().parameterCount()
+                                + " arguments");
+        }
+        return combine(function, arguments.toArray(new MethodHandle[0]));
+    }
+
+    private double parseNumber() {
+        int start = position;
+        while (position < expression.length()
+                && (Character.isDigit(expression.charAt(position))
+                || expression.charAt(position) == '.')) {
+            position++;
+        }
+        try {
+            return Double.parseDouble(expression.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + expression.substring(start, position) + "'");
+        }
+    }
+
+    private String parseName() {
+        int start = position;
+        while (position < expression.length()
+                && (Character.isLetterOrDigit(expression.charAt(position))
+                || expression.charAt(position) == '_')) {
+            position++;
+        }
+        return expression.substring(start, position);
+    }
+
+    private boolean consume(final char expected) {
+        skipWhitespace();
+        if (position < expression.length() && expression.charAt(position) == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char expected) {
+        if (!consume(expected)) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length()
+                && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(
+                message + " at position " + position + " in expression [" + expression + "]");
+    }
+
+    /**
+     * Feeds the slot array to every operand and the operand results to the operation, giving a
+     * handle of type {@code (double[])double} again.
+     */
+    private static MethodHandle combine(final MethodHandle operation,
+                                        final MethodHandle... operands) {
+        MethodHandle filtered = MethodHandles.filterArguments(operation, 0, operands);
+        return MethodHandles.permuteArguments(filtered, DOUBLE_FROM_SLOTS,
+                                              new int[operands.length]);
+    }
+
+    private static MethodHandle constant(final double value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0,
+                                           double[].class);
+    }
+
+    private static double add(final double left, final double right) {
+        return left + right;
+    }
+
+    private static double subtract(final double left, final double right) {
+        return left - right;
+    }
+
+    private static double multiply(final double left, final double right) {
+        return left * right;
+    }
+
+    private static double divide(final double left, final double right) {
+        return left / right;
+    }
+
+    private static double negate(final double value) {
+        return -value;
+    }
+
+    private static double round(final double value) {
+        // Math.round would overflow to long, Math.rint rounds halves to even
+        double floor = Math.floor(value);
+        return value - floor >= 0.5 ? floor + 1 : floor;
+    }
+
+    private static double clamp(final double value, final double min, final double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,154 @@
+package software.amazon.samples.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transform expressions of one thing model, compiled once and applied to every payload of that
+ * model. Each model property may define an expression under the configured indicator, e.g.
+ * {@code "temp": {"type": "NUMBER", "transform": "(value - 32) * 5 / 9"}}. The name
+ * {@code value} refers to the property itself, other names refer to payload properties, which
+ * allows derived properties that are not sent by the device.
+ * <p>
+ * All expressions see the values from the incoming payload, not the results of other
+ * expressions. Outputs whose inputs are missing or not numeric are left untouched. Instances
+ * reuse their input and result arrays and are not thread safe.
+ */
+
+public class PayloadTransform {
+
+    private static final Logger logger = LoggerFactory.getLogger(
+            PayloadTransform.class + "::LAMBDA_BODY");
+
+    private static final String SELF_REFERENCE = "value";
+
+    private final String[] inputNames;
+    private final double[] inputs;
+    private final String[] outputNames;
+    private final MethodHandle[] expressions;
+    private final boolean[] integralOutputs;
+    private final double[] results;
+
+    private PayloadTransform(final List<String> inputNames, final List<String> outputNames,
+                             final List<MethodHandle> expressions,
+                             final List<Boolean> integralOutputs) {
+        this.inputNames = inputNames.toArray(new String[0]);
+        this.inputs = new double[inputNames.size()];
+        this.outputNames = outputNames.toArray(new String[0]);
+        this.expressions = expressions.toArray(new MethodHandle[0]);
+        this.integralOutputs = new boolean[integralOutputs.size()];
+        for (int i = 0; i < this.integralOutputs.length; i++) {
+            this.integralOutputs[i] = integralOutputs.get(i);
+        }
+        this.results = new double[outputNames.size()];
+    }
+
+    /**
+     * Compiles the expressions defined in a thing model. Expressions that can't be compiled are
+     * logged and skipped.
+     *
+     * @param modelNode           thing model node from Redis
+     * @param expressionIndicator name of the expression field of a model property
+     * @param typeIndicator       name of the data type field of a model property
+     * @return compiled transform, or null when the model defines no valid expression
+     */
+    public static PayloadTransform compile(final JsonNode modelNode,
+                                           final String expressionIndicator,
+                                           final String typeIndicator) {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        List<String> outputNames = new ArrayList<>();
+        List<MethodHandle> expressions = new ArrayList<>();
+        List<Boolean> integralOutputs = new ArrayList<>();
+
+        Iterator<Map.Entry<String, JsonNode>> properties = modelNode.fields();
+        while (properties.hasNext()) {
+            Map.Entry<String, JsonNode> property = properties.next();
+            JsonNode expressionNode = property.getValue().path(expressionIndicator);
+            if (!expressionNode.isTextual()) {
+                continue;
+            }
+            String propertyName = property.getKey();
+            try {
+                // Resolve into a copy so a failed expression leaves no unused slots behind
+                Map<String, Integer> expressionSlots = new LinkedHashMap<>(slots);
+                MethodHandle expression = ExpressionCompiler.compile(
+                        expressionNode.asText(),
+                        name -> expressionSlots.computeIfAbsent(
+                                SELF_REFERENCE.equals(name) ? propertyName : name,
+                                key -> expressionSlots.size()));
+                slots.putAll(expressionSlots);
+                outputNames.add(propertyName);
+                expressions.add(expression);
+                integralOutputs.add(isIntegralType(property.getValue().path(typeIndicator)
+                                                           .asText()));
+            } catch (IllegalArgumentException e) {
+                logger.error("Transform of property {} can't be compiled: {}", propertyName,
+                             e.getMessage(), logger.isErrorEnabled());
+            }
+        }
+
+        if (expressions.isEmpty()) {
+            return null;
+        }
+        return new PayloadTransform(new ArrayList<>(slots.keySet()), outputNames, expressions,
+                                    integralOutputs);
+    }
+
+    /**
+     * Evaluates all expressions against the payload and writes the results into it.
+     *
+     * @param payload device payload
+     * @return number of properties written
+     */
+    public int apply(final ObjectNode payload) {
+        for (int i = 0; i < inputNames.length; i++) {
+            JsonNode input = payload.get(inputNames[i]);
+            inputs[i] = input != null && input.isNumber() ? input.doubleValue() : Double.NaN;
+        }
+
+        try {
+            for (int i = 0; i < expressions.length; i++) {
+                results[i] = (double) expressions[i].invokeExact(inputs);
+            }
+        } catch (Throwable e) {
+            // The handles only do arithmetic on doubles, this is not expected
+            throw new IllegalStateException("Transform evaluation failed", e);
+        }
+
+        int written = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (Double.isNaN(results[i]) || Double.isInfinite(results[i])) {
+                continue;
+            }
+            if (integralOutputs[i]) {
+                payload.put(outputNames[i], Math.round(results[i]));
+            } else {
+                payload.put(outputNames[i], results[i]);
+            }
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * @return names of the payload properties read by the expressions
+     */
+    public List<String> getInputNames() {
+        return Collections.unmodifiableList(Arrays.asList(inputNames));
+    }
+
+    private static boolean isIntegralType(final String type) {
+        return "INTEGER".equalsIgnoreCase(type) || "LONG".equalsIgnoreCase(type);
+    }
+}
@@ -0,0 +1,63 @@
+package software.amazon.samples.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps compiled transforms per device between invocations of a warm Lambda container. An entry
+ * is recompiled only when the device data read from Redis changes, i.e. once per model version.
+ */
+
+public class TransformCache {
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final String expressionIndicator;
+    private final String typeIndicator;
+
+    // Access ordered, so the least recently routed device is evicted first
+    private final Map<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    public TransformCache(final String expressionIndicator, final String typeIndicator) {
+        this.expressionIndicator = expressionIndicator;
+        this.typeIndicator = typeIndicator;
+    }
+
+    /**
+     * Returns the compiled transform for a device, compiling it when the device data changed.
+     *
+     * @param clientId   device client id
+     * @param deviceData device data string from Redis, used as the model version
+     * @param modelNode  thing model node parsed from the device data
+     * @return compiled transform, empty when the model defines no expressions
+     */
+    public Optional<PayloadTransform> get(final String clientId, final String deviceData,
+                                          final JsonNode modelNode) {
+        Entry entry = entries.get(clientId);
+        if (entry == null || !entry.deviceData.equals(deviceData)) {
+            entry = new Entry(deviceData, PayloadTransform.compile(modelNode, expressionIndicator,
+                                                                   typeIndicator));
+            entries.put(clientId, entry);
+        }
+        return Optional.ofNullable(entry.transform);
+    }
+
+    private static class Entry {
+        private final String deviceData;
+        private final PayloadTransform transform;
+
+        private Entry(final String deviceData, final PayloadTransform transform) {
+            this.deviceData = deviceData;
+            this.transform = transform;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package software.amazon.samples;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.KinesisEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import org.junit.Test;
+import software.amazon.samples.metrics.RouterMetrics;
+import software.amazon.samples.module.AppConfigModule;
+import software.amazon.samples.module.RedisModule;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageRouterLambdaTest {
+
+    private static final String CONFIG = String.join("\n",
+            "thingworxClientConnectorSpringApp:",
+            "  messageRouterLambdaPayloadStructure:",
+            "    thingTelemetryPayloadIndicator: payload",
+            "    thingStatusIndicator: status",
+            "    instanceIndicator: instance",
+            "    thingModelIndicator: deviceModel",
+            "    thingNameIndicator: thingName",
+            "    modelParametersDataTypeIndicator: type",
+            "messageRouterLambda:",
+            "  clientStatusMessageIndicator:",
+            "    name: messageType",
+            "    value: status",
+            "  deadline:",
+            "    safetyMarginInMillis: 5000");
+
+    private static final long REDIS_LOOKUP_MILLIS = 100;
+
+    private final FakeContext context = new FakeContext();
+    private final FakeRedisModule redis = new FakeRedisModule(context);
+    private final MessageRouterLambda lambda = new MessageRouterLambda(
+            AppConfigModule.fromContent(CONFIG), redis);
+
+    @Test
+    public void recordsLeftWhenTheDeadlineIsCloseAreReportedForRedelivery() {
+        // each record takes one slow Redis lookup, the fourth one starts below the margin
+        context.remainingTimeInMillis = 5250;
+        redis.devices.put("device-1", "{\"instance\":\"instance-1\"}");
+
+        StreamsEventResponse response = lambda.handleRequest(
+                event("device-1", "device-1", "device-1", "device-1", "device-1"), context);
+
+        assertEquals(Arrays.asList("3", "4"), itemIdentifiers(response));
+        assertEquals(3, redis.published.size());
+        assertEquals(1, RouterMetrics.getInstance().get("earlyExits"));
+        assertEquals(2, RouterMetrics.getInstance().get("unprocessedRecords"));
+        assertTrue(redis.disconnected);
+    }
+
+    @Test
+    public void failedRecordIsReportedAndTheBatchContinues() {
+        context.remainingTimeInMillis = 60000;
+        redis.devices.put("device-1", "{\"instance\":\"instance-1\"}");
+        redis.devices.put("device-2", "not a device");
+
+        StreamsEventResponse response = lambda.handleRequest(
+                event("device-1", "device-2", "device-1"), context);
+
+        assertEquals(Collections.singletonList("1"), itemIdentifiers(response));
+        assertEquals(2, redis.published.size());
+        assertEquals(0, RouterMetrics.getInstance().get("earlyExits"));
+    }
+
+    @Test
+    public void batchWithinTheDeadlineHasNoFailures() {
+        context.remainingTimeInMillis = 60000;
+        redis.devices.put("device-1", "{\"instance\":\"instance-1\"}");
+
+        StreamsEventResponse response = lambda.handleRequest(
+                event("device-1", "device-1"), context);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        assertEquals(2, redis.published.size());
+    }
+
+    /**
+     * @return event with one record per partition key, sequence numbers are the record indexes
+     */
+    private static KinesisEvent event(final String... partitionKeys) {
+        List<KinesisEvent.KinesisEventRecord> records = new ArrayList<>();
+        for (int i = 0; i < partitionKeys.length; i++) {
+            KinesisEvent.Record kinesis = new KinesisEvent.Record();
+            kinesis.setPartitionKey(partitionKeys[i]);
+            kinesis.setSequenceNumber(String.valueOf(i));
+            kinesis.setData(ByteBuffer.wrap(
+                    "{\"temperature\":21}".getBytes(StandardCharsets.UTF_8)));
+            KinesisEvent.KinesisEventRecord record = new KinesisEvent.KinesisEventRecord();
+            record.setKinesis(kinesis);
+            records.add(record);
+        }
+        KinesisEvent event = new KinesisEvent();
+        event.setRecords(records);
+        return event;
+    }
+
+    private static List<String> itemIdentifiers(final StreamsEventResponse response) {
+        return response.getBatchItemFailures().stream()
+                       .map(StreamsEventResponse.BatchItemFailure::getItemIdentifier)
+                       .collect(Collectors.toList());
+    }
+
+    /**
+     * Redis whose device lookups take time off the Lambda deadline instead of sleeping.
+     */
+    private static class FakeRedisModule extends RedisModule {
+
+        private final FakeContext context;
+        private final Map<String, String> devices = new HashMap<>();
+        private final List<String> published = new ArrayList<>();
+        private boolean disconnected;
+
+        private FakeRedisModule(final FakeContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public boolean connect(final String endpoint) {
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public String getString(final String key) {
+            context.remainingTimeInMillis -= REDIS_LOOKUP_MILLIS;
+            return devices.get(key);
+        }
+
+        @Override
+        public long sendStringToTopic(final String topic, final String message) {
+            published.add(message);
+            return 1;
+        }
+
+        @Override
+        public Map<String, String> getStringMap(final String key) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private static class FakeContext implements Context {
+
+        private long remainingTimeInMillis;
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return (int) remainingTimeInMillis;
+        }
+
+        @Override
+        public String getAwsRequestId() {
+            return "request-1";
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return null;
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return null;
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "MessageRouterLambda";
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return null;
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return null;
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 512;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return null;
+        }
+    }
+}
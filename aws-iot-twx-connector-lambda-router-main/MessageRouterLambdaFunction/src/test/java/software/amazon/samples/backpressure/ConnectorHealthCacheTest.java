@@ -0,0 +1,83 @@
+package software.amazon.samples.backpressure;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectorHealthCacheTest {
+
+    private static final long TTL_MILLIS = 1000;
+
+    private final Map<String, String> hash = new HashMap<>();
+    private final AtomicInteger reads = new AtomicInteger();
+    private final ConnectorHealthCache cache = new ConnectorHealthCache(() -> {
+        reads.incrementAndGet();
+        return new HashMap<>(hash);
+    }, "connectorHealth", TTL_MILLIS);
+
+    @Test
+    public void firstGetLoadsTheHash() {
+        hash.put("instance-1", "10,200,30,5000");
+
+        ConnectorHealth health = cache.get("instance-1", 5000);
+
+        assertEquals(1, reads.get());
+        assertNotNull(health);
+        assertTrue(health.isSaturated(10, 60000, 60000, 5000));
+    }
+
+    @Test
+    public void firstGetLoadsTheHashAtAnyClockValue() {
+        cache.get("instance-1", Long.MIN_VALUE + 1);
+
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void getWithinTtlUsesTheLoadedHealth() {
+        cache.get("instance-1", 5000);
+        hash.put("instance-1", "10,200,30,5000");
+
+        assertNull(cache.get("instance-1", 5000 + TTL_MILLIS - 1));
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void getAfterTtlLoadsTheHashAgain() {
+        cache.get("instance-1", 5000);
+        hash.put("instance-1", "10,200,30,5000");
+
+        assertNotNull(cache.get("instance-1", 5000 + TTL_MILLIS));
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    public void malformedRecordsAreIgnored() {
+        hash.put("instance-1", "not a record");
+        hash.put("instance-2", "1,2,3,4");
+
+        assertNull(cache.get("instance-1", 5000));
+        assertNotNull(cache.get("instance-2", 5000));
+    }
+
+    @Test
+    public void failedReadIsRetriedAfterTheTtl() {
+        ConnectorHealthCache failing = new ConnectorHealthCache(() -> {
+            reads.incrementAndGet();
+            throw new IllegalStateException("redis down");
+        }, "connectorHealth", TTL_MILLIS);
+
+        assertNull(failing.get("instance-1", 5000));
+        assertNull(failing.get("instance-1", 5000 + TTL_MILLIS - 1));
+        assertEquals(1, reads.get());
+        assertNull(failing.get("instance-1", 5000 + TTL_MILLIS));
+        assertEquals(2, reads.get());
+    }
+}
@@ -0,0 +1,85 @@
+package software.amazon.samples.transform;
+
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionCompilerTest {
+
+    private static final List<String> SLOTS = Arrays.asList("x", "y", "z");
+
+    @Test
+    public void respectsOperatorPrecedence() throws Throwable {
+        assertEquals(7.0, evaluate("1 + 2 * 3"), 0);
+        assertEquals(9.0, evaluate("(1 + 2) * 3"), 0);
+        assertEquals(-1.0, evaluate("1 - 4 / 2 / 1"), 0);
+        assertEquals(2.0, evaluate("-(-2)"), 0);
+    }
+
+    @Test
+    public void readsInputsFromTheirSlots() throws Throwable {
+        assertEquals(100.0, evaluate("(x - 32) * 5 / 9", 212, 0, 0), 1e-9);
+        assertEquals(12.0, evaluate("y * z", 0, 3, 4), 0);
+    }
+
+    @Test
+    public void missingInputPropagatesAsNaN() throws Throwable {
+        assertTrue(Double.isNaN(evaluate("x * y", Double.NaN, 2, 0)));
+    }
+
+    @Test
+    public void evaluatesFunctions() throws Throwable {
+        assertEquals(10.0, evaluate("clamp(x, 0, 10)", 42, 0, 0), 0);
+        assertEquals(0.0, evaluate("clamp(x, 0, 10)", -3, 0, 0), 0);
+        assertEquals(2.0, evaluate("min(x, y)", 2, 5, 0), 0);
+        assertEquals(5.0, evaluate("max(x, y)", 2, 5, 0), 0);
+        assertEquals(3.5, evaluate("abs(x)", -3.5, 0, 0), 0);
+    }
+
+    @Test
+    public void roundsHalvesUp() throws Throwable {
+        assertEquals(3.0, evaluate("round(2.5)"), 0);
+        assertEquals(4.0, evaluate("round(3.5)"), 0);
+        assertEquals(2.0, evaluate("round(2.4999)"), 0);
+        assertEquals(-2.0, evaluate("round(x)", -2.5, 0, 0), 0);
+        assertEquals(-3.0, evaluate("round(x)", -2.6, 0, 0), 0);
+        assertEquals(1e300, evaluate("round(x)", 1e300, 0, 0), 0);
+        assertTrue(Double.isNaN(evaluate("round(x)", Double.NaN, 0, 0)));
+    }
+
+    @Test
+    public void roundsLikeMathRoundWithinTheLongRange() throws Throwable {
+        double[] values = {-0.5, -1.5, -2.5, -1e15 - 0.5, 0.49999999999999994, -0.49999999999999994,
+                           4503599627370497.0, -4503599627370497.0, 0.5, 1.5};
+        for (double value : values) {
+            assertEquals("round(" + value + ")", Math.round(value),
+                         evaluate("round(x)", value, 0, 0), 0);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> compile("1 +"));
+        assertThrows(IllegalArgumentException.class, () -> compile("(x"));
+        assertThrows(IllegalArgumentException.class, () -> compile("x y"));
+        assertThrows(IllegalArgumentException.class, () -> compile("sqrt(x)"));
+        assertThrows(IllegalArgumentException.class, () -> compile("min(x)"));
+        assertThrows(IllegalArgumentException.class, () -> compile("1..2"));
+    }
+
+    private static MethodHandle compile(final String expression) {
+        return ExpressionCompiler.compile(expression, SLOTS::indexOf);
+    }
+
+    private static double evaluate(final String expression, final double... inputs)
+            throws Throwable {
+        double[] slots = Arrays.copyOf(inputs, SLOTS.size());
+        return (double) compile(expression).invokeExact(slots);
+    }
+}
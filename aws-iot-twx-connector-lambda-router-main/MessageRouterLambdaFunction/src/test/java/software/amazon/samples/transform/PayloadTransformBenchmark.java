@@ -0,0 +1,76 @@
+package software.amazon.samples.transform;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying compiled transforms to a payload, divide the score by the property count for
+ * the cost per property. Each property is converted from Fahrenheit into a derived property, so
+ * the inputs stay the same between invocations. Run with
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main PayloadTransform}
+ * and {@code -prof gc} to see the allocation per payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PayloadTransformBenchmark {
+
+    @Param({"1", "10", "100"})
+    int properties;
+
+    private PayloadTransform transform;
+    private ObjectNode payload;
+    private String[] inputNames;
+    private String[] outputNames;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode model = mapper.createObjectNode();
+        payload = mapper.createObjectNode();
+        inputNames = new String[properties];
+        outputNames = new String[properties];
+        for (int i = 0; i < properties; i++) {
+            inputNames[i] = "fahrenheit" + i;
+            outputNames[i] = "celsius" + i;
+            model.putObject(outputNames[i])
+                 .put("type", "NUMBER")
+                 .put("transform", "clamp((" + inputNames[i] + " - 32) * 5 / 9, -50, 150)");
+            payload.put(inputNames[i], 60 + i);
+        }
+        transform = PayloadTransform.compile(model, "transform", "type");
+    }
+
+    @Benchmark
+    public int apply() {
+        return transform.apply(payload);
+    }
+
+    /**
+     * The same conversion written in Java, the lower bound for the compiled expressions.
+     */
+    @Benchmark
+    public ObjectNode handWritten() {
+        for (int i = 0; i < properties; i++) {
+            double fahrenheit = payload.get(inputNames[i]).doubleValue();
+            payload.put(outputNames[i], Math.max(-50, Math.min(150, (fahrenheit - 32) * 5 / 9)));
+        }
+        return payload;
+    }
+}
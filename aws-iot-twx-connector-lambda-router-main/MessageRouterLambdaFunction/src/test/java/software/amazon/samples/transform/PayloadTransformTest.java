@@ -0,0 +1,69 @@
+package software.amazon.samples.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class PayloadTransformTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void derivesPropertiesFromPayloadFieldsOutsideTheModel() throws Exception {
+        PayloadTransform transform = compile("{\"power\": {\"type\": \"NUMBER\", "
+                                                     + "\"transform\": \"voltage * current\"}}");
+        ObjectNode payload = payload("{\"voltage\": 230, \"current\": 2.5}");
+
+        assertEquals(new HashSet<>(Arrays.asList("voltage", "current")),
+                     new HashSet<>(transform.getInputNames()));
+        assertEquals(1, transform.apply(payload));
+        assertEquals(575.0, payload.get("power").doubleValue(), 0);
+    }
+
+    @Test
+    public void valueRefersToThePropertyItself() throws Exception {
+        PayloadTransform transform = compile("{\"temp\": {\"type\": \"INTEGER\", "
+                                                     + "\"transform\": \"(value - 32) * 5 / 9\"}}");
+        ObjectNode payload = payload("{\"temp\": 212}");
+
+        assertEquals(Arrays.asList("temp"), transform.getInputNames());
+        transform.apply(payload);
+        assertEquals(100, payload.get("temp").longValue());
+        assertFalse(payload.get("temp").isDouble());
+    }
+
+    @Test
+    public void outputWithMissingInputIsLeftUntouched() throws Exception {
+        PayloadTransform transform = compile("{\"power\": {\"type\": \"NUMBER\", "
+                                                     + "\"transform\": \"voltage * current\"}}");
+        ObjectNode payload = payload("{\"voltage\": 230, \"current\": \"n/a\"}");
+
+        assertEquals(0, transform.apply(payload));
+        assertNull(payload.get("power"));
+    }
+
+    @Test
+    public void invalidExpressionsAreSkipped() throws Exception {
+        assertNull(compile("{\"temp\": {\"type\": \"NUMBER\", \"transform\": \"value +\"}}"));
+        PayloadTransform transform = compile("{\"a\": {\"transform\": \"x +\"}, "
+                                                     + "\"b\": {\"transform\": \"y * 2\"}}");
+        assertEquals(Arrays.asList("y"), transform.getInputNames());
+    }
+
+    private PayloadTransform compile(final String model) throws Exception {
+        JsonNode modelNode = mapper.readTree(model);
+        return PayloadTransform.compile(modelNode, "transform", "type");
+    }
+
+    private ObjectNode payload(final String json) throws Exception {
+        return (ObjectNode) mapper.readTree(json);
+    }
+}
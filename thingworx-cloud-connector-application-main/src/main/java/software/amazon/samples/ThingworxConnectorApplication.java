@@ -7,7 +7,10 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.startup.FastStart;
+import software.amazon.samples.startup.StartupPhase;
 import software.amazon.samples.thingworx.ThingworxClientSingleton;
+import software.amazon.samples.thingworx.ThingworxConnectionSupervisor;
 
 /**
  * Spring boot main application launcher
@@ -25,10 +28,14 @@ public class ThingworxConnectorApplication implements ApplicationRunner {
 
     @Autowired
     AppConfigModule appConfigModule;
+    @Autowired
+    ThingworxConnectionSupervisor connectionSupervisor;
 
     public static void main(String[] args) {
+        StartupPhase.MAIN_STARTED.reached();
         if(System.getenv(environmentNameIndicator) != null) {
             SpringApplication application = new SpringApplication(ThingworxConnectorApplication.class);
+            application.addListeners(new FastStart());
             String[] profile = new String[] {System.getenv(environmentNameIndicator)};
             application.setAdditionalProfiles(profile);
             log.info("going to run spring boot with profile: {}", (Object) profile);
@@ -40,7 +47,12 @@ public class ThingworxConnectorApplication implements ApplicationRunner {
 
     @Override
     public void run(ApplicationArguments args) {
-        // instantiate thingworx client
-        ThingworxClientSingleton.INSTANCE.generateThingworxClientInstance(appConfigModule);
+        // instantiate thingworx client, in the FAST_START profile the handshake already runs since the configuration was fetched
+        if (FastStart.getThingworxHandshake() != null) {
+            FastStart.getThingworxHandshake().join();
+        } else {
+            ThingworxClientSingleton.INSTANCE.generateThingworxClientInstance(appConfigModule);
+        }
+        connectionSupervisor.start();
     }
 }
@@ -5,6 +5,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import software.amazon.samples.startup.FastStart;
+import software.amazon.samples.startup.StartupPhase;
+
+import java.util.concurrent.CompletionException;
 
 
 /**
@@ -21,7 +25,19 @@ public class AppConfigConfiguration extends ClientConfigurator {
 
     @Bean
     public AppConfigModule getAppConfigModule(Environment environment) throws Exception {
-        log.debug("Processing creation of Aws Appconfig module instance with configuration [{}]", environment);
-        return new AppConfigModule(environment);
+        AppConfigModule appConfigModule;
+        if (FastStart.getAppConfigModule() != null) {
+            log.debug("Taking Aws Appconfig module instance fetched at fast start");
+            try {
+                appConfigModule = FastStart.getAppConfigModule().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        } else {
+            log.debug("Processing creation of Aws Appconfig module instance with configuration [{}]", environment);
+            appConfigModule = new AppConfigModule(environment);
+        }
+        StartupPhase.APP_CONFIG_FETCHED.reached();
+        return appConfigModule;
     }
 }
@@ -52,6 +52,20 @@ public class AppConfigModule {
     @Getter(AccessLevel.PUBLIC)
     private Integer waitForConnectionTimeoutInMillis;
     @Getter(AccessLevel.PUBLIC)
+    private Integer scanIntervalInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer scanJitterInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer thingworxConnectionCount;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer supervisorCheckIntervalInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer reconnectBaseDelayInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer reconnectMaxDelayInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer resyncBatchSize;
+    @Getter(AccessLevel.PUBLIC)
     private String instanceNameEnvironmentVariableIndicator;
     @Getter(AccessLevel.PUBLIC)
     private String thingStatusIndicator;
@@ -69,6 +83,90 @@ public class AppConfigModule {
     private String disconnectedStatus;
     @Getter(AccessLevel.PUBLIC)
     private String propertyChangeQueueName;
+    @Getter(AccessLevel.PUBLIC)
+    private String parkedMessagesKeySuffix;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer parkedMessagesReplayBatchSize;
+    @Getter(AccessLevel.PUBLIC)
+    private String healthHashName;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer healthPublishIntervalInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer dispatcherShards;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer dispatcherReportIntervalInSeconds;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer ingestionBufferCapacity;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer ingestionConflationThreshold;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer fairnessQuantum;
+    @Getter(AccessLevel.PUBLIC)
+    private Double fairnessThingRatePerSecond;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer fairnessThingBurst;
+    @Getter(AccessLevel.PUBLIC)
+    private String executionMode;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer executionVirtualShards;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer executionMaxConcurrentThingCalls;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer executionMaxConcurrentPushes;
+    @Getter(AccessLevel.PUBLIC)
+    private Boolean spillEnabled;
+    @Getter(AccessLevel.PUBLIC)
+    private String spillDirectory;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer spillSegmentSizeInMB;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer spillMaxSizeInMB;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer spillQueueDepthThreshold;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer spillReplayRatePerSecond;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowBatchWindowInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowMaxThrottleBackoffInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowQueueCapacity;
+    @Getter(AccessLevel.PUBLIC)
+    private String shadowOverflowPolicy;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowInitialConcurrency;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowMaxConcurrency;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowMaxRetries;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowRetryBaseDelayInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowRetryMaxDelayInMillis;
+    @Getter(AccessLevel.PUBLIC)
+    private String shadowEndpointOverride;
+    @Getter(AccessLevel.PUBLIC)
+    private String shadowTransport;
+    @Getter(AccessLevel.PUBLIC)
+    private String instanceListName;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer drainTimeoutInSeconds;
+    @Getter(AccessLevel.PUBLIC)
+    private Boolean warmUpEnabled;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer warmUpBatchSize;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer warmUpParallelism;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer warmUpTimeoutInSeconds;
+    @Getter(AccessLevel.PUBLIC)
+    private String shadowMqttClientIdSuffix;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowMqttKeepAliveInSeconds;
+    @Getter(AccessLevel.PUBLIC)
+    private Integer shadowMqttMaxInFlight;
+    @Getter(AccessLevel.PUBLIC)
+    private String shadowMqttCommandTopic;
 
     private final org.springframework.core.env.Environment springBootEnvironment;
 
@@ -127,6 +225,14 @@ public class AppConfigModule {
         reconnectInterval = jsonResponseObjectThingworx.path("reconnectInterval").asInt();
         processScanRequestTimeoutInMillis = jsonResponseObjectThingworx.path("processScanRequestTimeoutInMillis").asInt();
         waitForConnectionTimeoutInMillis = jsonResponseObjectThingworx.path("waitForConnectionTimeoutInMillis").asInt();
+        scanIntervalInMillis = jsonResponseObjectThingworx.path("scanIntervalInMillis").asInt(1000);
+        scanJitterInMillis = jsonResponseObjectThingworx.path("scanJitterInMillis").asInt(200);
+        thingworxConnectionCount = jsonResponseObjectThingworx.path("connectionCount").asInt(1);
+        JsonNode jsonResponseObjectSupervisor = jsonResponseObjectThingworx.path("connectionSupervisor");
+        supervisorCheckIntervalInMillis = jsonResponseObjectSupervisor.path("checkIntervalInMillis").asInt(500);
+        reconnectBaseDelayInMillis = jsonResponseObjectSupervisor.path("reconnectBaseDelayInMillis").asInt(1000);
+        reconnectMaxDelayInMillis = jsonResponseObjectSupervisor.path("reconnectMaxDelayInMillis").asInt(30000);
+        resyncBatchSize = jsonResponseObjectSupervisor.path("resyncBatchSize").asInt(100);
 
         JsonNode jsonResponseObjectThingworxClientConnectorApp = jsonNode.path("thingworxClientConnectorSpringApp");
         instanceNameEnvironmentVariableIndicator = jsonResponseObjectThingworxClientConnectorApp.path("twxCloudConnectorInstanceNameEnvironmentVariableIndicator").asText();
@@ -141,10 +247,84 @@ public class AppConfigModule {
         connectedStatus = jsonResponseObjectThingworxClientConnectorApp.path("thingConnectionStatuses").path("connected").asText();
         disconnectedStatus = jsonResponseObjectThingworxClientConnectorApp.path("thingConnectionStatuses").path("disconnected").asText();
 
+        JsonNode jsonResponseObjectParkedMessages = jsonResponseObjectThingworxClientConnectorApp.path("parkedMessages");
+        parkedMessagesKeySuffix = jsonResponseObjectParkedMessages.path("keySuffix").asText(":parked");
+        parkedMessagesReplayBatchSize = jsonResponseObjectParkedMessages.path("replayBatchSize").asInt(500);
+
+        JsonNode jsonResponseObjectHealth = jsonResponseObjectThingworxClientConnectorApp.path("health");
+        healthHashName = jsonResponseObjectHealth.path("hashName").asText("connectorHealth");
+        healthPublishIntervalInMillis = jsonResponseObjectHealth.path("publishIntervalInMillis").asInt(2000);
+
+        JsonNode jsonResponseObjectDispatcher = jsonResponseObjectThingworxClientConnectorApp.path("dispatcher");
+        dispatcherShards = jsonResponseObjectDispatcher.path("shards").asInt(0);
+        dispatcherReportIntervalInSeconds = jsonResponseObjectDispatcher.path("reportIntervalInSeconds").asInt(60);
+        ingestionBufferCapacity = jsonResponseObjectDispatcher.path("bufferCapacity").asInt(10000);
+        ingestionConflationThreshold = jsonResponseObjectDispatcher.path("conflationThreshold").asInt(1000);
+        JsonNode jsonResponseObjectFairness = jsonResponseObjectDispatcher.path("fairness");
+        fairnessQuantum = jsonResponseObjectFairness.path("quantum").asInt(8192);
+        fairnessThingRatePerSecond = jsonResponseObjectFairness.path("thingRatePerSecond").asDouble(0);
+        fairnessThingBurst = jsonResponseObjectFairness.path("thingBurst").asInt(20);
+        JsonNode jsonResponseObjectSpill = jsonResponseObjectDispatcher.path("spill");
+        spillEnabled = jsonResponseObjectSpill.path("enabled").asBoolean(true);
+        spillDirectory = jsonResponseObjectSpill.path("directory").asText("/tmp/connector-spill");
+        spillSegmentSizeInMB = jsonResponseObjectSpill.path("segmentSizeInMB").asInt(64);
+        spillMaxSizeInMB = jsonResponseObjectSpill.path("maxSizeInMB").asInt(1024);
+        spillQueueDepthThreshold = jsonResponseObjectSpill.path("queueDepthThreshold").asInt(8000);
+        spillReplayRatePerSecond = jsonResponseObjectSpill.path("replayRatePerSecond").asInt(1000);
+
+        JsonNode jsonResponseObjectDeviceShadow = jsonResponseObjectThingworxClientConnectorApp.path("deviceShadow");
+        shadowBatchWindowInMillis = jsonResponseObjectDeviceShadow.path("batchWindowInMillis").asInt(200);
+        shadowMaxThrottleBackoffInMillis = jsonResponseObjectDeviceShadow.path("maxThrottleBackoffInMillis").asInt(5000);
+        shadowQueueCapacity = jsonResponseObjectDeviceShadow.path("queueCapacity").asInt(10000);
+        shadowOverflowPolicy = jsonResponseObjectDeviceShadow.path("overflowPolicy").asText("DROP_OLDEST");
+        shadowInitialConcurrency = jsonResponseObjectDeviceShadow.path("initialConcurrency").asInt(10);
+        shadowMaxConcurrency = jsonResponseObjectDeviceShadow.path("maxConcurrency").asInt(100);
+        shadowMaxRetries = jsonResponseObjectDeviceShadow.path("maxRetries").asInt(3);
+        shadowRetryBaseDelayInMillis = jsonResponseObjectDeviceShadow.path("retryBaseDelayInMillis").asInt(100);
+        shadowRetryMaxDelayInMillis = jsonResponseObjectDeviceShadow.path("retryMaxDelayInMillis").asInt(5000);
+        shadowEndpointOverride = jsonResponseObjectDeviceShadow.path("endpointOverride").asText("");
+        shadowTransport = jsonResponseObjectDeviceShadow.path("transport").asText("HTTP");
+        JsonNode jsonResponseObjectShadowMqtt = jsonResponseObjectDeviceShadow.path("mqtt");
+        shadowMqttClientIdSuffix = jsonResponseObjectShadowMqtt.path("clientIdSuffix").asText("-shadow");
+        shadowMqttKeepAliveInSeconds = jsonResponseObjectShadowMqtt.path("keepAliveInSeconds").asInt(60);
+        shadowMqttMaxInFlight = jsonResponseObjectShadowMqtt.path("maxInFlight").asInt(1000);
+        shadowMqttCommandTopic = jsonResponseObjectShadowMqtt.path("commandTopic").asText("");
+
+        JsonNode jsonResponseObjectWarmUp = jsonResponseObjectThingworxClientConnectorApp.path("warmUp");
+        warmUpEnabled = jsonResponseObjectWarmUp.path("enabled").asBoolean(true);
+        warmUpBatchSize = jsonResponseObjectWarmUp.path("batchSize").asInt(200);
+        warmUpParallelism = jsonResponseObjectWarmUp.path("parallelism").asInt(8);
+        warmUpTimeoutInSeconds = jsonResponseObjectWarmUp.path("timeoutInSeconds").asInt(120);
+        drainTimeoutInSeconds = jsonResponseObjectThingworxClientConnectorApp.path("shutdown").path("drainTimeoutInSeconds").asInt(20);
+        JsonNode jsonResponseObjectExecution = jsonResponseObjectThingworxClientConnectorApp.path("execution");
+        executionMode = jsonResponseObjectExecution.path("mode").asText("PLATFORM");
+        executionVirtualShards = jsonResponseObjectExecution.path("virtualShards").asInt(256);
+        executionMaxConcurrentThingCalls = jsonResponseObjectExecution.path("maxConcurrentThingCalls").asInt(256);
+        executionMaxConcurrentPushes = jsonResponseObjectExecution.path("maxConcurrentPushes").asInt(64);
+        // the instance list is maintained by the data fetcher lambda
+        instanceListName = jsonNode.path("thingworxDataFetcherLambda").path("twxCloudConnectorAppInstanceListNameInRedis").asText();
+
         JsonNode jsonResponseObjectThingworxPropertyChangeConsumerApp = jsonNode.path("thingworxPropertyChangeConsumerSpringApp");
         propertyChangeQueueName = jsonResponseObjectThingworxPropertyChangeConsumerApp.path("propertyChangeQueue").asText();
     }
 
+    /**
+     * Name of this connector instance, which is also the name of the redis topic it subscribes to.
+     * It is passed by the data fetcher lambda in the environment variable named in AppConfig.
+     */
+    public String getInstanceName() {
+        String InstanceNameEnvironmentVariableIndicator = instanceNameEnvironmentVariableIndicator;
+        String uniqueIdInstance = System.getenv(InstanceNameEnvironmentVariableIndicator);
+        if (uniqueIdInstance == null) {
+            log.error("The parameter [{}] is not defined in environment variables. Application will be shut down.", InstanceNameEnvironmentVariableIndicator);
+            throw new NullPointerException("The parameter [" + InstanceNameEnvironmentVariableIndicator + "] is not defined in environment variables. Application will be shut down.");
+        } else if (uniqueIdInstance.isEmpty()) {
+            log.error("The parameter [{}] defined in environment variables can not be empty. Application will be shut down.", InstanceNameEnvironmentVariableIndicator);
+            throw new IllegalArgumentException("The parameter [" + InstanceNameEnvironmentVariableIndicator + "] defined in environment variables can not be empty. Application will be shut down.");
+        }
+        return uniqueIdInstance;
+    }
+
     private String getDefaultClientId() {
         return UUID.randomUUID().toString();
     }
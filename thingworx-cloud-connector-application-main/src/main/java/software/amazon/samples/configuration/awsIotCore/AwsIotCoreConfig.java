@@ -1,16 +1,21 @@
 package software.amazon.samples.configuration.awsIotCore;
 
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.EndpointToRegion;
-import com.amazonaws.regions.Region;
 import com.amazonaws.services.iot.AWSIot;
 import com.amazonaws.services.iot.AWSIotClientBuilder;
 import com.amazonaws.services.iot.model.DescribeEndpointRequest;
-import com.amazonaws.services.iotdata.AWSIotData;
-import com.amazonaws.services.iotdata.AWSIotDataClientBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.providers.DefaultAwsRegionProviderChain;
+import software.amazon.awssdk.services.iotdataplane.IotDataPlaneAsyncClient;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import java.net.URI;
 
 /**
  * Spring boot component for creating AWS IoT API connection
@@ -29,10 +34,28 @@ public class AwsIotCoreConfig {
         return AWSIotClientBuilder.standard().withCredentials(new DefaultAWSCredentialsProviderChain()).build();
     }
 
-    @Bean
-    public AWSIotData getAwsIotData(AWSIot awsIot) {
-        String iotDataEndpoint = awsIot.describeEndpoint((new DescribeEndpointRequest()).withEndpointType("iot:Data-ATS")).getEndpointAddress();// getting TLS endpoint with Amazon cert
-        Region region = EndpointToRegion.guessRegionForEndpoint(iotDataEndpoint);
-        return AWSIotDataClientBuilder.standard().withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(iotDataEndpoint, region.getName())).withCredentials(new DefaultAWSCredentialsProviderChain()).build();
+    /**
+     * Non-blocking data plane client for device shadow updates. Retries are done by the shadow update dispatcher, so the SDK does not retry.
+     * The endpoint can be overridden in AppConfig, e.g. to run against a local HTTP stand-in.
+     */
+    @Bean(destroyMethod = "close")
+    public IotDataPlaneAsyncClient getIotDataPlaneAsyncClient(AWSIot awsIot, AppConfigModule appConfigModule) {
+        URI endpoint;
+        Region region;
+        if (appConfigModule.getShadowEndpointOverride().isEmpty()) {
+            String iotDataEndpoint = awsIot.describeEndpoint((new DescribeEndpointRequest()).withEndpointType("iot:Data-ATS")).getEndpointAddress();// getting TLS endpoint with Amazon cert
+            endpoint = URI.create("https://" + iotDataEndpoint);
+            region = Region.of(EndpointToRegion.guessRegionForEndpoint(iotDataEndpoint).getName());
+        } else {
+            endpoint = URI.create(appConfigModule.getShadowEndpointOverride());
+            region = new DefaultAwsRegionProviderChain().getRegion();
+        }
+        return IotDataPlaneAsyncClient.builder()
+                .endpointOverride(endpoint)
+                .region(region)
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(appConfigModule.getShadowMaxConcurrency()))
+                .overrideConfiguration(configuration -> configuration.retryPolicy(RetryPolicy.none()))
+                .build();
     }
 }
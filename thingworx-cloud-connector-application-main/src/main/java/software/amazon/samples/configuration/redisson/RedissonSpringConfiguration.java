@@ -2,17 +2,26 @@ package software.amazon.samples.configuration.redisson;
 
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.Redisson;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
 import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.redisson.codec.JsonJacksonCodec;
 import org.redisson.config.Config;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.env.Environment;
+import org.springframework.context.event.EventListener;
 import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
 import software.amazon.samples.ThingworxConnectorApplication;
 import software.amazon.samples.events.RedisTopicListener;
+import software.amazon.samples.services.WarmUpService;
+import software.amazon.samples.startup.StartupPhase;
+
+import java.util.List;
 
 /**
  * Redisson configuration Bean
@@ -27,8 +36,7 @@ import software.amazon.samples.events.RedisTopicListener;
 public class RedissonSpringConfiguration {
 
     @Bean
-    RedissonClient getRedissonClient(AppConfigModule appConfigModule, Environment environment, ApplicationContext applicationContext) {
-        String uniqueIdInstance = getInstanceNameFromEnvironmentalVariables(appConfigModule);
+    RedissonClient getRedissonClient(AppConfigModule appConfigModule) {
         Config configuration = new Config();
         configuration.setCodec(new JsonJacksonCodec());
         if ("dev".equalsIgnoreCase(System.getenv(ThingworxConnectorApplication.environmentNameIndicator))) {
@@ -39,22 +47,62 @@ public class RedissonSpringConfiguration {
             log.debug("Using redis cluster at: [{}]", appConfigModule.getRedisConfigurationEndpoint());
         }
         RedissonClient redissonClient = Redisson.create(configuration);
+        StartupPhase.REDISSON_CREATED.reached();
+        return redissonClient;
+    }
+
+    /**
+     * Subscribes to the instance topic once the application is ready, i.e. after the connection to thingworx was established.
+     * The assigned things are bound first. Messages parked by the router while this instance had no subscription are replayed before and right after subscribing.
+     * Messages from the topic are held until the second replay is done, so a parked value never overwrites a newer live value of the same thing.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeToInstanceTopic(ApplicationReadyEvent event) {
+        StartupPhase.CONTEXT_READY.reached();
+        ApplicationContext applicationContext = event.getApplicationContext();
+        AppConfigModule appConfigModule = applicationContext.getBean(AppConfigModule.class);
+        RedissonClient redissonClient = applicationContext.getBean(RedissonClient.class);
+        String uniqueIdInstance = appConfigModule.getInstanceName();
+        RedisTopicListener listener = new RedisTopicListener(applicationContext, redissonClient);
+        WarmUpService warmUpService = applicationContext.getBean(WarmUpService.class);
+
+        warmUpService.warmUp(uniqueIdInstance);
+        StartupPhase.WARMED_UP.reached();
+        replayParkedMessages(redissonClient, appConfigModule, uniqueIdInstance, listener);
         RTopic topic = redissonClient.getTopic(uniqueIdInstance);
         log.debug("Subscribing to topic: [{}]", uniqueIdInstance);
-        topic.addListener(String.class, new RedisTopicListener(applicationContext, redissonClient, appConfigModule));
-        return redissonClient;
+        listener.hold();
+        topic.addListener(String.class, listener);
+        StartupPhase.SUBSCRIBED.reached();
+        // messages parked between the first replay and the subscription, they are older than any message from the topic
+        replayParkedMessages(redissonClient, appConfigModule, uniqueIdInstance, listener);
+        int held = listener.release();
+        log.debug("Handed off [{}] messages received from topic [{}] during the replay.", held, uniqueIdInstance);
+        warmUpService.ready();
     }
 
-    private String getInstanceNameFromEnvironmentalVariables(AppConfigModule appConfigModule) {
-        String InstanceNameEnvironmentVariableIndicator = appConfigModule.getInstanceNameEnvironmentVariableIndicator();
-        String uniqueIdInstance = System.getenv(InstanceNameEnvironmentVariableIndicator);
-        if (uniqueIdInstance == null) {
-            log.error("The parameter [{}] is not defined in environment variables. Application will be shut down.", InstanceNameEnvironmentVariableIndicator);
-            throw new NullPointerException("The parameter [" + InstanceNameEnvironmentVariableIndicator + "] is not defined in environment variables. Application will be shut down.");
-        } else if (uniqueIdInstance.isEmpty()) {
-            log.error("The parameter [{}] defined in environment variables can not be empty. Application will be shut down.", InstanceNameEnvironmentVariableIndicator);
-            throw new IllegalArgumentException("The parameter [" + InstanceNameEnvironmentVariableIndicator + "] defined in environment variables can not be empty. Application will be shut down.");
+    private void replayParkedMessages(RedissonClient redissonClient, AppConfigModule appConfigModule, String topicName, RedisTopicListener listener) {
+        String parkedMessagesKey = topicName + appConfigModule.getParkedMessagesKeySuffix();
+        int batchSize = appConfigModule.getParkedMessagesReplayBatchSize();
+        long start = System.currentTimeMillis();
+        long replayed = 0;
+        List<String> messages;
+        do {
+            // take the batch from the head of the list atomically, the router keeps appending to the tail
+            RBatch batch = redissonClient.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+            RFuture<List<String>> range = batch.<String>getList(parkedMessagesKey, StringCodec.INSTANCE).rangeAsync(0, batchSize - 1);
+            batch.getList(parkedMessagesKey, StringCodec.INSTANCE).trimAsync(batchSize, -1);
+            batch.execute();
+            messages = range.getNow();
+            for (String message : messages) {
+                listener.dispatch(message);
+            }
+            replayed += messages.size();
+        } while (messages.size() == batchSize);
+
+        if (replayed > 0) {
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            log.info("Replayed [{}] parked messages from [{}] in [{}] milliseconds ([{}] messages per second).", replayed, parkedMessagesKey, elapsed, replayed * 1000 / elapsed);
         }
-        return uniqueIdInstance;
     }
-}
\ No newline at end of file
+}
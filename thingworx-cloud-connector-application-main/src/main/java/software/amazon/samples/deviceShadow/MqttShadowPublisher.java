@@ -0,0 +1,218 @@
+package software.amazon.samples.deviceShadow;
+
+import com.amazonaws.regions.EndpointToRegion;
+import com.amazonaws.services.iot.AWSIot;
+import com.amazonaws.services.iot.model.DescribeEndpointRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.crt.mqtt.MqttClientConnection;
+import software.amazon.awssdk.crt.mqtt.MqttClientConnectionEvents;
+import software.amazon.awssdk.crt.mqtt.MqttMessage;
+import software.amazon.awssdk.crt.mqtt.QualityOfService;
+import software.amazon.awssdk.iot.AwsIotMqttConnectionBuilder;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component publishing device shadow updates over one long-lived MQTT connection of this connector instance
+ * the connection uses websockets signed with the credentials of the task, so no device certificate is needed.
+ * Updates are published with QoS1 to the shadow update topic and optionally to a device command topic, acks are pipelined
+ * and the number of unacknowledged publishes is limited. Used instead of the HTTP dispatcher when the shadow transport is MQTT.
+ */
+
+@Slf4j
+@Component
+public class MqttShadowPublisher {
+
+    private static final long REPORT_INTERVAL_IN_MILLIS = 60000;
+    private static final long DISCONNECT_TIMEOUT_IN_MILLIS = 5000;
+    private static final long DRAIN_POLL_INTERVAL_IN_MILLIS = 50;
+    private static final String SHADOW_UPDATE_TOPIC = "$aws/things/%s/shadow/update";
+    private static final String THING_NAME_PLACEHOLDER = "{thingName}";
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    AWSIot awsIot;
+
+    private MqttClientConnection connection;
+    private Semaphore inFlight;
+    private volatile boolean connected;
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mqtt-shadow-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong ackLatencyNanos = new AtomicLong();
+    private final AtomicLong maxAckLatencyNanos = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        String endpoint = awsIot.describeEndpoint((new DescribeEndpointRequest()).withEndpointType("iot:Data-ATS")).getEndpointAddress();
+        try (AwsIotMqttConnectionBuilder builder = AwsIotMqttConnectionBuilder.newDefaultBuilder()) {
+            start(builder.withEndpoint(endpoint)
+                    .withWebsockets(true)
+                    .withWebsocketSigningRegion(EndpointToRegion.guessRegionForEndpoint(endpoint).getName())
+                    .withClientId(appConfigModule.getInstanceName() + appConfigModule.getShadowMqttClientIdSuffix())
+                    .withCleanSession(true)
+                    .withKeepAliveSecs(appConfigModule.getShadowMqttKeepAliveInSeconds())
+                    .withConnectionEventCallbacks(new MqttClientConnectionEvents() {
+                        @Override
+                        public void onConnectionInterrupted(int errorCode) {
+                            connected = false;
+                            log.warn("MQTT connection for device shadow updates was interrupted, error code [{}]", errorCode);
+                        }
+
+                        @Override
+                        public void onConnectionResumed(boolean sessionPresent) {
+                            connected = true;
+                            log.info("MQTT connection for device shadow updates was resumed");
+                        }
+                    })
+                    .build(), endpoint);
+        }
+    }
+
+    /**
+     * Connects and publishes over the given connection, which is closed on stop.
+     */
+    void start(MqttClientConnection connection, String endpoint) {
+        this.connection = connection;
+        inFlight = new Semaphore(appConfigModule.getShadowMqttMaxInFlight());
+        // the client reconnects on its own, publishes issued while disconnected are sent once it is back
+        connection.connect().whenComplete((sessionPresent, error) -> {
+            if (error == null) {
+                connected = true;
+                log.info("MQTT connection for device shadow updates established to [{}]", endpoint);
+            } else {
+                log.error("Could not connect to [{}] for device shadow updates: {}", endpoint, error.getMessage());
+            }
+        });
+        reporter.scheduleAtFixedRate(this::report, REPORT_INTERVAL_IN_MILLIS, REPORT_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reporter.shutdownNow();
+        if (connection != null) {
+            try {
+                connection.disconnect().get(DISCONNECT_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("Could not disconnect MQTT connection for device shadow updates: {}", e.getMessage());
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Waits until all publishes were acknowledged or the deadline passed.
+     *
+     * @return number of publishes not acknowledged by the deadline
+     */
+    public int drain(long deadlineAtMillis) throws InterruptedException {
+        if (inFlight == null) {
+            return 0;
+        }
+        int left;
+        while ((left = appConfigModule.getShadowMqttMaxInFlight() - inFlight.availablePermits()) > 0 && System.currentTimeMillis() < deadlineAtMillis) {
+            Thread.sleep(DRAIN_POLL_INTERVAL_IN_MILLIS);
+        }
+        return left;
+    }
+
+    public boolean isEnabled() {
+        return "MQTT".equalsIgnoreCase(appConfigModule.getShadowTransport());
+    }
+
+    /**
+     * Publishes the shadow document and, when a command topic is configured, its reported properties to the command topic of the thing.
+     * The returned future completes when all publishes were acknowledged and fails with {@link RejectedExecutionException}
+     * when too many publishes are waiting for their ack.
+     */
+    public CompletableFuture<Void> updateThingShadow(String thingName, JSONObject payload) {
+        String commandTopicTemplate = appConfigModule.getShadowMqttCommandTopic();
+        CompletableFuture<Void> shadowUpdate = publish(String.format(SHADOW_UPDATE_TOPIC, thingName), payload.toString());
+        if (commandTopicTemplate.isEmpty()) {
+            return shadowUpdate;
+        }
+        JSONObject reported = payload.optJSONObject("state") == null ? null : payload.optJSONObject("state").optJSONObject("reported");
+        if (reported == null) {
+            return shadowUpdate;
+        }
+        return CompletableFuture.allOf(shadowUpdate, publish(commandTopicTemplate.replace(THING_NAME_PLACEHOLDER, thingName), reported.toString()));
+    }
+
+    private CompletableFuture<Void> publish(String topic, String payload) {
+        if (!inFlight.tryAcquire()) {
+            rejected.incrementAndGet();
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new RejectedExecutionException("Too many unacknowledged MQTT publishes"));
+            return future;
+        }
+        published.incrementAndGet();
+        long start = System.nanoTime();
+        MqttMessage message = new MqttMessage(topic, payload.getBytes(StandardCharsets.UTF_8), QualityOfService.AT_LEAST_ONCE, false);
+        return connection.publish(message).handle((packetId, error) -> {
+            inFlight.release();
+            if (error != null) {
+                failed.incrementAndGet();
+                throw new RejectedExecutionException("MQTT publish to [" + topic + "] failed: " + error.getMessage(), error);
+            }
+            long latency = System.nanoTime() - start;
+            acknowledged.incrementAndGet();
+            ackLatencyNanos.addAndGet(latency);
+            maxAckLatencyNanos.accumulateAndGet(latency, Math::max);
+            return null;
+        });
+    }
+
+    private void report() {
+        long acks = acknowledged.get();
+        if (published.get() > 0) {
+            log.info("MQTT shadow publisher: connected [{}], published [{}], acknowledged [{}], in flight [{}], rejected [{}], failed [{}], ack latency avg [{}] ms, max [{}] ms",
+                    connected, published.get(), acks, appConfigModule.getShadowMqttMaxInFlight() - inFlight.availablePermits(), rejected.get(), failed.get(),
+                    acks == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(ackLatencyNanos.get() / acks), TimeUnit.NANOSECONDS.toMillis(maxAckLatencyNanos.getAndSet(0)));
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getAcknowledgedCount() {
+        return acknowledged.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,290 @@
+package software.amazon.samples.deviceShadow;
+
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.services.AwsIotService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component coalescing thingworx property changes into device shadow updates
+ * changes of a thing are merged over a window into one state.reported document and one shadow update is sent per thing per window.
+ * A thing has at most one update in flight, changes received meanwhile wait for the next window, so updates of a thing are applied in order.
+ * Values equal to the value the shadow last acknowledged are skipped. Changes of an update that stayed throttled or was dropped by a full
+ * dispatcher queue are merged back and sent after a growing backoff, changes of an update that failed otherwise are counted as lost.
+ */
+
+@Slf4j
+@Component
+public class ShadowUpdateBatcher {
+
+    private static final long REPORT_INTERVAL_IN_MILLIS = 60000;
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    AwsIotService awsIotService;
+
+    private final Map<String, ThingShadow> shadows = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shadow-update-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean drained = new AtomicBoolean();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong unchangedValues = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong throttledUpdates = new AtomicLong();
+    private final AtomicLong lostChanges = new AtomicLong();
+    private volatile long throttledUntilMillis;
+    private volatile long backoffMillis;
+    private final AtomicLong lastReportAtMillis = new AtomicLong(System.currentTimeMillis());
+
+    @PostConstruct
+    public void start() {
+        long window = appConfigModule.getShadowBatchWindowInMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        drain(System.currentTimeMillis());
+    }
+
+    /**
+     * Sends the pending changes right away and again after each batch window while sends are throttled or an update of the thing is in flight,
+     * until the deadline. Runs once, later calls return right away.
+     *
+     * @return number of things whose changes could not be sent by the deadline
+     */
+    public int drain(long deadlineAtMillis) throws InterruptedException {
+        if (!drained.compareAndSet(false, true)) {
+            return 0;
+        }
+        scheduler.shutdownNow();
+        do {
+            throttledUntilMillis = 0;
+            flush();
+            if (getThingsWithPendingChanges() == 0) {
+                break;
+            }
+            Thread.sleep(appConfigModule.getShadowBatchWindowInMillis());
+        } while (System.currentTimeMillis() < deadlineAtMillis);
+        return getThingsWithPendingChanges();
+    }
+
+    public void propertyChanged(String thingName, String propertyName, Object value) {
+        changes.incrementAndGet();
+        while (true) {
+            ThingShadow shadow = shadows.computeIfAbsent(thingName, ThingShadow::new);
+            synchronized (shadow) {
+                // an unbound shadow may have been removed in the meantime
+                if (shadows.get(thingName) == shadow) {
+                    shadow.pending.put(propertyName, value);
+                    shadow.unbound = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the acknowledged values of an unbound thing, its pending changes are still sent.
+     */
+    public void thingUnbound(String thingName) {
+        ThingShadow shadow = shadows.get(thingName);
+        if (shadow != null) {
+            synchronized (shadow) {
+                shadow.reported.clear();
+                shadow.unbound = true;
+                removeIfDone(shadow);
+            }
+        }
+    }
+
+    void flush() {
+        try {
+            if (System.currentTimeMillis() >= throttledUntilMillis) {
+                for (ThingShadow shadow : shadows.values()) {
+                    Map<String, Object> update = takeUpdate(shadow);
+                    if (update != null) {
+                        send(shadow, update);
+                    }
+                }
+            }
+            report();
+        } catch (Exception e) {
+            // an exception would cancel the scheduled flush
+            log.error("Could not flush device shadow updates: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return changed values to send, null when the thing has an update in flight or nothing changed
+     */
+    private Map<String, Object> takeUpdate(ThingShadow shadow) {
+        synchronized (shadow) {
+            if (shadow.inFlight || shadow.pending.isEmpty()) {
+                return null;
+            }
+            Map<String, Object> update = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> change : shadow.pending.entrySet()) {
+                if (shadow.reported.containsKey(change.getKey()) && Objects.equals(shadow.reported.get(change.getKey()), change.getValue())) {
+                    unchangedValues.incrementAndGet();
+                } else {
+                    update.put(change.getKey(), change.getValue());
+                }
+            }
+            shadow.pending.clear();
+            if (update.isEmpty()) {
+                removeIfDone(shadow);
+                return null;
+            }
+            shadow.inFlight = true;
+            return update;
+        }
+    }
+
+    private void send(ThingShadow shadow, Map<String, Object> update) {
+        try {
+            JSONObject changedPropertyNode = new JSONObject();
+            for (Map.Entry<String, Object> change : update.entrySet()) {
+                changedPropertyNode.put(change.getKey(), change.getValue() == null ? JSONObject.NULL : change.getValue());
+            }
+            JSONObject stateNode = new JSONObject().put("state", new JSONObject().put("reported", changedPropertyNode));
+            updates.incrementAndGet();
+            awsIotService.updateThingShadow(shadow.thingName, stateNode).whenComplete((result, error) -> completed(shadow, update, error == null ? null : unwrap(error)));
+        } catch (Exception e) {
+            completed(shadow, update, e);
+        }
+    }
+
+    private void completed(ThingShadow shadow, Map<String, Object> update, Throwable error) {
+        boolean requeued = error != null && (ShadowUpdateDispatcher.isThrottling(error) || error instanceof RejectedExecutionException);
+        synchronized (shadow) {
+            shadow.inFlight = false;
+            if (error == null) {
+                shadow.reported.putAll(update);
+            } else if (requeued) {
+                // changes received in the meantime are newer and win
+                update.forEach(shadow.pending::putIfAbsent);
+            } else {
+                lostChanges.addAndGet(update.size());
+            }
+            removeIfDone(shadow);
+        }
+        if (error == null) {
+            backoffMillis = 0;
+        } else if (requeued) {
+            throttled(shadow.thingName);
+        } else {
+            log.warn("Device shadow update of thing [{}] failed, [{}] property changes are lost: {}", shadow.thingName, update.size(), error.getMessage());
+        }
+    }
+
+    /**
+     * Called while holding the lock of the shadow.
+     */
+    private void removeIfDone(ThingShadow shadow) {
+        if (shadow.unbound && !shadow.inFlight && shadow.pending.isEmpty()) {
+            shadows.remove(shadow.thingName, shadow);
+        }
+    }
+
+    private void throttled(String thingName) {
+        throttledUpdates.incrementAndGet();
+        long window = appConfigModule.getShadowBatchWindowInMillis();
+        backoffMillis = Math.min(appConfigModule.getShadowMaxThrottleBackoffInMillis(), Math.max(window, backoffMillis * 2));
+        throttledUntilMillis = System.currentTimeMillis() + backoffMillis;
+        log.warn("Device shadow update of thing [{}] was throttled or dropped, next updates in [{}] milliseconds", thingName, backoffMillis);
+    }
+
+    private Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void report() {
+        long now = System.currentTimeMillis();
+        long lastReport = lastReportAtMillis.get();
+        if (now - lastReport >= REPORT_INTERVAL_IN_MILLIS && lastReportAtMillis.compareAndSet(lastReport, now)) {
+            if (changes.get() > 0) {
+                log.info("Device shadow batcher: [{}] property changes, [{}] unchanged values skipped, [{}] shadow updates, merge ratio [{}], [{}] throttled, [{}] changes lost",
+                        changes.get(), unchangedValues.get(), updates.get(), String.format("%.2f", getMergeRatio()), throttledUpdates.get(), lostChanges.get());
+            }
+        }
+    }
+
+    private int getThingsWithPendingChanges() {
+        int things = 0;
+        for (ThingShadow shadow : shadows.values()) {
+            synchronized (shadow) {
+                if (!shadow.pending.isEmpty()) {
+                    things++;
+                }
+            }
+        }
+        return things;
+    }
+
+    /**
+     * @return property changes per sent shadow update
+     */
+    public double getMergeRatio() {
+        long sent = updates.get();
+        return sent == 0 ? 0 : (double) changes.get() / sent;
+    }
+
+    public long getChangeCount() {
+        return changes.get();
+    }
+
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledUpdates.get();
+    }
+
+    public long getLostChangeCount() {
+        return lostChanges.get();
+    }
+
+    int getTrackedThingCount() {
+        return shadows.size();
+    }
+
+    /**
+     * Changes and acknowledged values of one thing, guarded by its own lock.
+     */
+    private static class ThingShadow {
+        private final String thingName;
+        private final Map<String, Object> pending = new LinkedHashMap<>();
+        private final Map<String, Object> reported = new HashMap<>();
+        private boolean inFlight;
+        // removed once its last changes were sent
+        private boolean unbound;
+
+        private ThingShadow(String thingName) {
+            this.thingName = thingName;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package software.amazon.samples.deviceShadow;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.iotdataplane.IotDataPlaneAsyncClient;
+import software.amazon.awssdk.services.iotdataplane.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.iotdataplane.model.UpdateThingShadowRequest;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component sending device shadow updates with the non-blocking iot data plane client
+ * requests wait in a bounded queue and are sent while the number of requests in flight is below an adaptive limit.
+ * The limit grows by one per round of successful requests and is halved on throttling (AIMD), throttled and failed requests
+ * are retried with full jitter. When the queue is full the overflow policy decides whether the oldest or the new update is dropped.
+ */
+
+@Slf4j
+@Component
+public class ShadowUpdateDispatcher {
+
+    private static final long REPORT_INTERVAL_IN_MILLIS = 60000;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long DRAIN_POLL_INTERVAL_IN_MILLIS = 50;
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    IotDataPlaneAsyncClient iotDataPlaneAsyncClient;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private final Deque<ShadowUpdate> queue = new ArrayDeque<>();
+    private int inFlight;
+    private double limit;
+    private long lastDecreaseAtNanos = System.nanoTime();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shadow-update-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private OverflowPolicy overflowPolicy;
+
+    private final AtomicInteger retrying = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        limit = Math.min(appConfigModule.getShadowInitialConcurrency(), appConfigModule.getShadowMaxConcurrency());
+        try {
+            overflowPolicy = OverflowPolicy.valueOf(appConfigModule.getShadowOverflowPolicy());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown shadow update overflow policy [{}], using [{}]", appConfigModule.getShadowOverflowPolicy(), OverflowPolicy.DROP_OLDEST);
+            overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        }
+        scheduler.scheduleAtFixedRate(this::report, REPORT_INTERVAL_IN_MILLIS, REPORT_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Waits until all queued, in flight and retrying updates completed or the deadline passed.
+     *
+     * @return number of updates not completed by the deadline
+     */
+    public int drain(long deadlineAtMillis) throws InterruptedException {
+        int left;
+        while ((left = getQueueDepth() + getInFlight() + retrying.get()) > 0 && System.currentTimeMillis() < deadlineAtMillis) {
+            Thread.sleep(DRAIN_POLL_INTERVAL_IN_MILLIS);
+        }
+        return left;
+    }
+
+    /**
+     * Queues a shadow update. Never blocks, the returned future fails with {@link RejectedExecutionException} when the update was dropped
+     * by the overflow policy and with the last error when all retries failed.
+     */
+    public CompletableFuture<Void> submit(String thingName, byte[] payload) {
+        ShadowUpdate update = new ShadowUpdate(thingName, payload);
+        ShadowUpdate overflow = null;
+        synchronized (lock) {
+            if (queue.size() >= appConfigModule.getShadowQueueCapacity()) {
+                overflow = overflowPolicy == OverflowPolicy.DROP_OLDEST ? queue.pollFirst() : update;
+            }
+            if (overflow != update) {
+                queue.addLast(update);
+            }
+        }
+        if (overflow != null) {
+            dropped.incrementAndGet();
+            overflow.future.completeExceptionally(new RejectedExecutionException("Shadow update queue is full"));
+        }
+        pump();
+        return update.future;
+    }
+
+    private void pump() {
+        List<ShadowUpdate> ready = new ArrayList<>();
+        synchronized (lock) {
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                ready.add(queue.pollFirst());
+                inFlight++;
+            }
+        }
+        ready.forEach(this::send);
+    }
+
+    private void send(ShadowUpdate update) {
+        update.sentAtNanos = System.nanoTime();
+        UpdateThingShadowRequest request = UpdateThingShadowRequest.builder().thingName(update.thingName).payload(SdkBytes.fromByteArrayUnsafe(update.payload)).build();
+        try {
+            iotDataPlaneAsyncClient.updateThingShadow(request).whenComplete((response, error) -> completed(update, error == null ? null : unwrap(error)));
+        } catch (Exception e) {
+            completed(update, e);
+        }
+    }
+
+    private void completed(ShadowUpdate update, Throwable error) {
+        boolean throttling = isThrottling(error);
+        synchronized (lock) {
+            inFlight--;
+            if (error == null) {
+                limit = Math.min(appConfigModule.getShadowMaxConcurrency(), limit + 1 / limit);
+            } else if (throttling && update.sentAtNanos - lastDecreaseAtNanos > 0) {
+                // requests sent before the last decrease saw the old limit and must not decrease it again
+                limit = Math.max(1, limit * DECREASE_FACTOR);
+                lastDecreaseAtNanos = System.nanoTime();
+            }
+        }
+
+        if (throttling) {
+            throttled.incrementAndGet();
+        }
+        if (error == null) {
+            succeeded.incrementAndGet();
+            latencyNanos.addAndGet(System.nanoTime() - update.sentAtNanos);
+            update.future.complete(null);
+        } else if (error instanceof ResourceNotFoundException) {
+            log.warn("Device was not found in AWS Iot core. Shadow update was not successful. Aws error: {}", error.getMessage());
+            update.future.complete(null);
+        } else if (isRetryable(error) && update.attempt < appConfigModule.getShadowMaxRetries()) {
+            retried.incrementAndGet();
+            retrying.incrementAndGet();
+            long delay = ThreadLocalRandom.current().nextLong(retryDelayCap(update.attempt++) + 1);
+            try {
+                scheduler.schedule(() -> retry(update), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // stopped, the update fails with the error it would have been retried for
+                retrying.decrementAndGet();
+                failed.incrementAndGet();
+                error.addSuppressed(e);
+                update.future.completeExceptionally(error);
+            }
+        } else {
+            failed.incrementAndGet();
+            log.debug("Shadow update of thing [{}] failed after [{}] attempts: {}", update.thingName, update.attempt + 1, error.getMessage());
+            update.future.completeExceptionally(error);
+        }
+        pump();
+    }
+
+    private void retry(ShadowUpdate update) {
+        synchronized (lock) {
+            // retries are older than anything queued, they go first and are not subject to the overflow policy
+            queue.addFirst(update);
+            retrying.decrementAndGet();
+        }
+        pump();
+    }
+
+    private long retryDelayCap(int attempt) {
+        long base = appConfigModule.getShadowRetryBaseDelayInMillis();
+        return Math.min(appConfigModule.getShadowRetryMaxDelayInMillis(), base << Math.min(attempt, 20));
+    }
+
+    public static boolean isThrottling(Throwable error) {
+        return error instanceof AwsServiceException && ((AwsServiceException) error).isThrottlingException();
+    }
+
+    private boolean isRetryable(Throwable error) {
+        return isThrottling(error) || error instanceof SdkException && ((SdkException) error).retryable();
+    }
+
+    private Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void report() {
+        synchronized (lock) {
+            if (inFlight == 0 && queue.isEmpty() && succeeded.get() == 0) {
+                return;
+            }
+        }
+        long succeededCount = succeeded.get();
+        log.info("Shadow update dispatcher: queue depth [{}], in flight [{}], limit [{}], succeeded [{}], latency avg [{}] ms, throttled [{}], retried [{}], dropped [{}], failed [{}]",
+                getQueueDepth(), getInFlight(), String.format("%.1f", getLimit()), succeededCount,
+                succeededCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latencyNanos.get() / succeededCount), throttled.get(), retried.get(), dropped.get(), failed.get());
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public double getLimit() {
+        synchronized (lock) {
+            return limit;
+        }
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private static class ShadowUpdate {
+        private final String thingName;
+        private final byte[] payload;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private int attempt;
+        private long sentAtNanos;
+
+        private ShadowUpdate(String thingName, byte[] payload) {
+            this.thingName = thingName;
+            this.payload = payload;
+        }
+    }
+}
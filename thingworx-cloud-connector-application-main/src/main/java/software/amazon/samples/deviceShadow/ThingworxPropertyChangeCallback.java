@@ -13,4 +13,9 @@ import com.thingworx.communications.client.things.VirtualThingPropertyChangeEven
 public interface ThingworxPropertyChangeCallback {
 
     void call(VirtualThingPropertyChangeEvent event);
+
+    /**
+     * Called when the thing was unbound, state kept for the thing can be released.
+     */
+    void thingUnbound(String thingName);
 }
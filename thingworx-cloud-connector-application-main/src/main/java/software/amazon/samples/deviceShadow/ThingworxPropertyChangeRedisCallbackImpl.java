@@ -2,15 +2,13 @@ package software.amazon.samples.deviceShadow;
 
 import com.thingworx.communications.client.things.VirtualThingPropertyChangeEvent;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import software.amazon.samples.services.AwsIotService;
 import software.amazon.samples.thingworx.AwsConnectedThing;
 
 /**
  * Callback implementation for thingworx property change events
+ * changes are handed to the shadow update batcher which sends them to the device shadow
  *
  * @author Maciej Kiciński
  * @version 1.0
@@ -22,22 +20,16 @@ import software.amazon.samples.thingworx.AwsConnectedThing;
 public class ThingworxPropertyChangeRedisCallbackImpl implements ThingworxPropertyChangeCallback {
 
     @Autowired
-    private AwsIotService awsIotService;
+    private ShadowUpdateBatcher shadowUpdateBatcher;
 
     @Override
     public void call(VirtualThingPropertyChangeEvent event) {
         AwsConnectedThing awsConnectedThing = ((AwsConnectedThing) event.getSource());
+        shadowUpdateBatcher.propertyChanged(awsConnectedThing.getName(), event.getPropertyDefinition().getName(), event.getPrimitiveValue().getValue());
+    }
 
-        JSONObject stateNode = new JSONObject();
-        JSONObject reportedNode = new JSONObject();
-        JSONObject changedPropertyNode = new JSONObject();
-        try {
-            changedPropertyNode.put(event.getPropertyDefinition().getName(), event.getPrimitiveValue().getValue());
-            reportedNode.put("reported", changedPropertyNode);
-            stateNode.put("state", reportedNode);
-        } catch (JSONException e) {
-            log.error("Could not create property change payload: {}", e.getMessage());
-        }
-        awsIotService.updateThingShadow(awsConnectedThing.getName(), stateNode); // updating device shadow
+    @Override
+    public void thingUnbound(String thingName) {
+        shadowUpdateBatcher.thingUnbound(thingName);
     }
-}
\ No newline at end of file
+}
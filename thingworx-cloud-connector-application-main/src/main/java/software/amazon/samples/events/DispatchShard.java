@@ -0,0 +1,137 @@
+package software.amazon.samples.events;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.samples.health.ConnectorHealth;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Single threaded worker owning a subset of things
+ * messages are handled in the order they were handed off, which keeps the order of messages of each thing
+ */
+
+@Slf4j
+class DispatchShard implements Runnable {
+
+    private final int index;
+    private final IngestionBuffer buffer;
+    private final Consumer<String> handler;
+    private final ConnectorHealth connectorHealth;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean stopped;
+
+    private final AtomicLong handedOff = new AtomicLong();
+    private final AtomicLong handoffNanosTotal = new AtomicLong();
+    private final AtomicLong handoffNanosMax = new AtomicLong();
+
+    DispatchShard(int index, IngestionBuffer buffer, Consumer<String> handler, ConnectorHealth connectorHealth, ThreadFactory threadFactory) {
+        this.index = index;
+        this.buffer = buffer;
+        this.handler = handler;
+        this.connectorHealth = connectorHealth;
+        this.thread = threadFactory.newThread(this);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void submit(String thingName, boolean statusMessage, String message) {
+        IngestionBuffer.Offer offer = buffer.offer(thingName, statusMessage, message, System.currentTimeMillis());
+        if (offer != IngestionBuffer.Offer.QUEUED) {
+            // the message will never be processed on its own
+            connectorHealth.messageDiscarded();
+            if (offer == IngestionBuffer.Offer.DROPPED) {
+                log.warn("Ingestion buffer of dispatch shard [{}] is full, telemetry of thing [{}] dropped", index, thingName);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!stopped && (running || buffer.size() > 0)) {
+            IngestionBuffer.Entry entry;
+            try {
+                entry = buffer.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (entry == null) {
+                continue;
+            }
+            recordHandoff(System.nanoTime() - entry.getEnqueuedAtNanos());
+            try {
+                // conflated telemetry is merged here, not on the thread receiving from redis
+                for (String message : entry.getMessages()) {
+                    handle(message);
+                }
+            } catch (Exception e) {
+                log.error("Could not conflate messages on dispatch shard [{}]: {}", index, e.toString());
+            } finally {
+                connectorHealth.messageProcessed(entry.getReceivedAtMillis());
+            }
+        }
+    }
+
+    private void handle(String message) {
+        try {
+            handler.accept(message);
+        } catch (Exception e) {
+            // a failing message must not stop the shard, the other things it owns would starve
+            log.error("Could not handle message on dispatch shard [{}]: {}", index, e.toString());
+        }
+    }
+
+    /**
+     * Lets the worker thread finish once the queue is drained.
+     */
+    void shutdown() {
+        running = false;
+    }
+
+    /**
+     * Stops the worker thread right away, a thingworx call in progress is interrupted and the messages still queued are left.
+     */
+    void stopNow() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    void awaitTermination(long timeoutMillis) throws InterruptedException {
+        thread.join(timeoutMillis);
+    }
+
+    boolean isTerminated() {
+        return !thread.isAlive();
+    }
+
+    private void recordHandoff(long nanos) {
+        handedOff.incrementAndGet();
+        handoffNanosTotal.addAndGet(nanos);
+        handoffNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getQueueDepth() {
+        return buffer.size();
+    }
+
+    IngestionBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return number of messages, total and maximum handoff latency since the previous call as {count, totalNanos, maxNanos}
+     */
+    long[] drainHandoffStats() {
+        return new long[]{handedOff.getAndSet(0), handoffNanosTotal.getAndSet(0), handoffNanosMax.getAndSet(0)};
+    }
+}
@@ -0,0 +1,406 @@
+package software.amazon.samples.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded buffer between the redis topic and a dispatch shard, keeping one FIFO queue per thing
+ * the queues are served by deficit round robin: each thing with waiting messages gets a quantum of message characters per round,
+ * so a thing sending many or large messages can not delay the other things of the shard. With a rate limit, a thing is served
+ * at most thingRatePerSecond messages per second with bursts of thingBurst, telemetry of a thing over its rate is merged into its pending telemetry.
+ * Once the buffer holds conflationThreshold messages, a telemetry message is merged into the pending telemetry message of the same thing,
+ * keeping only the newest value of each property. Enqueueing never parses, merged messages are parsed by the worker taking the entry. Status messages are never merged or dropped
+ * and act as a barrier, telemetry received after a status message is never merged into telemetry received before it.
+ * A telemetry message which can not be merged into a full buffer is dropped.
+ */
+
+@Slf4j
+public class IngestionBuffer {
+
+    public enum Offer {QUEUED, CONFLATED, DROPPED}
+
+    // bounds the unparsed messages held by one entry, a thing sending faster is given a new entry
+    private static final int MAX_CONFLATED_MESSAGES = 64;
+
+    private final int capacity;
+    private final int conflationThreshold;
+    private final int quantum;
+    private final double thingRatePerSecond;
+    private final double thingBurst;
+    private final ObjectMapper mapper;
+    private final String payloadIndicator;
+    private final String modelIndicator;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // guarded by lock. Queues stay here while their token bucket refills, so a thing can not reset its limit by emptying its queue
+    private final Map<String, ThingQueue> queues = new HashMap<>();
+    private final Deque<ThingQueue> activeQueues = new ArrayDeque<>();
+    private Map<String, ThingFairnessStats> thingStats = new HashMap<>();
+    private int size;
+
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private volatile int highWaterMark;
+
+    /**
+     * @param quantum            characters of messages each thing may be served per round
+     * @param thingRatePerSecond messages per second served of each thing, 0 for no limit
+     * @param thingBurst         messages of a thing served at once after it was idle
+     */
+    public IngestionBuffer(int capacity, int conflationThreshold, int quantum, double thingRatePerSecond, int thingBurst, ObjectMapper mapper, String payloadIndicator, String modelIndicator) {
+        this.capacity = capacity;
+        this.conflationThreshold = Math.min(conflationThreshold, capacity);
+        this.quantum = Math.max(1, quantum);
+        this.thingRatePerSecond = Math.max(0, thingRatePerSecond);
+        this.thingBurst = Math.max(1, thingBurst);
+        this.mapper = mapper;
+        this.payloadIndicator = payloadIndicator;
+        this.modelIndicator = modelIndicator;
+    }
+
+    public Offer offer(String thingName, boolean statusMessage, String message, long receivedAtMillis) {
+        lock.lock();
+        try {
+            ThingQueue queue = queues.computeIfAbsent(thingName, ThingQueue::new);
+            if (statusMessage) {
+                queue.mergeableTelemetry = null;
+            } else if (thingName != null && queue.mergeableTelemetry != null) {
+                boolean overRate = queue.isOverRate(System.nanoTime());
+                if ((overRate || size >= conflationThreshold) && queue.mergeableTelemetry.conflate(message)) {
+                    conflated.incrementAndGet();
+                    if (overRate) {
+                        throttled.incrementAndGet();
+                        statsOf(thingName).throttled();
+                    }
+                    return Offer.CONFLATED;
+                }
+            }
+            if (!statusMessage && size >= capacity) {
+                dropped.incrementAndGet();
+                return Offer.DROPPED;
+            }
+            Entry entry = new Entry(message, receivedAtMillis);
+            queue.entries.addLast(entry);
+            size++;
+            if (!statusMessage && thingName != null) {
+                queue.mergeableTelemetry = entry;
+            }
+            if (!queue.active) {
+                queue.active = true;
+                activeQueues.addLast(queue);
+            }
+            if (size > highWaterMark) {
+                highWaterMark = size;
+            }
+            notEmpty.signal();
+            return Offer.QUEUED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return next entry in deficit round robin order, or null when none can be served within the timeout
+     */
+    public Entry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                Entry entry = next(now);
+                if (entry != null) {
+                    return entry;
+                }
+                long nanos = deadline - now;
+                if (nanos <= 0) {
+                    return null;
+                }
+                // all waiting things are over their rate, wake up when the first one gets a token again
+                notEmpty.awaitNanos(activeQueues.isEmpty() ? nanos : Math.min(nanos, nanosUntilAnyToken(now)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry next(long now) {
+        int throttledQueues = 0;
+        while (throttledQueues < activeQueues.size()) {
+            ThingQueue queue = activeQueues.peekFirst();
+            Entry head = queue.entries.peekFirst();
+            if (queue.nanosUntilToken(now) > 0) {
+                if (!head.throttled) {
+                    head.throttled = true;
+                    throttled.incrementAndGet();
+                    statsOf(queue.thingName).throttled();
+                }
+                endTurn(queue);
+                throttledQueues++;
+                continue;
+            }
+            if (!queue.inTurn) {
+                queue.inTurn = true;
+                queue.deficit += quantum;
+            }
+            if (head.cost > queue.deficit) {
+                endTurn(queue);
+                throttledQueues = 0;
+                continue;
+            }
+            queue.deficit -= head.cost;
+            queue.entries.pollFirst();
+            queue.takeToken();
+            size--;
+            if (queue.mergeableTelemetry == head) {
+                queue.mergeableTelemetry = null;
+            }
+            if (queue.entries.isEmpty()) {
+                activeQueues.pollFirst();
+                queue.active = false;
+                queue.inTurn = false;
+                queue.deficit = 0;
+                if (queue.isIdle(now)) {
+                    queues.remove(queue.thingName);
+                }
+            }
+            statsOf(queue.thingName).processed(System.currentTimeMillis() - head.receivedAtMillis);
+            return head;
+        }
+        return null;
+    }
+
+    private void endTurn(ThingQueue queue) {
+        activeQueues.pollFirst();
+        activeQueues.addLast(queue);
+        queue.inTurn = false;
+    }
+
+    private long nanosUntilAnyToken(long now) {
+        long nanos = Long.MAX_VALUE;
+        for (ThingQueue queue : activeQueues) {
+            nanos = Math.min(nanos, queue.nanosUntilToken(now));
+        }
+        return Math.max(1, nanos);
+    }
+
+    private ThingFairnessStats statsOf(String thingName) {
+        return thingStats.computeIfAbsent(thingName == null ? "" : thingName, ThingFairnessStats::new);
+    }
+
+    /**
+     * @return statistics of the things served or throttled since the previous call
+     */
+    public Collection<ThingFairnessStats> drainThingStats() {
+        lock.lock();
+        try {
+            Map<String, ThingFairnessStats> stats = thingStats;
+            thingStats = new HashMap<>();
+            long now = System.nanoTime();
+            queues.values().removeIf(queue -> !queue.active && queue.isIdle(now));
+            return stats.values();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveThingCount() {
+        lock.lock();
+        try {
+            return activeQueues.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getConflatedCount() {
+        return conflated.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Waiting messages and scheduling state of one thing, guarded by the lock of the buffer.
+     */
+    private class ThingQueue {
+        private final String thingName;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        // last queued telemetry entry which can still take merged values
+        private Entry mergeableTelemetry;
+        private boolean active;
+        private boolean inTurn;
+        private long deficit;
+        private double tokens = thingBurst;
+        private long refilledAtNanos = System.nanoTime();
+
+        private ThingQueue(String thingName) {
+            this.thingName = thingName;
+        }
+
+        private long nanosUntilToken(long now) {
+            if (thingRatePerSecond == 0) {
+                return 0;
+            }
+            tokens = Math.min(thingBurst, tokens + (now - refilledAtNanos) * thingRatePerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledAtNanos = now;
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / thingRatePerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * @return true when the waiting messages already take all tokens the thing has
+         */
+        private boolean isOverRate(long now) {
+            return nanosUntilToken(now) > 0 || thingRatePerSecond > 0 && entries.size() >= tokens;
+        }
+
+        private void takeToken() {
+            if (thingRatePerSecond > 0) {
+                tokens--;
+            }
+        }
+
+        private boolean isIdle(long now) {
+            nanosUntilToken(now);
+            return tokens >= thingBurst;
+        }
+    }
+
+    /**
+     * Buffered message with the newer telemetry conflated into it. The messages are merged when they are first read, on the thread
+     * which took the entry from the buffer, no message can be conflated into the entry after that.
+     */
+    public class Entry {
+        private final long enqueuedAtNanos = System.nanoTime();
+        private final long receivedAtMillis;
+        private final int cost;
+        private final String message;
+        private List<String> newerMessages;
+        private List<String> messages;
+        private boolean throttled;
+
+        private Entry(String message, long receivedAtMillis) {
+            this.message = message;
+            this.receivedAtMillis = receivedAtMillis;
+            this.cost = Math.max(1, message.length());
+        }
+
+        private boolean conflate(String newerMessage) {
+            if (newerMessages == null) {
+                newerMessages = new ArrayList<>();
+            } else if (newerMessages.size() >= MAX_CONFLATED_MESSAGES) {
+                return false;
+            }
+            newerMessages.add(newerMessage);
+            return true;
+        }
+
+        /**
+         * @return the message with the newer telemetry merged into it, followed by any newer message which could not be merged
+         */
+        public List<String> getMessages() {
+            if (messages == null) {
+                messages = newerMessages == null ? Collections.singletonList(message) : merge();
+                newerMessages = null;
+            }
+            return messages;
+        }
+
+        private List<String> merge() {
+            List<String> merged = new ArrayList<>(1);
+            String current = message;
+            ObjectNode tree = readObject(current);
+            boolean changed = false;
+            for (String newerMessage : newerMessages) {
+                ObjectNode newer = readObject(newerMessage);
+                if (tree != null && newer != null && merge(tree, newer)) {
+                    changed = true;
+                    continue;
+                }
+                // handled on its own, later messages are merged into it
+                log.warn("Could not conflate message of a thing, it will be handled on its own");
+                merged.add(changed ? write(tree) : current);
+                current = newerMessage;
+                tree = newer;
+                changed = false;
+            }
+            merged.add(changed ? write(tree) : current);
+            return merged;
+        }
+
+        private boolean merge(ObjectNode tree, ObjectNode newer) {
+            JsonNode newerPayload = newer.path(payloadIndicator);
+            JsonNode payload = tree.path(payloadIndicator);
+            if (!newerPayload.isObject() || !payload.isObject()) {
+                return false;
+            }
+            ((ObjectNode) payload).setAll((ObjectNode) newerPayload);
+            if (newer.hasNonNull(modelIndicator)) {
+                tree.set(modelIndicator, newer.get(modelIndicator));
+            }
+            return true;
+        }
+
+        private ObjectNode readObject(String message) {
+            try {
+                JsonNode tree = mapper.readTree(message);
+                return tree instanceof ObjectNode ? (ObjectNode) tree : null;
+            } catch (JsonProcessingException e) {
+                log.warn("Could not parse message to conflate: {}", e.getMessage());
+                return null;
+            }
+        }
+
+        private String write(ObjectNode tree) {
+            try {
+                return mapper.writeValueAsString(tree);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not serialize conflated message", e);
+            }
+        }
+
+        public long getEnqueuedAtNanos() {
+            return enqueuedAtNanos;
+        }
+
+        public long getReceivedAtMillis() {
+            return receivedAtMillis;
+        }
+    }
+}
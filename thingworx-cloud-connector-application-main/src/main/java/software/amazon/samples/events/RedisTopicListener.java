@@ -1,20 +1,17 @@
 package software.amazon.samples.events;
 
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONObject;
 import org.redisson.api.RedissonClient;
 import org.redisson.api.listener.MessageListener;
 import org.springframework.context.ApplicationContext;
-import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
-import software.amazon.samples.services.ThingworxServiceImpl;
-import software.amazon.samples.model.PayloadModel;
-import software.amazon.samples.model.ThingModel;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Redis topic subscriber
- * this handles redis events with device data coming from lambda
+ * this receives redis events with device data coming from lambda and hands them off to the dispatcher.
+ * While held, messages from the topic are kept back and handed off on release, so parked messages replayed in the meantime are handled first.
  *
  * @author Maciej Kiciński
  * @version 1.0
@@ -26,49 +23,67 @@ public class RedisTopicListener implements MessageListener<String> {
 
     private final ApplicationContext applicationContext;
     private final RedissonClient redissonClient;
-    private final String CONNECTED;
-    private final String DISCONNECTED;
 
-    public RedisTopicListener(ApplicationContext applicationContext, RedissonClient redissonClient, AppConfigModule appConfigModule) {
+    private final Object holdLock = new Object();
+    private volatile boolean holding;
+    private List<String> heldMessages = new ArrayList<>(); // guarded by holdLock
+
+    public RedisTopicListener(ApplicationContext applicationContext, RedissonClient redissonClient) {
         this.applicationContext = applicationContext;
         this.redissonClient = redissonClient;
-        this.CONNECTED = appConfigModule.getConnectedStatus();
-        this.DISCONNECTED = appConfigModule.getDisconnectedStatus();
     }
 
     @Override
     public void onMessage(CharSequence charSequence, String message) {
         log.debug("Received Message from Topic: " + message);
-        ThingworxServiceImpl thingWorxService = null;
+        if (holding) {
+            synchronized (holdLock) {
+                if (holding) {
+                    heldMessages.add(message);
+                    return;
+                }
+            }
+        }
+        dispatch(message);
+    }
+
+    /**
+     * Keeps messages from the topic back until {@link #release()}.
+     */
+    public void hold() {
+        synchronized (holdLock) {
+            holding = true;
+        }
+    }
+
+    /**
+     * Hands off the held messages in the order they were received and stops holding.
+     *
+     * @return number of messages that were held
+     */
+    public int release() {
+        synchronized (holdLock) {
+            // messages arriving meanwhile wait for the lock, so they are handed off after the held ones
+            List<String> messages = heldMessages;
+            heldMessages = new ArrayList<>();
+            holding = false;
+            messages.forEach(this::dispatch);
+            return messages.size();
+        }
+    }
+
+    /**
+     * Hands a message off to the dispatcher right away, also while held.
+     */
+    public void dispatch(String message) {
+        ThingMessageDispatcher dispatcher = null;
         try {
-            thingWorxService = applicationContext.getBean(ThingworxServiceImpl.class);
+            dispatcher = applicationContext.getBean(ThingMessageDispatcher.class);
         } catch (Exception e) {
             log.error("Cannot handle message from topic because Spring boot application context is shutdown");
             redissonClient.shutdown();
             System.exit(1);
         }
-        JSONObject json = thingWorxService.convertToJSONObject(message);
-        PayloadModel payloadModel = thingWorxService.convertToPayloadModelObject(json);
-        ThingModel thingModel = thingWorxService.convertToThingModelObject(json);
-        boolean statusIsNotNull = Objects.nonNull(thingModel.getStatus());
-        if (thingModel.getDeviceName() != null) { // checking if device name exist in payload
-            if (statusIsNotNull) { // if message type is thing stats
-                if (thingModel.getStatus().equals(DISCONNECTED)) { // if thing status is disconnected then unbind the thing
-                    log.debug("requesting to unbind thing [{}]from thingworx", thingModel.getDeviceName());
-                    thingWorxService.unbindThing(thingModel.getDeviceName());
-                }
-                if (thingModel.getStatus().equals(CONNECTED)) { // if thing status is connected then bind the thing
-                    log.debug("requesting to bind thing [{}] to thingworx", thingModel.getDeviceName());
-                    thingWorxService.bindNewThing(thingModel.getDeviceName());
-                }
-            } else {
-                log.debug("going to send payload for thing [{}] to thingworx", thingModel.getDeviceName());
-                thingWorxService.bindNewThing(thingModel.getDeviceName());
-                thingWorxService.updateModel(thingModel);
-                thingWorxService.sendPayloadToThingworx(payloadModel, thingModel);
-            }
-        } else {
-            log.error("Cannot send payload to thingworx thing because name is missing in the message.");
-        }
+        dispatcher.dispatch(message);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,330 @@
+package software.amazon.samples.events;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of messages on memory-mapped segment files of a fixed size
+ * a record is the length of the message and the CRC32 of its UTF-8 bytes followed by the bytes. The length of a replayed record is negated,
+ * so after a restart the log continues with the first record not yet replayed. A record whose checksum does not match, e.g. cut short by a crash,
+ * ends the segment on recovery. Segments are unmapped and deleted once replayed, when the log reaches its size cap the oldest segment
+ * is evicted with the records it still holds. Records live outside the heap, the heap only holds one entry per segment.
+ * Not thread safe, callers synchronize.
+ */
+
+@Slf4j
+class SpillLog {
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int CHECKSUM_OFFSET = Integer.BYTES;
+    private static final int ZERO_CHUNK_SIZE = 64 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    // oldest first, records are appended to the last one
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence;
+    private long pendingRecords;
+    private long evictedRecords;
+
+    SpillLog(Path directory, int segmentSize, long maxSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, maxSize / segmentSize);
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX) && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted((first, second) -> Long.compare(sequenceOf(first), sequenceOf(second)))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Segment segment = new Segment(file, sequenceOf(file), segmentSize);
+            segment.recover();
+            nextSequence = segment.sequence + 1;
+            if (segment.pending == 0) {
+                segment.delete();
+            } else {
+                segments.addLast(segment);
+                pendingRecords += segment.pending;
+            }
+        }
+        if (pendingRecords > 0) {
+            log.info("Recovered [{}] spilled messages in [{}] segments from [{}]", pendingRecords, segments.size(), directory);
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return false when the message is larger than a segment and was not appended
+     */
+    boolean append(String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if (HEADER_SIZE + bytes.length > segmentSize) {
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.remaining() < HEADER_SIZE + bytes.length) {
+            if (segments.size() >= maxSegments) {
+                evictOldest();
+            }
+            tail = new Segment(directory.resolve(SEGMENT_PREFIX + nextSequence + SEGMENT_SUFFIX), nextSequence++, segmentSize);
+            segments.addLast(tail);
+        }
+        tail.write(bytes);
+        pendingRecords++;
+        return true;
+    }
+
+    /**
+     * @return oldest message not yet replayed without marking it replayed, null when all messages were replayed
+     */
+    String peek() {
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            String message = head.peek();
+            if (message != null) {
+                return message;
+            }
+            if (head == segments.peekLast()) {
+                return null;
+            }
+            segments.pollFirst().delete();
+        }
+        return null;
+    }
+
+    /**
+     * @return oldest message not yet replayed, marked replayed, null when all messages were replayed
+     */
+    String poll() {
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            String message = head.read();
+            if (message != null) {
+                pendingRecords--;
+                return message;
+            }
+            if (head == segments.peekLast()) {
+                return null; // caught up with the writer, the segment is reused for the next messages
+            }
+            segments.pollFirst().delete();
+        }
+        return null;
+    }
+
+    private void evictOldest() {
+        Segment oldest = segments.pollFirst();
+        evictedRecords += oldest.pending;
+        pendingRecords -= oldest.pending;
+        log.warn("Spill log reached its size cap, evicted [{}] oldest spilled messages", oldest.pending);
+        oldest.delete();
+    }
+
+    /**
+     * Flushes written records to the files.
+     */
+    void force() {
+        segments.forEach(segment -> segment.buffer.force());
+    }
+
+    long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    long getEvictedRecords() {
+        return evictedRecords;
+    }
+
+    long getSizeInBytes() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+        private int pending;
+
+        private Segment(Path path, long sequence, int size) throws IOException {
+            this.path = path;
+            this.sequence = sequence;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        /**
+         * Finds the first record not yet replayed and the end of the written records, a length of 0 or a record with a wrong checksum marks the end.
+         * Whatever follows a broken record is cleared, so records appended later are not followed by leftovers of the crash.
+         */
+        private void recover() {
+            int position = 0;
+            boolean readPositionFound = false;
+            while (position + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length == Integer.MIN_VALUE || position + HEADER_SIZE + Math.abs(length) > buffer.capacity()
+                        || buffer.getInt(position + CHECKSUM_OFFSET) != checksum(slice(position + HEADER_SIZE, Math.abs(length)))) {
+                    log.warn("Spill log segment [{}] has a broken record at [{}], the rest of the segment is cleared", path, position);
+                    clearFrom(position);
+                    break;
+                }
+                if (length > 0) {
+                    if (!readPositionFound) {
+                        readPosition = position;
+                        readPositionFound = true;
+                    }
+                    pending++;
+                }
+                position += HEADER_SIZE + Math.abs(length);
+            }
+            writePosition = position;
+            if (!readPositionFound) {
+                readPosition = position;
+            }
+        }
+
+        private ByteBuffer slice(int position, int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.limit(position + length);
+            return view;
+        }
+
+        private void clearFrom(int position) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            byte[] zeros = new byte[Math.min(ZERO_CHUNK_SIZE, view.remaining())];
+            while (view.hasRemaining()) {
+                view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+            }
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        private void write(byte[] bytes) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(writePosition + HEADER_SIZE);
+            view.put(bytes);
+            buffer.putInt(writePosition + CHECKSUM_OFFSET, checksum(ByteBuffer.wrap(bytes)));
+            // the length goes last, a record cut short by a crash still reads as the end of the segment
+            buffer.putInt(writePosition, bytes.length);
+            writePosition += HEADER_SIZE + bytes.length;
+            pending++;
+        }
+
+        private String peek() {
+            if (readPosition >= writePosition) {
+                return null;
+            }
+            int length = buffer.getInt(readPosition);
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(readPosition + HEADER_SIZE);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String read() {
+            String message = peek();
+            if (message != null) {
+                int length = buffer.getInt(readPosition);
+                buffer.putInt(readPosition, -length);
+                readPosition += HEADER_SIZE + length;
+                pending--;
+            }
+            return message;
+        }
+
+        /**
+         * Unmaps and deletes the segment, it must not be used afterwards.
+         */
+        private void delete() {
+            // the disk space of a deleted file is only freed once it is unmapped, waiting for the garbage collector could exceed the size cap
+            Unmapper.unmap(buffer);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete spill log segment [{}]: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Releases mappings right away through the cleaner of the JDK, there is no public API for it before Java 14.
+     * Without access to the cleaner a mapping is released by the garbage collector.
+     */
+    private static final class Unmapper {
+
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Spill log segments can not be unmapped before they are deleted, their disk space is freed by the garbage collector: {}", e.toString());
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private static void unmap(MappedByteBuffer buffer) {
+            if (INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Could not unmap spill log segment: {}", e.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package software.amazon.samples.events;
+
+/**
+ * Processing statistics of one thing over a report interval
+ * kept by the ingestion buffer of the shard owning the thing, used to find things which lag behind or exceed their rate limit.
+ */
+
+public class ThingFairnessStats {
+
+    private final String thingName;
+    private long messages;
+    private long maxLagMillis;
+    private long throttled;
+
+    ThingFairnessStats(String thingName) {
+        this.thingName = thingName;
+    }
+
+    void processed(long lagMillis) {
+        messages++;
+        maxLagMillis = Math.max(maxLagMillis, lagMillis);
+    }
+
+    void throttled() {
+        throttled++;
+    }
+
+    public String getThingName() {
+        return thingName;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return longest time from receiving a message of the thing until it was handed to the shard
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * @return number of messages of the thing which were delayed or merged because the thing exceeded its rate limit
+     */
+    public long getThrottled() {
+        return throttled;
+    }
+}
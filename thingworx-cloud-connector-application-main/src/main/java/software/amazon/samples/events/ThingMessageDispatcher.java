@@ -0,0 +1,463 @@
+package software.amazon.samples.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.execution.ExecutionModel;
+import software.amazon.samples.health.ConnectorHealth;
+import software.amazon.samples.startup.StartupPhase;
+import software.amazon.samples.thingworx.ThingworxClientSingleton;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Spring boot component handing messages from the redis topic off to single threaded shards keyed by thing name
+ * the redisson pub/sub thread only reads the thing name from the message, all parsing and thingworx calls run on the shards.
+ * Messages of one thing always go to the same shard, so their order is kept while different things are handled in parallel.
+ * While thingworx is unavailable or a shard is saturated, messages are spilled to a memory-mapped log on disk instead. Once spilling started
+ * all messages go to the log, which is replayed in order at a limited rate until it is empty, so the order of the messages of a thing is kept.
+ */
+
+@Slf4j
+@Component
+public class ThingMessageDispatcher {
+
+    private static final long SHUTDOWN_TIMEOUT_IN_MILLIS = 10000;
+    private static final long STOP_GRACE_IN_MILLIS = 2000;
+    private static final long REPLAY_WAIT_IN_MILLIS = 100;
+    private static final long BYTES_IN_MEGABYTE = 1024 * 1024;
+    private static final int OFFENDER_COUNT = 10;
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    ThingMessageHandler thingMessageHandler;
+    @Autowired
+    ConnectorHealth connectorHealth;
+    @Autowired
+    ExecutionModel executionModel;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = mapper.getFactory();
+    private final List<DispatchShard> shards = new ArrayList<>();
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thing-dispatch-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object spillLock = new Object();
+    private SpillLog spillLog; // guarded by spillLock
+    private volatile boolean spilling;
+    private volatile boolean replaying = true;
+    private Thread replayThread;
+    private final AtomicBoolean drained = new AtomicBoolean();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile List<ThingFairnessStats> mostLaggingThings = Collections.emptyList();
+    private volatile List<ThingFairnessStats> mostThrottledThings = Collections.emptyList();
+    private final List<Runnable> reportListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void start() {
+        int shardCount = appConfigModule.getDispatcherShards() > 0 ? appConfigModule.getDispatcherShards()
+                : executionModel.isVirtual() ? appConfigModule.getExecutionVirtualShards() : Runtime.getRuntime().availableProcessors();
+        ThreadFactory threadFactory = executionModel.threadFactory("thing-dispatch-");
+        Consumer<String> handler = thingMessageHandler::handle;
+        if (executionModel.isVirtual()) {
+            // virtual shards are cheap, the semaphore bounds the thingworx and redis calls they make at once
+            Semaphore thingCalls = new Semaphore(Math.max(1, appConfigModule.getExecutionMaxConcurrentThingCalls()));
+            handler = message -> {
+                thingCalls.acquireUninterruptibly();
+                try {
+                    thingMessageHandler.handle(message);
+                } finally {
+                    thingCalls.release();
+                }
+            };
+        }
+        for (int i = 0; i < shardCount; i++) {
+            IngestionBuffer buffer = new IngestionBuffer(appConfigModule.getIngestionBufferCapacity(), appConfigModule.getIngestionConflationThreshold(),
+                    appConfigModule.getFairnessQuantum(), appConfigModule.getFairnessThingRatePerSecond(), appConfigModule.getFairnessThingBurst(), mapper,
+                    appConfigModule.getThingTelemetryPayloadIndicator(), appConfigModule.getThingModelIndicator());
+            DispatchShard shard = new DispatchShard(i, buffer, handler, connectorHealth, threadFactory);
+            shard.start();
+            shards.add(shard);
+        }
+        long reportInterval = appConfigModule.getDispatcherReportIntervalInSeconds();
+        reporter.scheduleAtFixedRate(this::report, reportInterval, reportInterval, TimeUnit.SECONDS);
+        log.debug("Started [{}] dispatch shards on [{}] threads", shardCount, executionModel.getMode());
+        if (appConfigModule.getSpillEnabled()) {
+            startSpillLog();
+        }
+    }
+
+    private void startSpillLog() {
+        try {
+            spillLog = new SpillLog(Paths.get(appConfigModule.getSpillDirectory()), (int) (appConfigModule.getSpillSegmentSizeInMB() * BYTES_IN_MEGABYTE),
+                    appConfigModule.getSpillMaxSizeInMB() * BYTES_IN_MEGABYTE);
+        } catch (IOException e) {
+            log.error("Could not open spill log in [{}], messages will not be spilled: {}", appConfigModule.getSpillDirectory(), e.getMessage());
+            return;
+        }
+        // messages left over from a previous run are replayed before any new message
+        spilling = spillLog.getPendingRecords() > 0;
+        replayThread = new Thread(this::replay, "spill-log-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        drain(System.currentTimeMillis() + SHUTDOWN_TIMEOUT_IN_MILLIS);
+    }
+
+    /**
+     * Stops the replay of the spill log and lets the shards work off their queues until the deadline. Messages must no longer be dispatched.
+     * Shards still working at the deadline are stopped, so no shard calls thingworx once the drain returned.
+     * Spilled messages not replayed yet stay in the spill log. Runs once, later calls return right away.
+     *
+     * @return number of messages still queued at the deadline
+     */
+    public int drain(long deadlineAtMillis) throws InterruptedException {
+        if (!drained.compareAndSet(false, true)) {
+            return 0;
+        }
+        reporter.shutdownNow();
+        if (replayThread != null) {
+            replaying = false;
+            replayThread.interrupt();
+            replayThread.join(Math.max(1, deadlineAtMillis - System.currentTimeMillis()));
+            synchronized (spillLock) {
+                spillLog.force();
+            }
+        }
+        shards.forEach(DispatchShard::shutdown);
+        try {
+            for (DispatchShard shard : shards) {
+                shard.awaitTermination(Math.max(1, deadlineAtMillis - System.currentTimeMillis()));
+            }
+        } finally {
+            stopShards();
+        }
+        int left = 0;
+        for (DispatchShard shard : shards) {
+            left += shard.getQueueDepth();
+        }
+        return left;
+    }
+
+    /**
+     * Interrupts the shards which did not finish and waits a short grace period for them, the things are unbound right after the drain.
+     */
+    private void stopShards() {
+        List<DispatchShard> running = shards.stream().filter(shard -> !shard.isTerminated()).collect(Collectors.toList());
+        if (running.isEmpty()) {
+            return;
+        }
+        running.forEach(DispatchShard::stopNow);
+        long graceDeadline = System.currentTimeMillis() + STOP_GRACE_IN_MILLIS;
+        try {
+            for (DispatchShard shard : running) {
+                shard.awaitTermination(Math.max(1, graceDeadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long stuck = running.stream().filter(shard -> !shard.isTerminated()).count();
+        log.warn("Stopped [{}] dispatch shards at the drain deadline, [{}] did not stop within [{}] milliseconds.", running.size(), stuck, STOP_GRACE_IN_MILLIS);
+    }
+
+    /**
+     * Hands a message off to the shard owning its thing. Called on the redisson pub/sub thread, so it must not block.
+     */
+    public void dispatch(String message) {
+        StartupPhase.FIRST_MESSAGE.reached();
+        EnvelopeHeader header = readEnvelopeHeader(message);
+        int shardIndex = shardOf(header);
+        if (spillLog != null && (spilling || mustSpill(header.thingName, shardIndex)) && spill(message, header.thingName, shardIndex)) {
+            return;
+        }
+        submit(header, shardIndex, message);
+    }
+
+    private int shardOf(EnvelopeHeader header) {
+        // messages without a thing name are only logged by the handler, any shard will do
+        return header.thingName == null ? 0 : Math.floorMod(header.thingName.hashCode(), shards.size());
+    }
+
+    private void submit(EnvelopeHeader header, int shardIndex, String message) {
+        connectorHealth.messageReceived();
+        shards.get(shardIndex).submit(header.thingName, header.statusMessage, message);
+    }
+
+    private boolean mustSpill(String thingName, int shardIndex) {
+        return !isConnected(thingName) || shards.get(shardIndex).getQueueDepth() >= appConfigModule.getSpillQueueDepthThreshold();
+    }
+
+    /**
+     * @return true when the thingworx connection owning the thing is connected
+     */
+    boolean isConnected(String thingName) {
+        return ThingworxClientSingleton.INSTANCE.isConnected(thingName);
+    }
+
+    private boolean spill(String message, String thingName, int shardIndex) {
+        synchronized (spillLock) {
+            // the replay may have emptied the log in the meantime
+            if (!spilling && !mustSpill(thingName, shardIndex)) {
+                return false;
+            }
+            try {
+                if (!spillLog.append(message)) {
+                    log.warn("Message of [{}] characters is larger than a spill log segment, dispatched directly", message.length());
+                    return false;
+                }
+            } catch (IOException e) {
+                log.error("Could not spill message, dispatched directly: {}", e.getMessage());
+                return false;
+            }
+            if (!spilling) {
+                log.warn("Thingworx is unavailable or dispatch shard [{}] is saturated, spilling messages to [{}]", shardIndex, appConfigModule.getSpillDirectory());
+                spilling = true;
+            }
+            spilled.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Feeds spilled messages back to the shards in order, no faster than the replay rate and only while the connection owning the thing
+     * is connected and the target shard is below the spill threshold. A message is marked replayed only when it is handed to its shard,
+     * so a message waiting for its connection when the replay is stopped stays in the log.
+     */
+    private void replay() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, appConfigModule.getSpillReplayRatePerSecond());
+        long nextAtNanos = System.nanoTime();
+        while (replaying) {
+            try {
+                if (!spilling) {
+                    Thread.sleep(REPLAY_WAIT_IN_MILLIS);
+                    continue;
+                }
+                String message;
+                long evicted;
+                synchronized (spillLock) {
+                    message = spillLog.peek();
+                    if (message == null) {
+                        spilling = false;
+                        log.info("Spill log replayed, [{}] messages replayed so far, [{}] evicted", replayed.get(), spillLog.getEvictedRecords());
+                        continue;
+                    }
+                    evicted = spillLog.getEvictedRecords();
+                }
+                EnvelopeHeader header = readEnvelopeHeader(message);
+                int shardIndex = shardOf(header);
+                while (replaying && mustSpill(header.thingName, shardIndex)) {
+                    Thread.sleep(REPLAY_WAIT_IN_MILLIS);
+                }
+                if (!replaying) {
+                    return;
+                }
+                long waitNanos = nextAtNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                // no catching up in a burst after a pause
+                nextAtNanos = Math.max(nextAtNanos, System.nanoTime() - intervalNanos) + intervalNanos;
+                synchronized (spillLock) {
+                    if (spillLog.getEvictedRecords() != evicted) {
+                        continue; // the message may have been evicted while waiting, the new oldest message is replayed instead
+                    }
+                    spillLog.poll();
+                }
+                submit(header, shardIndex, message);
+                replayed.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Error replaying spilled message: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isSpilling() {
+        return spilling;
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    public long getSpillPendingCount() {
+        if (spillLog == null) {
+            return 0;
+        }
+        synchronized (spillLock) {
+            return spillLog.getPendingRecords();
+        }
+    }
+
+    public long getSpillEvictedCount() {
+        if (spillLog == null) {
+            return 0;
+        }
+        synchronized (spillLock) {
+            return spillLog.getEvictedRecords();
+        }
+    }
+
+    public long getSpillSizeInBytes() {
+        if (spillLog == null) {
+            return 0;
+        }
+        synchronized (spillLock) {
+            return spillLog.getSizeInBytes();
+        }
+    }
+
+    public int getQueueDepth(int shardIndex) {
+        return shards.get(shardIndex).getQueueDepth();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public long getConflatedCount() {
+        return shards.stream().mapToLong(shard -> shard.getBuffer().getConflatedCount()).sum();
+    }
+
+    public long getDroppedCount() {
+        return shards.stream().mapToLong(shard -> shard.getBuffer().getDroppedCount()).sum();
+    }
+
+    public long getThrottledCount() {
+        return shards.stream().mapToLong(shard -> shard.getBuffer().getThrottledCount()).sum();
+    }
+
+    public int getActiveThingCount() {
+        return shards.stream().mapToInt(shard -> shard.getBuffer().getActiveThingCount()).sum();
+    }
+
+    /**
+     * @return things with the longest lag in the last report interval, longest first
+     */
+    public List<ThingFairnessStats> getMostLaggingThings() {
+        return mostLaggingThings;
+    }
+
+    /**
+     * @return things throttled most in the last report interval, most throttled first
+     */
+    public List<ThingFairnessStats> getMostThrottledThings() {
+        return mostThrottledThings;
+    }
+
+    /**
+     * Registers a listener called after each report, when the most lagging and most throttled things were updated.
+     */
+    public void addReportListener(Runnable listener) {
+        reportListeners.add(listener);
+    }
+
+    /**
+     * Reads only the thing name and the status from the top level of the message without building a tree.
+     */
+    private EnvelopeHeader readEnvelopeHeader(String message) {
+        EnvelopeHeader header = new EnvelopeHeader();
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return header;
+            }
+            boolean thingNameRead = false;
+            boolean statusRead = false;
+            while (!(thingNameRead && statusRead) && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (appConfigModule.getThingNameIndicator().equals(fieldName)) {
+                    header.thingName = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    thingNameRead = true;
+                } else if (appConfigModule.getThingStatusIndicator().equals(fieldName)) {
+                    header.statusMessage = value == JsonToken.VALUE_STRING;
+                    statusRead = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read thing name from message: {}", e.getMessage());
+        }
+        return header;
+    }
+
+    private static class EnvelopeHeader {
+        private String thingName;
+        private boolean statusMessage;
+    }
+
+    private void report() {
+        for (DispatchShard shard : shards) {
+            long[] handoff = shard.drainHandoffStats();
+            IngestionBuffer buffer = shard.getBuffer();
+            if (handoff[0] > 0 || shard.getQueueDepth() > 0) {
+                log.info("Dispatch shard [{}]: queue depth [{}], messages [{}], handoff latency avg [{}] ms, max [{}] ms, conflated [{}], dropped [{}], high water mark [{}]",
+                        shard.getIndex(), shard.getQueueDepth(), handoff[0],
+                        handoff[0] == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(handoff[1] / handoff[0]), TimeUnit.NANOSECONDS.toMillis(handoff[2]),
+                        buffer.getConflatedCount(), buffer.getDroppedCount(), buffer.getHighWaterMark());
+            }
+        }
+        reportOffenders();
+    }
+
+    private void reportOffenders() {
+        List<ThingFairnessStats> stats = new ArrayList<>();
+        for (DispatchShard shard : shards) {
+            // messages without a thing name are kept under an empty name
+            shard.getBuffer().drainThingStats().stream().filter(thingStats -> !thingStats.getThingName().isEmpty()).forEach(stats::add);
+        }
+        mostLaggingThings = stats.stream().sorted(Comparator.comparingLong(ThingFairnessStats::getMaxLagMillis).reversed())
+                .limit(OFFENDER_COUNT).collect(Collectors.toList());
+        mostThrottledThings = stats.stream().filter(thingStats -> thingStats.getThrottled() > 0).sorted(Comparator.comparingLong(ThingFairnessStats::getThrottled).reversed())
+                .limit(OFFENDER_COUNT).collect(Collectors.toList());
+        if (!mostThrottledThings.isEmpty()) {
+            log.info("Things over their rate limit: {}", mostThrottledThings.stream()
+                    .map(thingStats -> thingStats.getThingName() + " [" + thingStats.getThrottled() + " throttled of " + (thingStats.getMessages() + thingStats.getThrottled()) + "]").collect(Collectors.joining(", ")));
+        }
+        if (!mostLaggingThings.isEmpty() && mostLaggingThings.get(0).getMaxLagMillis() > 0) {
+            log.info("Things with the longest lag: {}", mostLaggingThings.stream()
+                    .map(thingStats -> thingStats.getThingName() + " [" + thingStats.getMaxLagMillis() + " ms]").collect(Collectors.joining(", ")));
+        }
+        for (Runnable listener : reportListeners) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package software.amazon.samples.events;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.mapper.JsonMessageModelMapper;
+import software.amazon.samples.metrics.StageTimers;
+import software.amazon.samples.model.PayloadModel;
+import software.amazon.samples.model.ThingMessage;
+import software.amazon.samples.model.ThingModel;
+import software.amazon.samples.services.ThingworxServiceImpl;
+
+import java.util.Objects;
+
+/**
+ * Spring boot component handling a single message with device data coming from lambda
+ * it binds, unbinds or updates the thing in thingworx. Called from the dispatch shard owning the thing, so messages of one thing are never handled concurrently.
+ */
+
+@Slf4j
+@Component
+public class ThingMessageHandler {
+
+    @Autowired
+    ThingworxServiceImpl thingWorxService;
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    JsonMessageModelMapper mapper;
+    @Autowired
+    StageTimers stageTimers;
+
+    public void handle(String message) {
+        ThingMessage thingMessage = stageTimers.decode().record(() -> mapper.messageToThingMessage(message));
+        if (thingMessage == null) {
+            return;
+        }
+        PayloadModel payloadModel = thingMessage.getPayloadModel();
+        ThingModel thingModel = thingMessage.getThingModel();
+        boolean statusIsNotNull = Objects.nonNull(thingModel.getStatus());
+        if (thingModel.getDeviceName() != null) { // checking if device name exist in payload
+            if (statusIsNotNull) { // if message type is thing stats
+                if (thingModel.getStatus().equals(appConfigModule.getDisconnectedStatus())) { // if thing status is disconnected then unbind the thing
+                    log.debug("requesting to unbind thing [{}]from thingworx", thingModel.getDeviceName());
+                    thingWorxService.unbindThing(thingModel.getDeviceName());
+                }
+                if (thingModel.getStatus().equals(appConfigModule.getConnectedStatus())) { // if thing status is connected then bind the thing
+                    log.debug("requesting to bind thing [{}] to thingworx", thingModel.getDeviceName());
+                    stageTimers.bind().record(() -> thingWorxService.bindNewThing(thingModel.getDeviceName()));
+                }
+            } else {
+                log.debug("going to send payload for thing [{}] to thingworx", thingModel.getDeviceName());
+                boolean newlyBound = stageTimers.bind().record(() -> thingWorxService.bindNewThing(thingModel.getDeviceName()));
+                if (newlyBound || thingModel.isModelChanged()) { // models rarely change, the thing properties are reconciled only when they do
+                    stageTimers.model().record(() -> thingWorxService.updateModel(thingModel));
+                }
+                stageTimers.write().record(() -> thingWorxService.sendPayloadToThingworx(payloadModel, thingModel));
+            }
+        } else {
+            log.error("Cannot send payload to thingworx thing because name is missing in the message.");
+        }
+    }
+}
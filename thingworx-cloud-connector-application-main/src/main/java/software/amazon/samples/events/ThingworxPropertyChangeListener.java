@@ -5,6 +5,7 @@ import com.thingworx.communications.client.things.VirtualThingPropertyChangeList
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.samples.deviceShadow.ThingworxPropertyChangeCallback;
+import software.amazon.samples.thingworx.AwsConnectedThing;
 
 import java.util.Optional;
 
@@ -24,6 +25,9 @@ public class ThingworxPropertyChangeListener implements VirtualThingPropertyChan
 
     @Override
     public void propertyChangeEventReceived(VirtualThingPropertyChangeEvent event) {
+        if (AwsConnectedThing.isDeviceWrite()) { // values coming from the device are not sent back to its shadow
+            return;
+        }
         Optional.ofNullable(callback).ifPresent(callback1 -> callback1.call(event));
     }
 }
@@ -0,0 +1,104 @@
+package software.amazon.samples.execution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component creating the threads running blocking thingworx and redis calls
+ * in the PLATFORM mode these are platform threads of fixed pools, in the VIRTUAL mode each blocking task gets its own virtual thread
+ * and concurrency is limited by semaphores instead of pool sizes. The VIRTUAL mode needs a Java 21 runtime, on older runtimes
+ * the connector falls back to the PLATFORM mode.
+ */
+
+@Slf4j
+@Component
+public class ExecutionModel {
+
+    public enum Mode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    @Autowired
+    AppConfigModule appConfigModule;
+
+    private Mode mode = Mode.PLATFORM;
+
+    @PostConstruct
+    public void init() {
+        mode = resolve(appConfigModule.getExecutionMode());
+        log.info("Blocking thingworx and redis calls run in the [{}] execution mode.", mode);
+    }
+
+    /**
+     * @return the configured mode if it is known and the runtime supports it, otherwise PLATFORM
+     */
+    static Mode resolve(String configuredMode) {
+        Mode configured;
+        try {
+            configured = Mode.valueOf(configuredMode.toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            log.warn("Unknown execution mode [{}], using [{}].", configuredMode, Mode.PLATFORM);
+            return Mode.PLATFORM;
+        }
+        if (configured == Mode.VIRTUAL) {
+            try {
+                VirtualThreads.factory("execution-probe-");
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Virtual threads are not available on Java [{}], using the [{}] execution mode.", System.getProperty("java.version"), Mode.PLATFORM);
+                return Mode.PLATFORM;
+            }
+        }
+        return configured;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isVirtual() {
+        return mode == Mode.VIRTUAL;
+    }
+
+    /**
+     * @return factory of daemon threads named prefix followed by a counter, virtual threads in the VIRTUAL mode
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        if (isVirtual()) {
+            try {
+                return VirtualThreads.factory(prefix);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual threads became unavailable", e);
+            }
+        }
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return executor running at most maxConcurrency tasks at once, a fixed pool in the PLATFORM mode
+     * and a new virtual thread per task limited by a semaphore in the VIRTUAL mode
+     */
+    public ExecutorService newBoundedExecutor(String prefix, int maxConcurrency) {
+        if (isVirtual()) {
+            try {
+                return new SemaphoreBoundedExecutor(VirtualThreads.newThreadPerTaskExecutor(threadFactory(prefix)), maxConcurrency);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual threads became unavailable", e);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, maxConcurrency), threadFactory(prefix));
+    }
+}
@@ -0,0 +1,65 @@
+package software.amazon.samples.execution;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running each task on its own thread of a thread per task executor, at most maxConcurrency tasks at once
+ * tasks over the limit wait for a permit on their own thread, which costs next to nothing with virtual threads, so submitting never blocks.
+ */
+
+class SemaphoreBoundedExecutor extends AbstractExecutorService {
+
+    private final ExecutorService threadPerTaskExecutor;
+    private final Semaphore permits;
+
+    SemaphoreBoundedExecutor(ExecutorService threadPerTaskExecutor, int maxConcurrency) {
+        this.threadPerTaskExecutor = threadPerTaskExecutor;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        threadPerTaskExecutor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        threadPerTaskExecutor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threadPerTaskExecutor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threadPerTaskExecutor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threadPerTaskExecutor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threadPerTaskExecutor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,37 @@
+package software.amazon.samples.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 through reflection
+ * the connector is built for Java 11, virtual threads are only used when the runtime has them.
+ */
+
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return factory of virtual threads named prefix followed by a counter
+     * @throws ReflectiveOperationException when the runtime has no virtual threads
+     */
+    static ThreadFactory factory(String prefix) throws ReflectiveOperationException {
+        // the builder implementation is not public, its methods are called through the public interfaces
+        Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+        return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+    }
+
+    /**
+     * @return executor starting a new thread of the factory for each task
+     */
+    static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) throws ReflectiveOperationException {
+        Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        return (ExecutorService) method.invoke(null, threadFactory);
+    }
+}
@@ -0,0 +1,75 @@
+package software.amazon.samples.health;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component collecting the load indicators of this connector instance
+ * queue depth is the number of messages received from redis and not yet processed, processing lag is the time from receiving a message to finishing it
+ * and thingworx latency is the duration of the scan request pushing property values to thingworx. Both durations are exponentially weighted moving averages.
+ */
+
+@Component
+public class ConnectorHealth {
+
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private double processingLagMillis;
+    private double thingworxLatencyMillis;
+
+    public void messageReceived() {
+        received.incrementAndGet();
+        queueDepth.incrementAndGet();
+    }
+
+    /**
+     * @param receivedAtMillis value of System.currentTimeMillis() when the message was received
+     */
+    public void messageProcessed(long receivedAtMillis) {
+        queueDepth.decrementAndGet();
+        long lag = System.currentTimeMillis() - receivedAtMillis;
+        synchronized (this) {
+            processingLagMillis += SMOOTHING_FACTOR * (lag - processingLagMillis);
+        }
+    }
+
+    /**
+     * A received message which will not be processed on its own, because it was merged into another message or dropped.
+     */
+    public void messageDiscarded() {
+        queueDepth.decrementAndGet();
+    }
+
+    public void thingworxCallCompleted(long durationMillis) {
+        synchronized (this) {
+            thingworxLatencyMillis += SMOOTHING_FACTOR * (durationMillis - thingworxLatencyMillis);
+        }
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public synchronized long getProcessingLagMillis() {
+        return Math.round(processingLagMillis);
+    }
+
+    public synchronized long getThingworxLatencyMillis() {
+        return Math.round(thingworxLatencyMillis);
+    }
+
+    /**
+     * Compact record read by the message router lambda: "queueDepth,processingLagMillis,thingworxLatencyMillis,timestampMillis"
+     */
+    public String toRecord() {
+        return getQueueDepth() + "," + getProcessingLagMillis() + "," + getThingworxLatencyMillis() + "," + System.currentTimeMillis();
+    }
+}
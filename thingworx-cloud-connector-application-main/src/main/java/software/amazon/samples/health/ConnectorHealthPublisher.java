@@ -0,0 +1,68 @@
+package software.amazon.samples.health;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring boot component publishing the health record of this connector instance to a redis hash
+ * the hash field is the instance name, i.e. the topic the router publishes to, so the router can read the state of all instances with a single call
+ */
+
+@Slf4j
+@Component
+public class ConnectorHealthPublisher {
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    RedissonClient redissonClient;
+    @Autowired
+    ConnectorHealth connectorHealth;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "connector-health-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private String instanceName;
+
+    @PostConstruct
+    public void start() {
+        instanceName = appConfigModule.getInstanceName();
+        long interval = appConfigModule.getHealthPublishIntervalInMillis();
+        scheduler.scheduleAtFixedRate(this::publish, interval, interval, TimeUnit.MILLISECONDS);
+        log.debug("Publishing health of instance [{}] to redis hash [{}] every [{}] milliseconds", instanceName, appConfigModule.getHealthHashName(), interval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        try {
+            // a missing record tells the router it knows nothing about this instance
+            redissonClient.getMap(appConfigModule.getHealthHashName(), StringCodec.INSTANCE).fastRemove(instanceName);
+        } catch (Exception e) {
+            log.warn("Could not remove health record of instance [{}]: {}", instanceName, e.getMessage());
+        }
+    }
+
+    private void publish() {
+        try {
+            String record = connectorHealth.toRecord();
+            redissonClient.<String, String>getMap(appConfigModule.getHealthHashName(), StringCodec.INSTANCE).fastPutAsync(instanceName, record);
+            log.trace("Published health record [{}]", record);
+        } catch (Exception e) {
+            // an exception would cancel the scheduled task
+            log.warn("Could not publish health record of instance [{}]: {}", instanceName, e.getMessage());
+        }
+    }
+}
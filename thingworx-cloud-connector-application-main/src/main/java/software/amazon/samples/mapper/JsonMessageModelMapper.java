@@ -1,20 +1,29 @@
 package software.amazon.samples.mapper;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
 import software.amazon.samples.model.PayloadModel;
+import software.amazon.samples.model.ThingMessage;
 import software.amazon.samples.model.ThingModel;
+import software.amazon.samples.thingworx.ThingModelCache;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 
 /**
  * Json Object mapper for converting device payload to virtual thing property
+ * the message from lambda is read once on a streaming parser straight into the payload and thing model, no intermediate tree or string is built.
+ * The object mapper and its parser factory are shared, parser buffers are recycled by the factory.
+ * The model is only parsed when its fingerprint differs from the model last applied to the thing.
  *
  * @author Maciej Kiciński
  * @version 1.0
@@ -25,37 +34,162 @@ import java.util.Map;
 @Slf4j
 public class JsonMessageModelMapper {
 
-    public PayloadModel jsonToPayloadModel(String json) {
-        PayloadModel result = null;
-        try {
-            result = new ObjectMapper().readValue(json, PayloadModel.class);
-        } catch (JsonProcessingException e) {
-            log.error("Error processing conversion from json to PayloadModel. Payload in json format: [{}]", json);
-        }
-        return result;
-    }
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = objectMapper.getFactory();
 
-    public ThingModel jsonToThingModel(String name, String model, String attributesJSON) {
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    ThingModelCache thingModelCache;
+
+    /**
+     * @return decoded message, or null when the message is not a valid json object
+     */
+    public ThingMessage messageToThingMessage(String message) {
+        String thingName = null;
+        String status = null;
+        PayloadModel payloadModel = null;
         HashMap<String, Map<String, String>> attributes = new HashMap<>();
-        if (attributesJSON != null) {
-            try {
-                attributes = new ObjectMapper().readValue(attributesJSON, attributes.getClass());
-            } catch (JsonProcessingException e) {
-                log.error("Error processing conversion from json to ThingModel. Thing name: [{}], thing model: [{}], attributes in json format: [{}]", name, model, attributesJSON);
+        int modelStart = -1;
+        int modelEnd = -1;
+        String thingNameIndicator = appConfigModule.getThingNameIndicator();
+        String thingStatusIndicator = appConfigModule.getThingStatusIndicator();
+        String thingTelemetryPayloadIndicator = appConfigModule.getThingTelemetryPayloadIndicator();
+        String thingModelIndicator = appConfigModule.getThingModelIndicator();
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.error("Error processing conversion of message to ThingMessage, message is not a json object. Message: [{}]", message);
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (fieldName.equals(thingNameIndicator)) {
+                    thingName = readScalar(parser, value);
+                } else if (fieldName.equals(thingStatusIndicator)) {
+                    status = readScalar(parser, value);
+                } else if (fieldName.equals(thingTelemetryPayloadIndicator)) {
+                    payloadModel = readPayload(parser, value);
+                } else if (fieldName.equals(thingModelIndicator)) {
+                    // the model usually comes before the thing name, only its position is recorded here
+                    if (value == JsonToken.START_OBJECT) {
+                        modelStart = (int) parser.getTokenLocation().getCharOffset();
+                        parser.skipChildren();
+                        modelEnd = (int) parser.getTokenLocation().getCharOffset() + 1;
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (modelStart < 0) {
+                return new ThingMessage(new ThingModel(thingName, status, attributes), payloadModel);
             }
+            long fingerprint = ThingModelCache.fingerprint(message, modelStart, modelEnd);
+            HashMap<String, Map<String, String>> appliedModel = thingModelCache.get(thingName, fingerprint);
+            if (appliedModel != null) {
+                return new ThingMessage(new ThingModel(thingName, status, appliedModel, fingerprint, false), payloadModel);
+            }
+            try (JsonParser modelParser = jsonFactory.createParser(message.substring(modelStart, modelEnd))) {
+                readModel(modelParser, modelParser.nextToken(), attributes);
+            }
+            return new ThingMessage(new ThingModel(thingName, status, attributes, fingerprint, true), payloadModel);
+        } catch (IOException e) {
+            log.error("Error processing conversion of message to ThingMessage: [{}]. Message: [{}]", e.getMessage(), message);
+            return null;
         }
-        return new ThingModel(name, model, attributes);
     }
 
-    public JSONObject MessageStringToJSONObject(String message) {
-        JSONObject jsonObject = null;
+    /**
+     * Reads the thing model from the device data the data fetcher stores in redis under the thing name.
+     * The fingerprint is taken over the compact model, as the message router lambda embeds it in its messages,
+     * so the first message of the thing reuses the model applied here.
+     *
+     * @return thing model, or null when the device data has no model
+     */
+    public ThingModel deviceDataToThingModel(String thingName, String deviceData) {
         try {
-            jsonObject = new JSONObject(message);
-        } catch (JSONException e) {
-            log.error("Error processing conversion message from string to JSONObject. Message in String format: [{}]", message);
+            JsonNode modelNode = objectMapper.readTree(deviceData).path(appConfigModule.getThingModelIndicator());
+            if (!modelNode.isObject()) {
+                return null;
+            }
+            String model = objectMapper.writeValueAsString(modelNode);
+            HashMap<String, Map<String, String>> attributes = new HashMap<>();
+            try (JsonParser modelParser = jsonFactory.createParser(model)) {
+                readModel(modelParser, modelParser.nextToken(), attributes);
+            }
+            return new ThingModel(thingName, null, attributes, ThingModelCache.fingerprint(model, 0, model.length()), true);
+        } catch (IOException e) {
+            log.error("Error reading thing model of thing [{}] from device data: [{}]", thingName, e.getMessage());
+            return null;
         }
-        return jsonObject;
     }
-}
 
+    private PayloadModel readPayload(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        PayloadModel payloadModel = new PayloadModel();
+        Map<String, Object> parameters = payloadModel.getParameters();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String parameterName = parser.getCurrentName();
+            JsonToken parameterValue = parser.nextToken();
+            switch (parameterValue) {
+                case VALUE_NUMBER_INT:
+                    // Integer, Long or BigInteger depending on the size, as the object mapper does
+                    parameters.put(parameterName, parser.getNumberValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    parameters.put(parameterName, parser.getDoubleValue());
+                    break;
+                case VALUE_STRING:
+                    parameters.put(parameterName, parser.getText());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    parameters.put(parameterName, parser.getBooleanValue());
+                    break;
+                case VALUE_NULL:
+                    parameters.put(parameterName, null);
+                    break;
+                default:
+                    // nested objects and arrays as maps and lists
+                    parameters.put(parameterName, objectMapper.readValue(parser, Object.class));
+            }
+        }
+        return payloadModel;
+    }
+
+    private void readModel(JsonParser parser, JsonToken value, Map<String, Map<String, String>> attributes) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String propertyName = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            Map<String, String> propertyAttributes = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String attributeName = parser.getCurrentName();
+                String attributeValue = readScalar(parser, parser.nextToken());
+                if (attributeValue != null) {
+                    propertyAttributes.put(attributeName, attributeValue);
+                }
+            }
+            attributes.put(propertyName, propertyAttributes);
+        }
+    }
 
+    private String readScalar(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+            return parser.getValueAsString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
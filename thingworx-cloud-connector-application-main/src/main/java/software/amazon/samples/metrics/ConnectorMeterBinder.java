@@ -0,0 +1,170 @@
+package software.amazon.samples.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.connection.ClientConnectionsEntry;
+import org.redisson.connection.MasterSlaveEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.deviceShadow.MqttShadowPublisher;
+import software.amazon.samples.deviceShadow.ShadowUpdateBatcher;
+import software.amazon.samples.deviceShadow.ShadowUpdateDispatcher;
+import software.amazon.samples.events.ThingMessageDispatcher;
+import software.amazon.samples.health.ConnectorHealth;
+import software.amazon.samples.services.WarmUpService;
+import software.amazon.samples.startup.StartupPhase;
+import software.amazon.samples.thingworx.ScanScheduler;
+import software.amazon.samples.thingworx.ThingModelCache;
+import software.amazon.samples.thingworx.LastValueTable;
+import software.amazon.samples.thingworx.ThingworxClientSingleton;
+import software.amazon.samples.thingworx.ThingworxConnection;
+import software.amazon.samples.thingworx.ThingworxConnectionSupervisor;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Binds the counters and gauges kept by the connector components to the meter registry
+ * the values are read when the registry is scraped, nothing is recorded on the message path.
+ */
+
+@Slf4j
+@Component
+public class ConnectorMeterBinder implements MeterBinder {
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    ConnectorHealth connectorHealth;
+    @Autowired
+    ThingMessageDispatcher thingMessageDispatcher;
+    @Autowired
+    ScanScheduler scanScheduler;
+    @Autowired
+    ThingModelCache thingModelCache;
+    // created when first read, so binding the meters does not create the device shadow path in the FAST_START profile
+    @Lazy
+    @Autowired
+    ShadowUpdateBatcher shadowUpdateBatcher;
+    @Lazy
+    @Autowired
+    ShadowUpdateDispatcher shadowUpdateDispatcher;
+    @Lazy
+    @Autowired
+    MqttShadowPublisher mqttShadowPublisher;
+    @Autowired
+    RedissonClient redissonClient;
+    @Autowired
+    WarmUpService warmUpService;
+    @Autowired
+    ThingworxConnectionSupervisor connectionSupervisor;
+    @Autowired
+    LastValueTable lastValueTable;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("connector.messages.received", connectorHealth, ConnectorHealth::getReceivedCount).description("Messages received from the redis topic").register(registry);
+        Gauge.builder("connector.messages.queued", connectorHealth, ConnectorHealth::getQueueDepth).description("Messages received and not yet processed").register(registry);
+        Gauge.builder("connector.processing.lag", connectorHealth, ConnectorHealth::getProcessingLagMillis).baseUnit("milliseconds").register(registry);
+        for (int shard = 0; shard < thingMessageDispatcher.getShardCount(); shard++) {
+            int shardIndex = shard;
+            Gauge.builder("connector.dispatch.queue.depth", thingMessageDispatcher, dispatcher -> dispatcher.getQueueDepth(shardIndex)).tags(Tags.of("shard", String.valueOf(shard))).register(registry);
+        }
+        FunctionCounter.builder("connector.dispatch.conflated", thingMessageDispatcher, ThingMessageDispatcher::getConflatedCount).register(registry);
+        FunctionCounter.builder("connector.dispatch.dropped", thingMessageDispatcher, ThingMessageDispatcher::getDroppedCount).register(registry);
+        FunctionCounter.builder("connector.dispatch.throttled", thingMessageDispatcher, ThingMessageDispatcher::getThrottledCount).register(registry);
+        Gauge.builder("connector.dispatch.active.things", thingMessageDispatcher, ThingMessageDispatcher::getActiveThingCount).register(registry);
+        MultiGauge thingLag = MultiGauge.builder("connector.dispatch.thing.lag").baseUnit("milliseconds").description("Longest lag of the most lagging things in the last report interval").register(registry);
+        MultiGauge thingThrottled = MultiGauge.builder("connector.dispatch.thing.throttled").description("Throttled messages of the most throttled things in the last report interval").register(registry);
+        thingMessageDispatcher.addReportListener(() -> {
+            thingLag.register(thingMessageDispatcher.getMostLaggingThings().stream()
+                    .map(thingStats -> MultiGauge.Row.of(Tags.of("thing", thingStats.getThingName()), thingStats.getMaxLagMillis())).collect(Collectors.toList()), true);
+            thingThrottled.register(thingMessageDispatcher.getMostThrottledThings().stream()
+                    .map(thingStats -> MultiGauge.Row.of(Tags.of("thing", thingStats.getThingName()), thingStats.getThrottled())).collect(Collectors.toList()), true);
+        });
+        Gauge.builder("connector.spill.active", thingMessageDispatcher, dispatcher -> dispatcher.isSpilling() ? 1 : 0).register(registry);
+        FunctionCounter.builder("connector.spill.spilled", thingMessageDispatcher, ThingMessageDispatcher::getSpilledCount).register(registry);
+        FunctionCounter.builder("connector.spill.replayed", thingMessageDispatcher, ThingMessageDispatcher::getReplayedCount).register(registry);
+        FunctionCounter.builder("connector.spill.evicted", thingMessageDispatcher, ThingMessageDispatcher::getSpillEvictedCount).register(registry);
+        Gauge.builder("connector.spill.pending", thingMessageDispatcher, ThingMessageDispatcher::getSpillPendingCount).register(registry);
+        Gauge.builder("connector.spill.size", thingMessageDispatcher, ThingMessageDispatcher::getSpillSizeInBytes).baseUnit("bytes").register(registry);
+
+        Gauge.builder("connector.thingworx.connected", ThingworxClientSingleton.INSTANCE, client -> client.isConnected() ? 1 : 0).register(registry);
+        Gauge.builder("connector.thingworx.bound.things", ThingworxClientSingleton.INSTANCE, ThingworxClientSingleton::getBoundThingCount).register(registry);
+        // the connections are created after the meters are bound, they are looked up by index when scraped
+        for (int connection = 0; connection < Math.max(1, appConfigModule.getThingworxConnectionCount()); connection++) {
+            int connectionIndex = connection;
+            Tags tags = Tags.of("connection", String.valueOf(connection));
+            ThingworxClientSingleton pool = ThingworxClientSingleton.INSTANCE;
+            Gauge.builder("connector.thingworx.connection.connected", pool, client -> connectionValue(client, connectionIndex, owner -> owner.isConnected() ? 1 : 0)).tags(tags).register(registry);
+            Gauge.builder("connector.thingworx.connection.bound.things", pool, client -> connectionValue(client, connectionIndex, ThingworxConnection::getBoundThingCount)).tags(tags).register(registry);
+            FunctionCounter.builder("connector.thingworx.connection.pushes", pool, client -> connectionValue(client, connectionIndex, ThingworxConnection::getPushCount)).tags(tags).register(registry);
+            FunctionCounter.builder("connector.thingworx.connection.push.failures", pool, client -> connectionValue(client, connectionIndex, ThingworxConnection::getPushFailureCount)).tags(tags).register(registry);
+            FunctionCounter.builder("connector.thingworx.connection.push.time", pool, client -> connectionValue(client, connectionIndex, ThingworxConnection::getPushMillisTotal)).tags(tags).baseUnit("milliseconds").register(registry);
+            FunctionCounter.builder("connector.thingworx.connection.connects", pool, client -> connectionValue(client, connectionIndex, ThingworxConnection::getConnectCount)).tags(tags).register(registry);
+        }
+        FunctionCounter.builder("connector.thingworx.reconnects", connectionSupervisor, ThingworxConnectionSupervisor::getReconnectCount).register(registry);
+        FunctionCounter.builder("connector.thingworx.resynced.things", connectionSupervisor, ThingworxConnectionSupervisor::getResyncedThingCount).register(registry);
+        Gauge.builder("connector.thingworx.resync.duration", connectionSupervisor, ThingworxConnectionSupervisor::getLastResyncDurationMillis).baseUnit("milliseconds").description("Time from the last reconnect until all stale values were pushed").register(registry);
+        Gauge.builder("connector.thingworx.stale.things", lastValueTable, LastValueTable::getStaleThingCount).register(registry);
+        FunctionCounter.builder("connector.thingworx.pushes", scanScheduler, ScanScheduler::getPushCount).register(registry);
+        Gauge.builder("connector.thingworx.dirty.things", scanScheduler, ScanScheduler::getDirtyThingCount).register(registry);
+        FunctionCounter.builder("connector.model.cache.hits", thingModelCache, ThingModelCache::getHitCount).register(registry);
+        FunctionCounter.builder("connector.model.cache.misses", thingModelCache, ThingModelCache::getMissCount).register(registry);
+
+        FunctionCounter.builder("connector.shadow.changes", shadowUpdateBatcher, ShadowUpdateBatcher::getChangeCount).register(registry);
+        FunctionCounter.builder("connector.shadow.updates", shadowUpdateBatcher, ShadowUpdateBatcher::getUpdateCount).register(registry);
+        FunctionCounter.builder("connector.shadow.requeued", shadowUpdateBatcher, ShadowUpdateBatcher::getThrottledCount).description("Shadow updates merged back after throttling or overflow").register(registry);
+        FunctionCounter.builder("connector.shadow.lost", shadowUpdateBatcher, ShadowUpdateBatcher::getLostChangeCount).description("Property changes of shadow updates which failed").register(registry);
+        Gauge.builder("connector.shadow.queue.depth", shadowUpdateDispatcher, ShadowUpdateDispatcher::getQueueDepth).register(registry);
+        Gauge.builder("connector.shadow.in.flight", shadowUpdateDispatcher, ShadowUpdateDispatcher::getInFlight).register(registry);
+        Gauge.builder("connector.shadow.concurrency.limit", shadowUpdateDispatcher, ShadowUpdateDispatcher::getLimit).register(registry);
+        FunctionCounter.builder("connector.shadow.throttled", shadowUpdateDispatcher, ShadowUpdateDispatcher::getThrottledCount).register(registry);
+        FunctionCounter.builder("connector.shadow.retried", shadowUpdateDispatcher, ShadowUpdateDispatcher::getRetriedCount).register(registry);
+        FunctionCounter.builder("connector.shadow.dropped", shadowUpdateDispatcher, ShadowUpdateDispatcher::getDroppedCount).register(registry);
+        FunctionCounter.builder("connector.shadow.failed", shadowUpdateDispatcher, ShadowUpdateDispatcher::getFailedCount).register(registry);
+        if (mqttShadowPublisher.isEnabled()) {
+            Gauge.builder("connector.shadow.mqtt.connected", mqttShadowPublisher, publisher -> publisher.isConnected() ? 1 : 0).register(registry);
+            FunctionCounter.builder("connector.shadow.mqtt.acknowledged", mqttShadowPublisher, MqttShadowPublisher::getAcknowledgedCount).register(registry);
+            FunctionCounter.builder("connector.shadow.mqtt.failed", mqttShadowPublisher, MqttShadowPublisher::getFailedCount).register(registry);
+        }
+
+        for (StartupPhase phase : StartupPhase.values()) {
+            Gauge.builder("connector.startup.phase", phase, StartupPhase::getReachedAtMillis).tags(Tags.of("phase", phase.name())).baseUnit("milliseconds")
+                    .description("Time from JVM start until the startup phase was reached, -1 while not reached").register(registry);
+        }
+        Gauge.builder("connector.startup.time.to.ready", warmUpService, WarmUpService::getTimeToReadyMillis).baseUnit("milliseconds").description("Time from start until the instance topic was subscribed").register(registry);
+        Gauge.builder("connector.redis.connections.free", redissonClient, this::freeRedisConnections).description("Free connections in the redisson pools").register(registry);
+    }
+
+    private static double connectionValue(ThingworxClientSingleton client, int connectionIndex, ToDoubleFunction<ThingworxConnection> value) {
+        List<ThingworxConnection> connections = client.getConnections();
+        return connectionIndex < connections.size() ? value.applyAsDouble(connections.get(connectionIndex)) : 0;
+    }
+
+    private double freeRedisConnections(RedissonClient client) {
+        try {
+            int free = 0;
+            for (MasterSlaveEntry entry : ((Redisson) client).getConnectionManager().getEntrySet()) {
+                for (ClientConnectionsEntry connections : entry.getAllEntries()) {
+                    free += connections.getFreeAmount();
+                }
+            }
+            return free;
+        } catch (RuntimeException e) {
+            // internal redisson api, not worth failing a scrape for
+            log.debug("Could not read redisson pool statistics: {}", e.getMessage());
+            return Double.NaN;
+        }
+    }
+}
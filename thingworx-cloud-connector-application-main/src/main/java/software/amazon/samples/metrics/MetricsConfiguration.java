@@ -0,0 +1,21 @@
+package software.amazon.samples.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+/**
+ * Micrometer configuration Bean
+ * every meter is tagged with the instance name, so the metrics of all connector tasks can be scraped into one place.
+ */
+
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    MeterRegistryCustomizer<MeterRegistry> connectorInstanceTag(AppConfigModule appConfigModule) {
+        return registry -> registry.config().commonTags("connector", appConfigModule.getInstanceName());
+    }
+}
@@ -0,0 +1,62 @@
+package software.amazon.samples.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Spring boot component holding the latency histograms of the stages a message goes through
+ * decode parses the message, bind binds a thing not yet bound, model reconciles the thing properties with a changed model,
+ * write sets the device values on the thing and push sends the values of a thing to thingworx in a scan cycle.
+ */
+
+@Component
+public class StageTimers {
+
+    private static final String NAME = "connector.message.stage";
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private Timer decode;
+    private Timer bind;
+    private Timer model;
+    private Timer write;
+    private Timer push;
+
+    @PostConstruct
+    public void register() {
+        decode = stage("decode");
+        bind = stage("bind");
+        model = stage("model");
+        write = stage("write");
+        push = stage("push");
+    }
+
+    private Timer stage(String stage) {
+        return Timer.builder(NAME).tag("stage", stage).description("Duration of a message processing stage").publishPercentileHistogram().register(meterRegistry);
+    }
+
+    public Timer decode() {
+        return decode;
+    }
+
+    public Timer bind() {
+        return bind;
+    }
+
+    public Timer model() {
+        return model;
+    }
+
+    public Timer write() {
+        return write;
+    }
+
+    public Timer push() {
+        return push;
+    }
+}
@@ -0,0 +1,18 @@
+package software.amazon.samples.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Message from lambda decoded into the thing model and the device payload
+ * payload model is null for status messages
+ */
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class ThingMessage {
+    private final ThingModel thingModel;
+    private final PayloadModel payloadModel;
+}
@@ -19,11 +19,19 @@ public class ThingModel {
     private final String name;
     private final String status;
     private final HashMap<String, Map<String, String>> attributes;
+    private final long modelFingerprint;
+    private final boolean modelChanged;
 
     public ThingModel(String name, String status, HashMap<String, Map<String, String>> attributes) {
+        this(name, status, attributes, 0, true);
+    }
+
+    public ThingModel(String name, String status, HashMap<String, Map<String, String>> attributes, long modelFingerprint, boolean modelChanged) {
         this.name = name;
         this.status = status;
         this.attributes = attributes;
+        this.modelFingerprint = modelFingerprint;
+        this.modelChanged = modelChanged;
     }
 
     public String getDeviceName() {
@@ -34,8 +42,19 @@ public class ThingModel {
         return status;
     }
 
-    public Map<String, Map<String, String>> getModel() {
+    public HashMap<String, Map<String, String>> getModel() {
         return attributes;
     }
 
+    public long getModelFingerprint() {
+        return modelFingerprint;
+    }
+
+    /**
+     * @return false when the model is the one last applied to the thing
+     */
+    public boolean isModelChanged() {
+        return modelChanged;
+    }
+
 }
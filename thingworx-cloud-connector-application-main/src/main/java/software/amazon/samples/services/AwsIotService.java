@@ -2,6 +2,8 @@ package software.amazon.samples.services;
 
 import org.json.JSONObject;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface fo AWS Iot service
  * this service also sends data to thingworx coming from AWS device
@@ -13,5 +15,8 @@ import org.json.JSONObject;
 
 public interface AwsIotService {
 
-    void updateThingShadow(String thingName, JSONObject payload);
+    /**
+     * @return future completed when the shadow was updated, completed exceptionally when the update failed
+     */
+    CompletableFuture<Void> updateThingShadow(String thingName, JSONObject payload);
 }
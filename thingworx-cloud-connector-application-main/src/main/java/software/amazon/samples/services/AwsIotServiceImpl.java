@@ -1,14 +1,14 @@
 package software.amazon.samples.services;
 
-import com.amazonaws.services.iotdata.model.UpdateThingShadowRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import software.amazon.samples.deviceShadow.AwsDeviceShadowExecutor;
+import software.amazon.samples.deviceShadow.MqttShadowPublisher;
+import software.amazon.samples.deviceShadow.ShadowUpdateDispatcher;
 
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Spring boot service for compiling and sending device shadow update message to AWS Iot Core
@@ -24,17 +24,17 @@ import java.nio.charset.StandardCharsets;
 public class AwsIotServiceImpl implements AwsIotService {
 
     @Autowired
-    AwsDeviceShadowExecutor awsDeviceShadowExecutor;
+    ShadowUpdateDispatcher shadowUpdateDispatcher;
+    @Autowired
+    MqttShadowPublisher mqttShadowPublisher;
 
     @Override
-    public void updateThingShadow(String thingName, JSONObject payload) {
-        ByteBuffer payloadByteBuffer = ByteBuffer.wrap(payload.toString().getBytes(StandardCharsets.UTF_8));
-        UpdateThingShadowRequest updateThingShadowRequest = new UpdateThingShadowRequest();
-        updateThingShadowRequest.setThingName(thingName);
-        updateThingShadowRequest.withPayload(payloadByteBuffer);
-
+    public CompletableFuture<Void> updateThingShadow(String thingName, JSONObject payload) {
         log.debug("going to update device shadow for Thing [{}] with payload [{}]", thingName, payload);
-        //delegate to dedicated thread so that thingworx does not have to wait
-        awsDeviceShadowExecutor.getExecutorService().execute(awsDeviceShadowExecutor.getRunnableDeviceShadowUpdateTask(updateThingShadowRequest));
+        if (mqttShadowPublisher.isEnabled()) {
+            return mqttShadowPublisher.updateThingShadow(thingName, payload);
+        }
+        // queued and sent without blocking, so that thingworx does not have to wait
+        return shadowUpdateDispatcher.submit(thingName, payload.toString().getBytes(StandardCharsets.UTF_8));
     }
 }
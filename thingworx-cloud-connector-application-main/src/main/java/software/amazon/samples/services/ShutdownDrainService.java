@@ -0,0 +1,115 @@
+package software.amazon.samples.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.deviceShadow.MqttShadowPublisher;
+import software.amazon.samples.deviceShadow.ShadowUpdateBatcher;
+import software.amazon.samples.deviceShadow.ShadowUpdateDispatcher;
+import software.amazon.samples.events.ThingMessageDispatcher;
+import software.amazon.samples.thingworx.ScanScheduler;
+import software.amazon.samples.thingworx.ThingworxClientSingleton;
+import software.amazon.samples.thingworx.ThingworxConnectionSupervisor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring boot service draining the connector when the application context is closed, e.g. on SIGTERM when a Fargate task is stopped
+ * the instance topic is unsubscribed first, so the router parks new messages for the next owner. The ingestion and shadow queues are then
+ * worked off until the drain deadline, the last values are pushed to thingworx in a final scan and all things are unbound.
+ * It stops before the components it drains are destroyed, their own shutdown only cleans up what is left.
+ */
+
+@Slf4j
+@Service
+public class ShutdownDrainService implements SmartLifecycle {
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    RedissonClient redissonClient;
+    @Autowired
+    ThingMessageDispatcher thingMessageDispatcher;
+    @Autowired
+    ConfigurableListableBeanFactory beanFactory;
+    @Autowired
+    ScanScheduler scanScheduler;
+    @Autowired
+    ThingworxConnectionSupervisor connectionSupervisor;
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        long start = System.currentTimeMillis();
+        long deadline = start + TimeUnit.SECONDS.toMillis(appConfigModule.getDrainTimeoutInSeconds());
+        log.info("Draining connector instance [{}] within [{}] seconds.", appConfigModule.getInstanceName(), appConfigModule.getDrainTimeoutInSeconds());
+        int ingestionLeft = 0;
+        int shadowChangesLeft = 0;
+        int shadowUpdatesLeft = 0;
+        try {
+            // no new messages, the router parks them for the next owner
+            redissonClient.getTopic(appConfigModule.getInstanceName()).removeAllListeners();
+            ingestionLeft = thingMessageDispatcher.drain(deadline);
+            ShadowUpdateBatcher shadowUpdateBatcher = createdBean(ShadowUpdateBatcher.class);
+            if (shadowUpdateBatcher != null) {
+                shadowChangesLeft = shadowUpdateBatcher.drain(deadline);
+            }
+            MqttShadowPublisher mqttShadowPublisher = createdBean(MqttShadowPublisher.class);
+            ShadowUpdateDispatcher shadowUpdateDispatcher = createdBean(ShadowUpdateDispatcher.class);
+            if (mqttShadowPublisher != null && mqttShadowPublisher.isEnabled()) {
+                shadowUpdatesLeft = mqttShadowPublisher.drain(deadline);
+            } else if (shadowUpdateDispatcher != null) {
+                shadowUpdatesLeft = shadowUpdateDispatcher.drain(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Drain was interrupted, pushing the last values and unbinding right away.");
+        } catch (Exception e) {
+            log.error("Error draining the connector, pushing the last values and unbinding right away: {}", e.getMessage());
+        }
+        // the supervisor must not reconnect or resync while things are unbound
+        connectionSupervisor.stop();
+        int thingsNotPushed = scanScheduler.drain();
+        int thingsNotUnbound = ThingworxClientSingleton.INSTANCE.unbindAll();
+
+        // the metrics endpoint is not scraped anymore, the log is the report
+        log.info("Drained in [{}] milliseconds, [{}] items dropped: messages left [{}], things with unsent shadow changes [{}], shadow updates left [{}], things not pushed [{}], things not unbound [{}], spilled messages left [{}]",
+                System.currentTimeMillis() - start, ingestionLeft + shadowChangesLeft + shadowUpdatesLeft, ingestionLeft, shadowChangesLeft, shadowUpdatesLeft, thingsNotPushed, thingsNotUnbound, thingMessageDispatcher.getSpillPendingCount());
+        running = false;
+    }
+
+    /**
+     * @return the bean if it was created, in the FAST_START profile the device shadow path is only created on first use and then has nothing to drain
+     */
+    private <T> T createdBean(Class<T> type) {
+        for (String beanName : beanFactory.getBeanNamesForType(type, false, false)) {
+            if (beanFactory.containsSingleton(beanName)) {
+                return beanFactory.getBean(beanName, type);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops first, before the web server and the components it drains.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE;
+    }
+}
@@ -0,0 +1,146 @@
+package software.amazon.samples.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.execution.ExecutionModel;
+import software.amazon.samples.mapper.JsonMessageModelMapper;
+import software.amazon.samples.model.ThingModel;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spring boot service binding the things assigned to this instance before it subscribes to its topic
+ * the assignment is read from the instance list of the data fetcher lambda, the models of a batch of things are loaded from redis at once
+ * and the things of a batch are bound and their models applied in parallel. Things the warm-up did not get to are bound by their first message.
+ */
+
+@Slf4j
+@Service
+public class WarmUpService {
+
+    private static final String INSTANCE_NAME_FIELD = "instanceName";
+    private static final String THING_NAMES_FIELD = "thingNames";
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    RedissonClient redissonClient;
+    @Autowired
+    ThingworxServiceImpl thingworxService;
+    @Autowired
+    JsonMessageModelMapper mapper;
+    @Autowired
+    ExecutionModel executionModel;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile long timeToReadyMillis;
+
+    public void warmUp(String instanceName) {
+        if (!appConfigModule.getWarmUpEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<String> thingNames = readAssignedThings(instanceName);
+        if (thingNames.isEmpty()) {
+            log.info("No things are assigned to instance [{}] yet, nothing to warm up.", instanceName);
+            return;
+        }
+
+        AtomicInteger bound = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long deadline = start + TimeUnit.SECONDS.toMillis(appConfigModule.getWarmUpTimeoutInSeconds());
+        int batchSize = appConfigModule.getWarmUpBatchSize();
+        ExecutorService executor = executionModel.newBoundedExecutor("warm-up-", appConfigModule.getWarmUpParallelism());
+        try {
+            for (int from = 0; from < thingNames.size() && System.currentTimeMillis() < deadline; from += batchSize) {
+                List<String> batch = thingNames.subList(from, Math.min(from + batchSize, thingNames.size()));
+                Map<String, String> deviceData = redissonClient.getBuckets(StringCodec.INSTANCE).get(batch.toArray(new String[0]));
+                List<Future<?>> futures = new ArrayList<>(batch.size());
+                for (String thingName : batch) {
+                    futures.add(executor.submit(() -> bind(thingName, deviceData.get(thingName), bound, failed)));
+                }
+                for (Future<?> future : futures) {
+                    future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (TimeoutException e) {
+            log.warn("Warm-up did not finish within [{}] seconds, remaining things are bound by their first message.", appConfigModule.getWarmUpTimeoutInSeconds());
+        } catch (ExecutionException e) {
+            log.error("Warm-up failed, remaining things are bound by their first message: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        log.info("Warm-up bound [{}] of [{}] assigned things in [{}] milliseconds ([{}] things per second), [{}] failed.",
+                bound.get(), thingNames.size(), elapsed, bound.get() * 1000L / elapsed, failed.get());
+    }
+
+    private void bind(String thingName, String deviceData, AtomicInteger bound, AtomicInteger failed) {
+        try {
+            boolean newlyBound = thingworxService.bindNewThing(thingName);
+            ThingModel thingModel = deviceData == null ? null : mapper.deviceDataToThingModel(thingName, deviceData);
+            if (newlyBound && thingModel != null) {
+                thingworxService.updateModel(thingModel);
+            }
+            bound.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.warn("Could not bind thing [{}] during warm-up: {}", thingName, e.getMessage());
+        }
+    }
+
+    private List<String> readAssignedThings(String instanceName) {
+        String instanceListName = appConfigModule.getInstanceListName();
+        if (instanceListName.isEmpty()) {
+            log.warn("Name of the instance list is not configured, skipping warm-up.");
+            return Collections.emptyList();
+        }
+        for (Object instance : redissonClient.getList(instanceListName).readAll()) {
+            try {
+                JsonNode instanceNode = objectMapper.readTree(instance.toString());
+                if (instanceName.equals(instanceNode.path(INSTANCE_NAME_FIELD).asText())) {
+                    List<String> thingNames = new ArrayList<>();
+                    instanceNode.path(THING_NAMES_FIELD).forEach(thingName -> thingNames.add(thingName.asText()));
+                    return thingNames;
+                }
+            } catch (IOException e) {
+                log.warn("Could not read instance from list [{}]: {}", instanceListName, e.getMessage());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Marks this instance as ready to receive messages and reports the time since the JVM started.
+     */
+    public void ready() {
+        timeToReadyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        log.info("Connector instance is ready to receive messages [{}] milliseconds after start.", timeToReadyMillis);
+    }
+
+    /**
+     * @return milliseconds from the start of the JVM until the instance topic was subscribed, 0 while not ready
+     */
+    public long getTimeToReadyMillis() {
+        return timeToReadyMillis;
+    }
+}
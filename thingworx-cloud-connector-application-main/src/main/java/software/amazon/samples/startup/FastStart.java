@@ -0,0 +1,75 @@
+package software.amazon.samples.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Profiles;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.thingworx.ThingworxClientSingleton;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts the slow parts of the startup in the FAST_START profile as soon as the environment is prepared
+ * the AppConfig fetch runs while the application context is created, and the thingworx handshake starts as soon as the configuration is there,
+ * while the context goes on creating the redisson client and the other beans. The beans and the application runner take the results from here.
+ */
+
+@Slf4j
+public class FastStart implements ApplicationListener<ApplicationEnvironmentPreparedEvent>, Ordered {
+
+    public static final String PROFILE = "FAST_START";
+
+    private static volatile CompletableFuture<AppConfigModule> appConfigModule;
+    private static volatile CompletableFuture<Void> thingworxHandshake;
+
+    @Override
+    public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+        ConfigurableEnvironment environment = event.getEnvironment();
+        if (!environment.acceptsProfiles(Profiles.of(PROFILE)) || appConfigModule != null) {
+            return;
+        }
+        log.info("Fast start: fetching the configuration and connecting to thingworx while the application context is created.");
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "fast-start");
+            thread.setDaemon(true);
+            return thread;
+        });
+        appConfigModule = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new AppConfigModule(environment);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        thingworxHandshake = appConfigModule.thenAcceptAsync(ThingworxClientSingleton.INSTANCE::generateThingworxClientInstance, executor);
+        thingworxHandshake.whenComplete((result, error) -> executor.shutdown());
+    }
+
+    /**
+     * Runs after the listener loading the application properties, the AppConfig application name is read from them.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    /**
+     * @return configuration fetched in the background, or null when not started fast
+     */
+    public static CompletableFuture<AppConfigModule> getAppConfigModule() {
+        return appConfigModule;
+    }
+
+    /**
+     * @return thingworx handshake running in the background, or null when not started fast
+     */
+    public static CompletableFuture<Void> getThingworxHandshake() {
+        return thingworxHandshake;
+    }
+}
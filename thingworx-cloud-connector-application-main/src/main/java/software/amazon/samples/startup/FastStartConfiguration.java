@@ -0,0 +1,29 @@
+package software.amazon.samples.startup;
+
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import software.amazon.samples.events.ThingMessageDispatcher;
+import software.amazon.samples.health.ConnectorHealthPublisher;
+import software.amazon.samples.services.WarmUpService;
+import software.amazon.samples.thingworx.ScanScheduler;
+import software.amazon.samples.thingworx.ThingworxConnectionSupervisor;
+
+/**
+ * Beans of the FAST_START profile
+ * the profile initializes beans lazily, the beans on the path from the redis topic to thingworx are still created at startup,
+ * so the first message does not pay for them. The device shadow path, metrics and management endpoints are created on first use.
+ */
+
+@Configuration
+@Profile(FastStart.PROFILE)
+public class FastStartConfiguration {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerMessagePath() {
+        return LazyInitializationExcludeFilter.forBeanTypes(RedissonClient.class, ThingMessageDispatcher.class, ScanScheduler.class, ThingworxConnectionSupervisor.class,
+                WarmUpService.class, ConnectorHealthPublisher.class);
+    }
+}
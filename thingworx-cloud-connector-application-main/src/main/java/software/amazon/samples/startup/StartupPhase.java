@@ -0,0 +1,53 @@
+package software.amazon.samples.startup;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Startup phases of the connector with the time each was reached, in milliseconds after the JVM started
+ * each phase is logged when reached, all phases are logged together with the first message, which gives the time to the first message.
+ */
+
+@Slf4j
+public enum StartupPhase {
+    MAIN_STARTED,
+    APP_CONFIG_FETCHED,
+    REDISSON_CREATED,
+    THINGWORX_CONNECTED,
+    CONTEXT_READY,
+    WARMED_UP,
+    SUBSCRIBED,
+    FIRST_MESSAGE;
+
+    private volatile long reachedAtMillis = -1;
+
+    /**
+     * Records the phase the first time it is reached, later calls are ignored.
+     */
+    public void reached() {
+        if (reachedAtMillis >= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (reachedAtMillis >= 0) {
+                return;
+            }
+            reachedAtMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        }
+        log.info("Startup phase [{}] reached [{}] milliseconds after JVM start.", name(), reachedAtMillis);
+        if (this == FIRST_MESSAGE) {
+            log.info("Startup timeline: {}", Arrays.stream(values()).filter(phase -> phase.reachedAtMillis >= 0)
+                    .map(phase -> phase.name() + " [" + phase.reachedAtMillis + " ms]").collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * @return milliseconds after JVM start when the phase was reached, -1 while not reached
+     */
+    public long getReachedAtMillis() {
+        return reachedAtMillis;
+    }
+}
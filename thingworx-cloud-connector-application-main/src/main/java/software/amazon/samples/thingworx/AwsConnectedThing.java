@@ -5,16 +5,20 @@ import com.thingworx.communications.client.things.VirtualThing;
 import com.thingworx.communications.client.things.VirtualThingPropertyChangeListener;
 import com.thingworx.metadata.PropertyDefinition;
 import com.thingworx.types.BaseTypes;
+import com.thingworx.types.constants.QualityStatus;
+import com.thingworx.types.primitives.structs.VTQ;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
 import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
 import software.amazon.samples.deviceShadow.ThingworxPropertyChangeCallback;
 import software.amazon.samples.events.ThingworxPropertyChangeListener;
 import software.amazon.samples.model.ThingModel;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
 
 /**
  * Instance VirtualThing representing AWS connected device
@@ -28,9 +32,15 @@ import java.util.Set;
 @Getter
 public class AwsConnectedThing extends VirtualThing {
 
+    // property change events are fired on the writing thread, this tags the writes of device values so the listener does not echo them back
+    private static final ThreadLocal<Boolean> DEVICE_WRITE = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
     private final int processScanRequestTimeoutInMillis;
     private final String modelParametersDataTypeIndicator;
     private final VirtualThingPropertyChangeListener listener;
+    private volatile boolean propertySubscriptionsStale;
+    // value converters of the properties defined by the model last applied to this thing
+    private volatile Map<String, PropertyValueConverter> converters = Collections.emptyMap();
 
     public AwsConnectedThing(String name, String description, String identifier, ConnectedThingClient client,
                              AppConfigModule appConfigModule, ThingworxPropertyChangeCallback callback) {
@@ -41,57 +51,120 @@ public class AwsConnectedThing extends VirtualThing {
         processScanRequestTimeoutInMillis = appConfigModule.getProcessScanRequestTimeoutInMillis();
     }
 
+    /**
+     * @return true when called from a property change event caused by writing device values
+     */
+    public static boolean isDeviceWrite() {
+        return DEVICE_WRITE.get();
+    }
+
+    /**
+     * Writes values received from the device. Only model properties present in the payload are written, each converted by the converter of its type.
+     * Property change events of these writes are tagged as device writes, the listener stays attached, so changes made in thingworx at the same time are still handled.
+     *
+     * @return number of written properties
+     */
+    public int setPropertiesFromDevice(Map<String, Object> values) {
+        return setPropertiesFromDevice(values, false);
+    }
+
+    /**
+     * @param force queue the values for the next push even when they equal the current values, used to push values again after thingworx missed them
+     * @return number of written properties
+     */
+    public int setPropertiesFromDevice(Map<String, Object> values, boolean force) {
+        Map<String, PropertyValueConverter> propertyConverters = converters;
+        int written = 0;
+        DEVICE_WRITE.set(Boolean.TRUE);
+        try {
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                PropertyValueConverter converter = propertyConverters.get(value.getKey());
+                if (converter == null || value.getValue() == null) {
+                    continue;
+                }
+                try {
+                    if (force) {
+                        this.setPropertyVTQ(value.getKey(), new VTQ(converter.convert(value.getValue()), DateTime.now(), QualityStatus.GOOD), true);
+                    } else {
+                        this.setPropertyValue(value.getKey(), converter.convert(value.getValue()));
+                    }
+                    written++;
+                } catch (Exception e) {
+                    log.warn("Value [{}] of property [{}] of thing [{}] could not be written: {}", value.getValue(), value.getKey(), getName(), e.getMessage());
+                }
+            }
+        } finally {
+            DEVICE_WRITE.set(Boolean.FALSE);
+        }
+        return written;
+    }
+
     @Override
     public void processScanRequest() throws Exception {
         super.updateSubscribedProperties(processScanRequestTimeoutInMillis);
     }
 
+    /**
+     * Reconciles the thing properties with the model, only properties which were removed from the model, added to it or changed their type are touched.
+     * Properties which did not change keep their values and subscriptions.
+     */
     public void updateProperties(ThingModel thingModel) {
         Map<String, Map<String, String>> thingModelParameters = thingModel.getModel();
-        Set<String> parametersFromThingKeySet = this.getProperties().keySet();
-        Set<String> parametersFromModelKeySet = thingModel.getModel().keySet();
-        boolean shouldRemoveProperties = false;
-        for (String thingParameterKey : parametersFromThingKeySet) {
-            if (propertyNotInSet(thingParameterKey, parametersFromModelKeySet)) { // if property not in model then remove from thing
+        Map<String, PropertyValueConverter> propertyConverters = new HashMap<>();
+        int removed = 0;
+        int added = 0;
+        int retyped = 0;
+
+        for (String thingParameterKey : new ArrayList<>(this.getProperties().keySet())) {
+            if (!thingModelParameters.containsKey(thingParameterKey)) { // if property not in model then remove from thing
                 log.debug("property [{}] from [{}] does not exist in the model.", thingParameterKey, thingModel.getDeviceName());
-                shouldRemoveProperties = true;
-            } else {
-                String baseTypeString = thingModelParameters.get(thingParameterKey).get(modelParametersDataTypeIndicator);
-                // if model data type does not match the thing data type for the same property remove the property from the model
-                if (!baseTypeString.equalsIgnoreCase(this.getProperty(thingParameterKey).getPropertyDefinition().getBaseType().friendlyName())) {
-                    log.debug("data type for property [{}] from [{}] does not match the data type on the model model.", thingParameterKey, thingModel.getDeviceName());
-                    shouldRemoveProperties = true;
-                }
+                this.getProperties().remove(thingParameterKey);
+                removed++;
             }
         }
 
-        if (shouldRemoveProperties) {
-            this.getProperties().clear();
-            log.debug("clearing thing properties of thing {} since the model was updated", thingModel.getDeviceName());
-        }
-
-        for (String modelParameterKey : parametersFromModelKeySet) {
-            if (propertyNotInSet(modelParameterKey, parametersFromThingKeySet)) { // if property not on the thing add from model
-                log.debug("Adding property [{}] to [{}] since it was added to the model.", modelParameterKey, thingModel.getDeviceName());
-                String baseTypeString = thingModelParameters.get(modelParameterKey).get(modelParametersDataTypeIndicator);
-                BaseTypes baseType = BaseTypes.fromFriendlyName(baseTypeString);
-                if (baseType == null) {
-                    log.warn("Property [{}] couldn't be added to thing {}. Can't recognize type [{}] of the parameter", modelParameterKey, thingModel.getDeviceName(), baseTypeString);
-                } else {
-                    PropertyDefinition propertyDefinition = new PropertyDefinition(modelParameterKey, "", baseType);
-                    this.defineProperty(propertyDefinition);
+        for (Map.Entry<String, Map<String, String>> modelParameter : thingModelParameters.entrySet()) {
+            String modelParameterKey = modelParameter.getKey();
+            String baseTypeString = modelParameter.getValue().get(modelParametersDataTypeIndicator);
+            BaseTypes baseType = baseTypeString == null ? null : BaseTypes.fromFriendlyName(baseTypeString);
+            boolean definedOnThing = this.getProperty(modelParameterKey) != null;
+            if (baseType == null) {
+                log.warn("Property [{}] couldn't be added to thing {}. Can't recognize type [{}] of the parameter", modelParameterKey, thingModel.getDeviceName(), baseTypeString);
+                if (definedOnThing) {
+                    this.getProperties().remove(modelParameterKey);
+                    removed++;
                 }
+            } else if (!definedOnThing) { // if property not on the thing add from model
+                log.debug("Adding property [{}] to [{}] since it was added to the model.", modelParameterKey, thingModel.getDeviceName());
+                this.defineProperty(new PropertyDefinition(modelParameterKey, "", baseType));
+                added++;
+            } else if (this.getProperty(modelParameterKey).getPropertyDefinition().getBaseType() != baseType) { // if model data type does not match the thing data type redefine the property
+                log.debug("data type for property [{}] from [{}] does not match the data type on the model model.", modelParameterKey, thingModel.getDeviceName());
+                this.getProperties().remove(modelParameterKey);
+                this.defineProperty(new PropertyDefinition(modelParameterKey, "", baseType));
+                retyped++;
             }
+            if (baseType != null) {
+                propertyConverters.put(modelParameterKey, PropertyValueConverter.forType(baseType));
+            }
+        }
+        converters = propertyConverters;
+
+        if (removed > 0 || added > 0 || retyped > 0) {
+            // loaded subscriptions still refer to removed properties
+            propertySubscriptionsStale = true;
+            log.debug("Model of thing [{}] reconciled: [{}] properties added, [{}] removed, [{}] retyped", thingModel.getDeviceName(), added, removed, retyped);
         }
     }
 
-    private boolean propertyNotInSet(String property, Set<String> parametersSet) {
-        for (String parameterName : parametersSet) {
-            if (Objects.equals(property, parameterName)) {
-                return false;
-            }
+    /**
+     * Loads the info table definitions of subscribed properties when none are loaded yet or properties were added, removed or retyped since the last load.
+     * If not loaded property change types will not be respected.
+     */
+    public void loadPropertySubscriptionsIfNeeded() {
+        if (propertySubscriptionsStale || this.getPropertySubscriptions().isEmpty()) {
+            propertySubscriptionsStale = false;
+            this.loadPropertySubscriptions();
         }
-        return true;
     }
 }
-
@@ -0,0 +1,50 @@
+package software.amazon.samples.thingworx;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring assigning thing names to connection indexes
+ * each connection is placed on the ring many times, so things are spread evenly and changing the number of connections
+ * moves only the things of the added or removed connection.
+ */
+
+class ConsistentHashRing {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    ConsistentHashRing(int nodeCount, int virtualNodesPerNode) {
+        for (int node = 0; node < nodeCount; node++) {
+            for (int virtualNode = 0; virtualNode < virtualNodesPerNode; virtualNode++) {
+                ring.put(hash("connection-" + node + "#" + virtualNode), node);
+            }
+        }
+    }
+
+    int nodeOf(String key) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the characters of the key, mixed by the finalizer of murmur3
+     * the ring keeps its own hash, the placement of things must not change when another hash in the connector does.
+     */
+    static long hash(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        // FNV-1a spreads short similar keys poorly over the high bits, the finalizer mixes them
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
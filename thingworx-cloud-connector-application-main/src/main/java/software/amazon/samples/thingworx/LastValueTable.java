@@ -0,0 +1,63 @@
+package software.amazon.samples.thingworx;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spring boot component keeping the last value received from the device for each property of each bound thing
+ * things whose values could not be pushed to thingworx, because the connection was down or the push failed, are marked stale
+ * and their last values are pushed again by the connection supervisor.
+ */
+
+@Component
+public class LastValueTable {
+
+    private final Map<String, Map<String, Object>> lastValues = new ConcurrentHashMap<>();
+    private final Set<String> staleThings = ConcurrentHashMap.newKeySet();
+
+    public void record(String thingName, Map<String, Object> values) {
+        Map<String, Object> thingValues = lastValues.computeIfAbsent(thingName, name -> new ConcurrentHashMap<>());
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            if (value.getValue() != null) { // null values are never written to the thing
+                thingValues.put(value.getKey(), value.getValue());
+            }
+        }
+    }
+
+    public Map<String, Object> get(String thingName) {
+        return lastValues.get(thingName);
+    }
+
+    public void markStale(String thingName) {
+        if (lastValues.containsKey(thingName)) {
+            staleThings.add(thingName);
+        }
+    }
+
+    /**
+     * @return names of the stale things, which are no longer marked stale
+     */
+    public List<String> drainStaleThings() {
+        List<String> drained = new ArrayList<>();
+        for (String thingName : staleThings) {
+            if (staleThings.remove(thingName)) {
+                drained.add(thingName);
+            }
+        }
+        return drained;
+    }
+
+    public void remove(String thingName) {
+        lastValues.remove(thingName);
+        staleThings.remove(thingName);
+    }
+
+    public int getStaleThingCount() {
+        return staleThings.size();
+    }
+}
@@ -0,0 +1,54 @@
+package software.amazon.samples.thingworx;
+
+import com.thingworx.types.BaseTypes;
+import com.thingworx.types.primitives.BooleanPrimitive;
+import com.thingworx.types.primitives.IPrimitiveType;
+import com.thingworx.types.primitives.IntegerPrimitive;
+import com.thingworx.types.primitives.LongPrimitive;
+import com.thingworx.types.primitives.NumberPrimitive;
+import com.thingworx.types.primitives.StringPrimitive;
+
+/**
+ * Converts a value parsed from the device payload to the thingworx primitive of a property
+ * converters are resolved once per model from the property base type, so no type lookup is done per value.
+ * A new primitive is created for every value, the thing keeps the primitive as the property value until it is pushed.
+ * Fractional numbers written to INTEGER and LONG properties are rounded, numbers out of the range of the type are rejected.
+ */
+
+@FunctionalInterface
+public interface PropertyValueConverter {
+
+    IPrimitiveType convert(Object value) throws Exception;
+
+    static PropertyValueConverter forType(BaseTypes baseType) {
+        switch (baseType) {
+            case NUMBER:
+                return value -> value instanceof Number ? new NumberPrimitive(((Number) value).doubleValue()) : BaseTypes.ConvertToPrimitive(value, baseType);
+            case INTEGER:
+                return value -> value instanceof Number ? new IntegerPrimitive((int) toIntegral((Number) value, Integer.MIN_VALUE, Integer.MAX_VALUE)) : BaseTypes.ConvertToPrimitive(value, baseType);
+            case LONG:
+                return value -> value instanceof Number ? new LongPrimitive(toIntegral((Number) value, Long.MIN_VALUE, Long.MAX_VALUE)) : BaseTypes.ConvertToPrimitive(value, baseType);
+            case BOOLEAN:
+                return value -> value instanceof Boolean ? new BooleanPrimitive((Boolean) value) : BaseTypes.ConvertToPrimitive(value, baseType);
+            case STRING:
+                return value -> value instanceof String ? new StringPrimitive((String) value) : BaseTypes.ConvertToPrimitive(value, baseType);
+            default:
+                return value -> BaseTypes.ConvertToPrimitive(value, baseType);
+        }
+    }
+
+    private static long toIntegral(Number value, long min, long max) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            long integral = value.longValue();
+            if (integral < min || integral > max) {
+                throw new IllegalArgumentException("Value " + value + " is out of range [" + min + ", " + max + "]");
+            }
+            return integral;
+        }
+        double number = value.doubleValue();
+        if (Double.isNaN(number) || number < min || number > max) {
+            throw new IllegalArgumentException("Value " + value + " is out of range [" + min + ", " + max + "]");
+        }
+        return Math.round(number);
+    }
+}
@@ -0,0 +1,248 @@
+package software.amazon.samples.thingworx;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.execution.ExecutionModel;
+import software.amazon.samples.health.ConnectorHealth;
+import software.amazon.samples.metrics.StageTimers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component pushing property values to thingworx in scan cycles
+ * things are marked dirty when their properties are set and all dirty things are pushed once per interval, so a thing receiving
+ * many messages per interval costs one push. The interval is randomized by the jitter, so instances started together do not push in sync.
+ * With an interval of 0 every thing is pushed right away when marked dirty. In the VIRTUAL execution mode the things of a scan cycle
+ * are pushed in parallel, each on its own virtual thread.
+ */
+
+@Slf4j
+@Component
+public class ScanScheduler {
+
+    private static final long REPORT_INTERVAL_IN_MILLIS = 60000;
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    ConnectorHealth connectorHealth;
+    @Autowired
+    StageTimers stageTimers;
+    @Autowired
+    LastValueTable lastValueTable;
+    @Autowired
+    ExecutionModel executionModel;
+
+    private final Map<String, AwsConnectedThing> dirtyThings = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thingworx-scan-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ExecutorService pushExecutor; // VIRTUAL execution mode only
+    private final AtomicBoolean drained = new AtomicBoolean();
+    private final AtomicLong pushes = new AtomicLong();
+    private volatile int lastFlushSize;
+    private volatile long lastFlushDurationMillis;
+    private long flushesSinceReport;
+    private long pushesSinceReport;
+    private long maxFlushDurationSinceReport;
+    private long lastReportAtMillis = System.currentTimeMillis();
+
+    @PostConstruct
+    public void start() {
+        if (executionModel.isVirtual()) {
+            pushExecutor = executionModel.newBoundedExecutor("thingworx-push-", appConfigModule.getExecutionMaxConcurrentPushes());
+        }
+        if (appConfigModule.getScanIntervalInMillis() > 0) {
+            scheduleNextFlush();
+            log.debug("Pushing dirty things to thingworx every [{}] +/- [{}] milliseconds", appConfigModule.getScanIntervalInMillis(), appConfigModule.getScanJitterInMillis());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        drain();
+    }
+
+    /**
+     * Stops the scan cycles and pushes the last values received before shutdown. Runs once, later calls return right away.
+     *
+     * @return number of things whose values could not be pushed
+     */
+    public int drain() {
+        if (!drained.compareAndSet(false, true)) {
+            return 0;
+        }
+        scheduler.shutdownNow();
+        int dirty = dirtyThings.size();
+        int pushed = flush();
+        if (pushExecutor != null) {
+            pushExecutor.shutdown();
+        }
+        return Math.max(0, dirty - pushed);
+    }
+
+    public void markDirty(AwsConnectedThing thing) {
+        if (appConfigModule.getScanIntervalInMillis() > 0) {
+            dirtyThings.put(thing.getName(), thing);
+        } else {
+            push(thing);
+        }
+    }
+
+    private void scheduleNextFlush() {
+        if (drained.get()) {
+            return;
+        }
+        long jitter = appConfigModule.getScanJitterInMillis();
+        long delay = appConfigModule.getScanIntervalInMillis() + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    flush();
+                } finally {
+                    scheduleNextFlush();
+                }
+            }, Math.max(1, delay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // drained while the last scan cycle was running
+            log.debug("Scan cycles stopped");
+        }
+    }
+
+    private int flush() {
+        long start = System.currentTimeMillis();
+        int flushSize = pushExecutor != null ? pushInParallel() : pushOneByOne();
+        lastFlushSize = flushSize;
+        lastFlushDurationMillis = System.currentTimeMillis() - start;
+        log.trace("Pushed [{}] things to thingworx in [{}] milliseconds", flushSize, lastFlushDurationMillis);
+        report(flushSize, lastFlushDurationMillis);
+        return flushSize;
+    }
+
+    private int pushOneByOne() {
+        int flushSize = 0;
+        for (String thingName : dirtyThings.keySet()) {
+            AwsConnectedThing thing = dirtyThings.remove(thingName);
+            if (thing != null && push(thing)) {
+                flushSize++;
+            }
+        }
+        return flushSize;
+    }
+
+    /**
+     * Pushes the dirty things on their own virtual threads, at most maxConcurrentPushes at once, and waits until all are pushed.
+     */
+    private int pushInParallel() {
+        AtomicInteger flushSize = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(dirtyThings.size());
+        for (String thingName : dirtyThings.keySet()) {
+            AwsConnectedThing thing = dirtyThings.remove(thingName);
+            if (thing != null) {
+                futures.add(pushExecutor.submit(() -> {
+                    if (push(thing)) {
+                        flushSize.incrementAndGet();
+                    }
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                // only on drain, the pushes still running finish on their own threads and the drain pushes what is left
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.error("Error pushing a thing to thingworx: {}", e.getCause().toString());
+            }
+        }
+        return flushSize.get();
+    }
+
+    private boolean push(AwsConnectedThing thing) {
+        if (!thing.isBound()) {
+            log.debug("Thing [{}] was unbound before its values were pushed to thingworx", thing.getName());
+            return false;
+        }
+        if (!ThingworxClientSingleton.INSTANCE.isConnected(thing.getName())) {
+            // pushed again by the connection supervisor once the connection is back
+            lastValueTable.markStale(thing.getName());
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            // properties of the thing are set on its dispatch shard
+            synchronized (thing) {
+                thing.processScanRequest();
+            }
+            pushes.incrementAndGet();
+            long duration = System.currentTimeMillis() - start;
+            ThingworxClientSingleton.INSTANCE.pushCompleted(thing.getName(), duration, true);
+            connectorHealth.thingworxCallCompleted(duration);
+            stageTimers.push().record(duration, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception eProcessing) {
+            log.error("Error updating subscribed properties for [{}]: " + eProcessing, thing.getName());
+            ThingworxClientSingleton.INSTANCE.pushCompleted(thing.getName(), System.currentTimeMillis() - start, false);
+            lastValueTable.markStale(thing.getName());
+            return false;
+        }
+    }
+
+    // the last scan cycle may still be running while drain flushes
+    private synchronized void report(int flushSize, long flushDurationMillis) {
+        flushesSinceReport++;
+        pushesSinceReport += flushSize;
+        maxFlushDurationSinceReport = Math.max(maxFlushDurationSinceReport, flushDurationMillis);
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastReportAtMillis;
+        if (elapsed >= REPORT_INTERVAL_IN_MILLIS) {
+            if (pushesSinceReport > 0) {
+                log.info("Scan cycles: [{}] flushes, [{}] pushes per second, average flush size [{}], max flush duration [{}] milliseconds",
+                        flushesSinceReport, pushesSinceReport * 1000 / elapsed, pushesSinceReport / flushesSinceReport, maxFlushDurationSinceReport);
+            }
+            flushesSinceReport = 0;
+            pushesSinceReport = 0;
+            maxFlushDurationSinceReport = 0;
+            lastReportAtMillis = now;
+        }
+    }
+
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    public long getLastFlushDurationMillis() {
+        return lastFlushDurationMillis;
+    }
+
+    public long getPushCount() {
+        return pushes.get();
+    }
+
+    public int getDirtyThingCount() {
+        return dirtyThings.size();
+    }
+}
@@ -0,0 +1,97 @@
+package software.amazon.samples.thingworx;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component keeping the fingerprint of the model last applied to each bound thing
+ * a message whose model has the same fingerprint reuses the parsed model and the thing properties are not reconciled again.
+ * The entry of a thing is removed when the thing is unbound.
+ */
+
+@Slf4j
+@Component
+public class ThingModelCache {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long REPORT_INTERVAL_IN_MILLIS = 60000;
+
+    private final Map<String, AppliedModel> appliedModels = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile long lastReportAtMillis = System.currentTimeMillis();
+
+    /**
+     * 64 bit FNV-1a hash of the characters of the model in the message, no copy of the model is made.
+     */
+    public static long fingerprint(CharSequence message, int start, int end) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= message.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return model applied to the thing if its fingerprint matches, otherwise null
+     */
+    public HashMap<String, Map<String, String>> get(String thingName, long fingerprint) {
+        AppliedModel appliedModel = thingName == null ? null : appliedModels.get(thingName);
+        HashMap<String, Map<String, String>> model = null;
+        if (appliedModel != null && appliedModel.fingerprint == fingerprint) {
+            hits.incrementAndGet();
+            model = appliedModel.model;
+        } else {
+            misses.incrementAndGet();
+        }
+        report();
+        return model;
+    }
+
+    public void put(String thingName, long fingerprint, HashMap<String, Map<String, String>> model) {
+        appliedModels.put(thingName, new AppliedModel(fingerprint, model));
+    }
+
+    public void invalidate(String thingName) {
+        appliedModels.remove(thingName);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private void report() {
+        long now = System.currentTimeMillis();
+        if (now - lastReportAtMillis >= REPORT_INTERVAL_IN_MILLIS) {
+            lastReportAtMillis = now;
+            log.info("Thing model cache: [{}] hits, [{}] misses, hit rate [{}], [{}] things", hits.get(), misses.get(), String.format("%.3f", getHitRate()), appliedModels.size());
+        }
+    }
+
+    private static class AppliedModel {
+        private final long fingerprint;
+        private final HashMap<String, Map<String, String>> model;
+
+        private AppliedModel(long fingerprint, HashMap<String, Map<String, String>> model) {
+            this.fingerprint = fingerprint;
+            this.model = model;
+        }
+    }
+}
@@ -4,9 +4,16 @@ import com.thingworx.communications.client.ConnectedThingClient;
 import com.thingworx.communications.client.things.VirtualThing;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.startup.StartupPhase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Creates a singleton instance of thingworx client connector
+ * Creates a singleton pool of thingworx client connections
+ * each thing is assigned to one connection by consistent hash of its name, and is bound, unbound and pushed over that connection only.
+ * Calls never wait for a reconnect, a lost connection is re-established by the connection supervisor
  *
  * @author Maciej Kiciński
  * @version 1.0
@@ -16,84 +23,196 @@ import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
 @Slf4j
 public enum ThingworxClientSingleton {
     INSTANCE;
-    private ConnectedThingClient connectedThingClient = null;
+    private static final int VIRTUAL_NODES_PER_CONNECTION = 128;
+
+    private volatile List<ThingworxConnection> connections = Collections.emptyList();
+    private ConsistentHashRing ring;
     private AppConfigModule appConfigModule;
 
-    private void generateThingsClient(ThingworxClientConfigurator configurator) {
+    private ConnectedThingClient generateThingsClient(ThingworxClientConfigurator configurator) {
         try {
-            connectedThingClient = new ConnectedThingClient(configurator);
+            return new ConnectedThingClient(configurator);
         } catch (Exception e) {
             log.error("Error creating new thingworx client instance.", e);
+            return null;
         }
     }
 
     public void generateThingworxClientInstance(AppConfigModule appConfigModule) {
         this.appConfigModule = appConfigModule;
-        ThingworxClientConfigurator configurator = new ThingworxClientConfigurator(appConfigModule.getThingworxURL(), appConfigModule.getReconnectInterval(), appConfigModule.getThingworxAppKey(), appConfigModule.getIgnoreSSLError());
-        if (connectedThingClient == null) {
-            generateThingsClient(configurator);
+        if (connections.isEmpty()) {
+            int connectionCount = Math.max(1, appConfigModule.getThingworxConnectionCount());
+            List<ThingworxConnection> generated = new ArrayList<>(connectionCount);
+            for (int attempt = 0; attempt < connectionCount; attempt++) {
+                ThingworxClientConfigurator configurator = new ThingworxClientConfigurator(appConfigModule.getThingworxURL(), appConfigModule.getReconnectInterval(), appConfigModule.getThingworxAppKey(), appConfigModule.getIgnoreSSLError());
+                ConnectedThingClient client = generateThingsClient(configurator);
+                if (client != null) {
+                    // indexes stay contiguous, they are the nodes of the ring
+                    generated.add(new ThingworxConnection(generated.size(), client));
+                }
+            }
+            if (generated.isEmpty()) {
+                throw new IllegalStateException("None of the [" + connectionCount + "] thingworx clients could be created");
+            }
+            if (generated.size() < connectionCount) {
+                log.warn("Only [{}] of [{}] thingworx clients could be created, things are spread over these.", generated.size(), connectionCount);
+            }
+            ring = new ConsistentHashRing(generated.size(), VIRTUAL_NODES_PER_CONNECTION);
+            connections = Collections.unmodifiableList(generated);
+            log.debug("Created [{}] thingworx connections", generated.size());
+        }
+
+        // nothing can be done without thingworx, startup waits for all connections. Later reconnects are done by the connection supervisor
+        long delay = appConfigModule.getReconnectBaseDelayInMillis();
+        while (!connect()) {
+            log.error("Couldn't establish all connections to thingworx, going to retry in [{}] milliseconds.", delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            delay = Math.min(appConfigModule.getReconnectMaxDelayInMillis(), delay * 2);
         }
+        StartupPhase.THINGWORX_CONNECTED.reached();
+    }
+
+    public List<ThingworxConnection> getConnections() {
+        return connections;
+    }
 
-        if (!connectedThingClient.isConnected()) {
-            startConnectionToThingworx();
+    /**
+     * @return connection owning the thing, or null before the pool is created
+     */
+    public ThingworxConnection getConnection(String thingName) {
+        List<ThingworxConnection> pool = connections;
+        if (pool.isEmpty()) {
+            return null;
         }
+        return pool.size() == 1 || thingName == null ? pool.get(0) : pool.get(ring.nodeOf(thingName));
+    }
 
+    /**
+     * @return client of the connection owning the thing, things must be created with this client
+     */
+    public ConnectedThingClient getConnectedThingClient(String thingName) {
+        ThingworxConnection connection = getConnection(thingName);
+        return connection == null ? null : connection.getClient();
     }
 
-    public ConnectedThingClient getConnectedThingClient() {
-        checkClientInstanceHasConnection();
-        return connectedThingClient;
+    /**
+     * @return the thing if it is bound, otherwise null
+     */
+    public VirtualThing getThing(String thingName) {
+        ThingworxConnection connection = getConnection(thingName);
+        return connection == null ? null : connection.getThing(thingName);
     }
 
-    private void checkClientInstanceHasConnection() {
-        if (connectedThingClient != null) {
-            if (!connectedThingClient.isConnected()) {
-                startConnectionToThingworx();
+    /**
+     * Connection state of all connections, safe to call from monitoring.
+     */
+    public boolean isConnected() {
+        List<ThingworxConnection> pool = connections;
+        if (pool.isEmpty()) {
+            return false;
+        }
+        for (ThingworxConnection connection : pool) {
+            if (!connection.isConnected()) {
+                return false;
             }
         }
+        return true;
     }
 
-    private void startConnectionToThingworx() {
-        long start = System.currentTimeMillis();
-        try {
-            connectedThingClient.start();
-        } catch (Exception eStart) {
-            log.error("Error staring thingworx client, shutting down instance.  " + eStart);
+    /**
+     * Connection state of the connection owning the thing, safe to call from monitoring.
+     */
+    public boolean isConnected(String thingName) {
+        ThingworxConnection connection = getConnection(thingName);
+        return connection != null && connection.isConnected();
+    }
+
+    public int getBoundThingCount() {
+        int boundThings = 0;
+        for (ThingworxConnection connection : connections) {
+            boundThings += connection.getBoundThingCount();
         }
-        if (!connectedThingClient.waitForConnection(appConfigModule.getWaitForConnectionTimeoutInMillis())) {
-            log.error("Couldn't establish connection to thingworx with timeout [{}]] milliseconds.going to retry connection.", appConfigModule.getWaitForConnectionTimeoutInMillis());
-            try {
-                Thread.sleep(5000); // wait for 5 seconds between connection retry
-            } catch (InterruptedException e) {
-                log.error("error putting thread into sleep {}", e.getMessage());
-            }
-            startConnectionToThingworx();
-        } else {
-            long finish = System.currentTimeMillis();
-            long timeElapsed = finish - start;
-            log.info("Connection to thingworx established in [{}] milliseconds.", timeElapsed);
+        return boundThings;
+    }
+
+    /**
+     * Makes one attempt to connect each connection which is not connected, waiting at most the configured connection timeout for each.
+     *
+     * @return true when all connections are connected
+     */
+    public boolean connect() {
+        List<ThingworxConnection> pool = connections;
+        boolean connected = !pool.isEmpty();
+        for (ThingworxConnection connection : pool) {
+            connected &= connect(connection);
         }
+        return connected;
+    }
+
+    /**
+     * Makes one attempt to connect the connection, waiting at most the configured connection timeout.
+     *
+     * @return true when connected
+     */
+    public boolean connect(ThingworxConnection connection) {
+        return connection.connect(appConfigModule.getWaitForConnectionTimeoutInMillis());
     }
 
     public void bindThing(VirtualThing thing) {
-        checkClientInstanceHasConnection();
         log.debug("going to bind thing {}", thing.getName());
+        ThingworxConnection connection = getConnection(thing.getName());
         try {
-            this.connectedThingClient.bindThing(thing);
-            log.info("Number of bound things to the client: [{}]", connectedThingClient.getThings().size());
+            connection.bindThing(thing);
+            log.info("Number of bound things to connection [{}]: [{}]", connection.getIndex(), connection.getBoundThingCount());
         } catch (Exception e) {
             log.error("Error binding thing {} [{}] ", thing.getName(), e);
         }
     }
 
     public void unBindThing(VirtualThing thing) {
-        checkClientInstanceHasConnection();
         log.debug("going to unbind thing {}", thing.getName());
+        ThingworxConnection connection = getConnection(thing.getName());
         try {
-            this.connectedThingClient.unbindThing(thing);
-            log.info("Number of bound things to the client: [{}]", connectedThingClient.getThings().size());
+            connection.unbindThing(thing);
+            log.info("Number of bound things to connection [{}]: [{}]", connection.getIndex(), connection.getBoundThingCount());
         } catch (Exception e) {
             log.error("Error unbinding thing {} [{}] ", thing.getName(), e);
         }
     }
+
+    /**
+     * Unbinds all things of all connections, so their new owner can bind them right away.
+     *
+     * @return number of things which could not be unbound
+     */
+    public int unbindAll() {
+        int failed = 0;
+        for (ThingworxConnection connection : connections) {
+            for (VirtualThing thing : new ArrayList<>(connection.getClient().getThings().values())) {
+                try {
+                    connection.unbindThing(thing);
+                } catch (Exception e) {
+                    log.warn("Error unbinding thing [{}] on shutdown: {}", thing.getName(), e.getMessage());
+                    failed++;
+                }
+            }
+            log.info("Unbound all things of connection [{}], [{}] left", connection.getIndex(), connection.getBoundThingCount());
+        }
+        return failed;
+    }
+
+    /**
+     * Records a push of the thing's values on the connection owning the thing.
+     */
+    public void pushCompleted(String thingName, long durationMillis, boolean succeeded) {
+        ThingworxConnection connection = getConnection(thingName);
+        if (connection != null) {
+            connection.pushCompleted(durationMillis, succeeded);
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package software.amazon.samples.thingworx;
+
+import com.thingworx.communications.client.ConnectedThingClient;
+import com.thingworx.communications.client.things.VirtualThing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One websocket connection to thingworx with the things bound over it
+ * each connection has its own SDK dispatch pipeline, so things on different connections do not wait for each other.
+ */
+
+@Slf4j
+public class ThingworxConnection {
+
+    private final int index;
+    private final ConnectedThingClient client;
+
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong pushFailures = new AtomicLong();
+    private final AtomicLong pushMillisTotal = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+
+    ThingworxConnection(int index, ConnectedThingClient client) {
+        this.index = index;
+        this.client = client;
+    }
+
+    /**
+     * Makes one attempt to connect, waiting at most the given timeout.
+     *
+     * @return true when connected
+     */
+    boolean connect(long timeoutInMillis) {
+        if (client.isConnected()) {
+            return true;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            client.start();
+        } catch (Exception eStart) {
+            log.error("Error staring thingworx client of connection [{}].  " + eStart, index);
+        }
+        if (!client.waitForConnection(timeoutInMillis)) {
+            log.error("Couldn't establish connection [{}] to thingworx with timeout [{}] milliseconds.", index, timeoutInMillis);
+            return false;
+        }
+        connects.incrementAndGet();
+        log.info("Connection [{}] to thingworx established in [{}] milliseconds.", index, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    void bindThing(VirtualThing thing) throws Exception {
+        client.bindThing(thing);
+    }
+
+    void unbindThing(VirtualThing thing) throws Exception {
+        client.unbindThing(thing);
+    }
+
+    VirtualThing getThing(String thingName) {
+        return client.getThing(thingName);
+    }
+
+    ConnectedThingClient getClient() {
+        return client;
+    }
+
+    void pushCompleted(long durationMillis, boolean succeeded) {
+        if (succeeded) {
+            pushes.incrementAndGet();
+            pushMillisTotal.addAndGet(durationMillis);
+        } else {
+            pushFailures.incrementAndGet();
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    public int getBoundThingCount() {
+        return client.getThings().size();
+    }
+
+    public long getPushCount() {
+        return pushes.get();
+    }
+
+    public long getPushFailureCount() {
+        return pushFailures.get();
+    }
+
+    public long getPushMillisTotal() {
+        return pushMillisTotal.get();
+    }
+
+    /**
+     * @return number of times the connection was established, including the first time
+     */
+    public long getConnectCount() {
+        return connects.get();
+    }
+}
@@ -0,0 +1,191 @@
+package software.amazon.samples.thingworx;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring boot component watching the connections to thingworx from its own thread
+ * a lost connection is re-established with exponential backoff and jitter, independently of the other connections, callers never wait for it.
+ * Once connected, the last values of things which could not be pushed are pushed again, a limited number of things per check,
+ * and the time from reconnect until all of them reached thingworx is reported.
+ */
+
+@Slf4j
+@Component
+public class ThingworxConnectionSupervisor {
+
+    @Autowired
+    AppConfigModule appConfigModule;
+    @Autowired
+    LastValueTable lastValueTable;
+    @Autowired
+    ScanScheduler scanScheduler;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thingworx-connection-supervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // accessed on the supervisor thread only
+    private final Deque<String> resyncQueue = new ArrayDeque<>();
+    private ReconnectState[] reconnectStates;
+    private long reconnectedAtMillis;
+
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong resyncedThings = new AtomicLong();
+    private volatile long lastResyncDurationMillis;
+
+    /**
+     * Starts watching the connection, called once the first connection was established.
+     */
+    public void start() {
+        List<ThingworxConnection> connections = getConnections();
+        reconnectStates = new ReconnectState[connections.size()];
+        for (int index = 0; index < reconnectStates.length; index++) {
+            reconnectStates[index] = new ReconnectState();
+        }
+        long checkInterval = appConfigModule.getSupervisorCheckIntervalInMillis();
+        scheduler.scheduleWithFixedDelay(this::check, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void check() {
+        try {
+            long now = System.currentTimeMillis();
+            boolean allConnected = true;
+            for (ThingworxConnection connection : getConnections()) {
+                ReconnectState state = reconnectStates[connection.getIndex()];
+                if (!connection.isConnected()) {
+                    reconnect(connection, state, now);
+                    allConnected = false;
+                } else if (state.disconnectedAtMillis != 0) {
+                    log.info("Connection [{}] to thingworx re-established after [{}] milliseconds and [{}] attempts.", connection.getIndex(), now - state.disconnectedAtMillis, state.failedAttempts + 1);
+                    reconnects.incrementAndGet();
+                    reconnectedAtMillis = now;
+                    state.disconnectedAtMillis = 0;
+                    state.failedAttempts = 0;
+                    state.nextAttemptAtMillis = 0;
+                }
+            }
+            // things of the connections which are up are pushed again right away
+            resyncQueue.addAll(lastValueTable.drainStaleThings());
+            resync();
+            if (allConnected && reconnectedAtMillis != 0 && resyncQueue.isEmpty() && scanScheduler.getDirtyThingCount() == 0) {
+                lastResyncDurationMillis = System.currentTimeMillis() - reconnectedAtMillis;
+                reconnectedAtMillis = 0;
+                log.info("All things are fresh again [{}] milliseconds after reconnecting to thingworx.", lastResyncDurationMillis);
+            }
+        } catch (Exception e) {
+            // an exception would cancel the scheduled check
+            log.error("Error supervising the connection to thingworx: {}", e.getMessage());
+        }
+    }
+
+    private void reconnect(ThingworxConnection connection, ReconnectState state, long now) {
+        if (state.disconnectedAtMillis == 0) {
+            state.disconnectedAtMillis = now;
+            reconnectedAtMillis = 0;
+            log.warn("Connection [{}] to thingworx lost, values are kept until it is re-established.", connection.getIndex());
+        }
+        if (now < state.nextAttemptAtMillis) {
+            return;
+        }
+        if (!connect(connection)) {
+            long cap = Math.min(appConfigModule.getReconnectMaxDelayInMillis(), (long) appConfigModule.getReconnectBaseDelayInMillis() << Math.min(state.failedAttempts, 20));
+            long delay = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+            state.failedAttempts++;
+            state.nextAttemptAtMillis = System.currentTimeMillis() + delay;
+            log.warn("Reconnecting connection [{}] to thingworx failed [{}] times, next attempt in [{}] milliseconds.", connection.getIndex(), state.failedAttempts, delay);
+        }
+    }
+
+    private void resync() {
+        int batchSize = appConfigModule.getResyncBatchSize();
+        int pending = resyncQueue.size();
+        int resynced = 0;
+        while (resynced < batchSize && pending-- > 0) {
+            String thingName = resyncQueue.pollFirst();
+            if (!isConnected(thingName)) {
+                // waits for its own connection
+                resyncQueue.addLast(thingName);
+                continue;
+            }
+            AwsConnectedThing thing = getThing(thingName);
+            Map<String, Object> values = lastValueTable.get(thingName);
+            if (thing == null || !thing.isBound() || values == null) {
+                continue;
+            }
+            resynced++;
+            int written;
+            synchronized (thing) { // the scan scheduler reads the properties of this thing from its own thread
+                written = thing.setPropertiesFromDevice(values, true);
+            }
+            if (written > 0) {
+                scanScheduler.markDirty(thing);
+                resyncedThings.incrementAndGet();
+            }
+        }
+    }
+
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    public long getResyncedThingCount() {
+        return resyncedThings.get();
+    }
+
+    /**
+     * @return milliseconds from the last reconnect until the values of all stale things were pushed
+     */
+    public long getLastResyncDurationMillis() {
+        return lastResyncDurationMillis;
+    }
+
+    List<ThingworxConnection> getConnections() {
+        return ThingworxClientSingleton.INSTANCE.getConnections();
+    }
+
+    /**
+     * Makes one attempt to connect the connection.
+     *
+     * @return true when connected
+     */
+    boolean connect(ThingworxConnection connection) {
+        return ThingworxClientSingleton.INSTANCE.connect(connection);
+    }
+
+    /**
+     * @return true when the thingworx connection owning the thing is connected
+     */
+    boolean isConnected(String thingName) {
+        return ThingworxClientSingleton.INSTANCE.isConnected(thingName);
+    }
+
+    AwsConnectedThing getThing(String thingName) {
+        return (AwsConnectedThing) ThingworxClientSingleton.INSTANCE.getThing(thingName);
+    }
+
+    private static class ReconnectState {
+        private long disconnectedAtMillis;
+        private long nextAttemptAtMillis;
+        private int failedAttempts;
+    }
+}
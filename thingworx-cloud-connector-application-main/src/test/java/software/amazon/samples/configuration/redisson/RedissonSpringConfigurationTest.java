@@ -0,0 +1,89 @@
+package software.amazon.samples.configuration.redisson;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RListAsync;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.events.ThingMessageDispatcher;
+import software.amazon.samples.services.WarmUpService;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.when;
+
+class RedissonSpringConfigurationTest {
+
+    private static final String INSTANCE_NAME = "instance-1";
+    private static final String PARKED_MESSAGES_KEY = INSTANCE_NAME + ":parked";
+
+    private final AppConfigModule appConfigModule = mock(AppConfigModule.class);
+    private final RedissonClient redissonClient = mock(RedissonClient.class);
+    private final WarmUpService warmUpService = mock(WarmUpService.class);
+    private final ThingMessageDispatcher dispatcher = mock(ThingMessageDispatcher.class);
+    private final RTopic topic = mock(RTopic.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void thingsAreWarmedUpBeforeParkedMessagesAndParkedMessagesAreHandledBeforeLiveOnes() {
+        when(appConfigModule.getInstanceName()).thenReturn(INSTANCE_NAME);
+        when(appConfigModule.getParkedMessagesKeySuffix()).thenReturn(":parked");
+        when(appConfigModule.getParkedMessagesReplayBatchSize()).thenReturn(100);
+        RBatch beforeSubscribing = parkedMessages("parked-1");
+        RBatch afterSubscribing = parkedMessages("parked-2");
+        when(redissonClient.createBatch(any())).thenReturn(beforeSubscribing, afterSubscribing);
+        when(redissonClient.getTopic(INSTANCE_NAME)).thenReturn(topic);
+        // a live message arrives right after subscribing, while the router still parks messages
+        doAnswer(invocation -> {
+            invocation.<MessageListener<String>>getArgument(1).onMessage(INSTANCE_NAME, "live-1");
+            return 1;
+        }).when(topic).addListener(eq(String.class), any(MessageListener.class));
+
+        new RedissonSpringConfiguration().subscribeToInstanceTopic(readyEvent());
+
+        InOrder inOrder = inOrder(warmUpService, topic, dispatcher);
+        inOrder.verify(warmUpService).warmUp(INSTANCE_NAME);
+        inOrder.verify(dispatcher).dispatch("parked-1");
+        inOrder.verify(topic).addListener(eq(String.class), any(MessageListener.class));
+        inOrder.verify(dispatcher).dispatch("parked-2");
+        inOrder.verify(dispatcher).dispatch("live-1");
+        inOrder.verify(warmUpService).ready();
+        inOrder.verify(dispatcher, never()).dispatch(anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RBatch parkedMessages(String... messages) {
+        RFuture<List<String>> range = mock(RFuture.class);
+        when(range.getNow()).thenReturn(List.of(messages));
+        RListAsync<String> parkedMessages = mock(RListAsync.class);
+        when(parkedMessages.rangeAsync(0, 99)).thenReturn(range);
+        RBatch batch = mock(RBatch.class);
+        when(batch.<String>getList(PARKED_MESSAGES_KEY, StringCodec.INSTANCE)).thenReturn(parkedMessages);
+        return batch;
+    }
+
+    private ApplicationReadyEvent readyEvent() {
+        ConfigurableApplicationContext applicationContext = mock(ConfigurableApplicationContext.class);
+        when(applicationContext.getBean(AppConfigModule.class)).thenReturn(appConfigModule);
+        when(applicationContext.getBean(RedissonClient.class)).thenReturn(redissonClient);
+        when(applicationContext.getBean(WarmUpService.class)).thenReturn(warmUpService);
+        when(applicationContext.getBean(ThingMessageDispatcher.class)).thenReturn(dispatcher);
+        ApplicationReadyEvent event = mock(ApplicationReadyEvent.class);
+        when(event.getApplicationContext()).thenReturn(applicationContext);
+        return event;
+    }
+}
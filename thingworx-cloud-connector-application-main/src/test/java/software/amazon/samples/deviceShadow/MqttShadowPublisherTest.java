@@ -0,0 +1,169 @@
+package software.amazon.samples.deviceShadow;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.crt.io.ClientBootstrap;
+import software.amazon.awssdk.crt.io.EventLoopGroup;
+import software.amazon.awssdk.crt.io.HostResolver;
+import software.amazon.awssdk.crt.io.SocketOptions;
+import software.amazon.awssdk.crt.mqtt.MqttClient;
+import software.amazon.awssdk.crt.mqtt.MqttClientConnection;
+import software.amazon.awssdk.crt.mqtt.MqttConnectionConfig;
+import software.amazon.awssdk.crt.mqtt.MqttMessage;
+import software.amazon.awssdk.crt.mqtt.QualityOfService;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Publishes over a plain MQTT connection to an embedded broker instead of the signed websocket connection to AWS IoT Core.
+ */
+class MqttShadowPublisherTest {
+
+    private static final String COMMAND_TOPIC = "devices/{thingName}/commands";
+    private static final long TIMEOUT_IN_SECONDS = 10;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final BlockingQueue<MqttMessage> received = new LinkedBlockingQueue<>();
+    private Server broker;
+    private int port;
+    private ClientBootstrap bootstrap;
+    private MqttShadowPublisher publisher;
+
+    @BeforeEach
+    void startBroker() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("allow_anonymous", "true");
+        // no store file, sessions are kept in memory
+        properties.setProperty("persistent_store", "");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+
+        EventLoopGroup eventLoopGroup = new EventLoopGroup(1);
+        HostResolver hostResolver = new HostResolver(eventLoopGroup);
+        bootstrap = new ClientBootstrap(eventLoopGroup, hostResolver);
+        resources.add(eventLoopGroup);
+        resources.add(hostResolver);
+        resources.add(bootstrap);
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        if (publisher != null) {
+            publisher.stop();
+        }
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            resources.get(i).close();
+        }
+        broker.stopServer();
+    }
+
+    @Test
+    void publishesTheShadowDocumentAndTheReportedPropertiesAsCommand() throws Exception {
+        subscribe("$aws/things/thing-1/shadow/update", "devices/thing-1/commands");
+        publisher = publisher(COMMAND_TOPIC, 10);
+
+        publisher.updateThingShadow("thing-1", new JSONObject("{\"state\":{\"reported\":{\"temperature\":21}}}")).get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+
+        Map<String, JSONObject> messages = receive(2).stream()
+                .collect(Collectors.toMap(MqttMessage::getTopic, message -> new JSONObject(new String(message.getPayload(), StandardCharsets.UTF_8))));
+        assertEquals(21, messages.get("$aws/things/thing-1/shadow/update").getJSONObject("state").getJSONObject("reported").getInt("temperature"));
+        assertEquals(21, messages.get("devices/thing-1/commands").getInt("temperature"));
+        assertEquals(2, publisher.getAcknowledgedCount());
+        assertEquals(0, publisher.drain(System.currentTimeMillis()));
+    }
+
+    @Test
+    void pipelinesPublishesUpToTheInFlightLimit() throws Exception {
+        subscribe("$aws/things/+/shadow/update");
+        publisher = publisher("", 100);
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            updates.add(publisher.updateThingShadow("thing-" + i, new JSONObject().put("state", new JSONObject().put("reported", new JSONObject().put("index", i)))));
+        }
+        CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])).get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(100, receive(100).stream().map(MqttMessage::getTopic).distinct().count());
+        assertEquals(100, publisher.getAcknowledgedCount());
+        assertEquals(0, publisher.getRejectedCount());
+        assertEquals(0, publisher.getFailedCount());
+    }
+
+    private MqttShadowPublisher publisher(String commandTopic, int maxInFlight) throws InterruptedException {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getShadowMqttMaxInFlight()).thenReturn(maxInFlight);
+        when(appConfigModule.getShadowMqttCommandTopic()).thenReturn(commandTopic);
+
+        MqttShadowPublisher mqttShadowPublisher = new MqttShadowPublisher();
+        mqttShadowPublisher.appConfigModule = appConfigModule;
+        mqttShadowPublisher.start(connection("connector-shadow"), "127.0.0.1");
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_IN_SECONDS);
+        while (!mqttShadowPublisher.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(mqttShadowPublisher.isConnected());
+        return mqttShadowPublisher;
+    }
+
+    private void subscribe(String... topics) throws Exception {
+        MqttClientConnection subscriber = connection("device");
+        resources.add(subscriber);
+        subscriber.connect().get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        for (String topic : topics) {
+            subscriber.subscribe(topic, QualityOfService.AT_LEAST_ONCE, received::add).get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private MqttClientConnection connection(String clientId) {
+        MqttClient client = new MqttClient(bootstrap);
+        resources.add(client);
+        SocketOptions socketOptions = new SocketOptions();
+        MqttConnectionConfig config = new MqttConnectionConfig();
+        resources.add(socketOptions);
+        resources.add(config);
+        config.setMqttClient(client);
+        config.setClientId(clientId);
+        config.setEndpoint("127.0.0.1");
+        config.setPort(port);
+        config.setCleanSession(true);
+        config.setSocketOptions(socketOptions);
+        return new MqttClientConnection(config);
+    }
+
+    private List<MqttMessage> receive(int count) throws InterruptedException {
+        List<MqttMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MqttMessage message = received.poll(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(message, "received " + i + " of " + count + " messages");
+            messages.add(message);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,201 @@
+package software.amazon.samples.deviceShadow;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iotdataplane.model.InvalidRequestException;
+import software.amazon.awssdk.services.iotdataplane.model.ThrottlingException;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.services.AwsIotService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShadowUpdateBatcherTest {
+
+    private final FakeAwsIotService awsIotService = new FakeAwsIotService();
+    private final ShadowUpdateBatcher batcher = new ShadowUpdateBatcher();
+
+    @BeforeEach
+    void setUp() {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getShadowBatchWindowInMillis()).thenReturn(1);
+        when(appConfigModule.getShadowMaxThrottleBackoffInMillis()).thenReturn(1);
+        batcher.appConfigModule = appConfigModule;
+        batcher.awsIotService = awsIotService;
+    }
+
+    @Test
+    void changesOfAWindowAreMergedAndAcknowledgedValuesSkipped() {
+        batcher.propertyChanged("thing-1", "temperature", 20);
+        batcher.propertyChanged("thing-1", "temperature", 21);
+        batcher.propertyChanged("thing-1", "humidity", 40);
+        batcher.flush();
+
+        assertEquals(1, awsIotService.updates.size());
+        assertEquals("{\"humidity\":40,\"temperature\":21}", sorted(awsIotService.reported(0)));
+        awsIotService.complete(0);
+
+        batcher.propertyChanged("thing-1", "temperature", 21);
+        batcher.propertyChanged("thing-1", "humidity", 41);
+        batcher.flush();
+
+        assertEquals(2, awsIotService.updates.size());
+        assertEquals("{\"humidity\":41}", sorted(awsIotService.reported(1)));
+        assertEquals(2.5, batcher.getMergeRatio());
+    }
+
+    @Test
+    void changeBackToTheReportedValueIsSentAfterTheUpdateInFlight() {
+        batcher.propertyChanged("thing-1", "temperature", 1);
+        batcher.flush();
+        awsIotService.complete(0);
+        batcher.propertyChanged("thing-1", "temperature", 2);
+        batcher.flush();
+
+        // 1 -> 2 -> 1 while 2 is in flight, the shadow must end at 1
+        batcher.propertyChanged("thing-1", "temperature", 1);
+        batcher.flush();
+        assertEquals(2, awsIotService.updates.size());
+
+        awsIotService.complete(1);
+        batcher.flush();
+        assertEquals(3, awsIotService.updates.size());
+        assertEquals(1, awsIotService.reported(2).get("temperature"));
+    }
+
+    @Test
+    void updatesOfAThingAreNeverInFlightTogether() {
+        batcher.propertyChanged("thing-1", "temperature", 1);
+        batcher.propertyChanged("thing-2", "temperature", 1);
+        batcher.flush();
+        batcher.propertyChanged("thing-1", "temperature", 2);
+        batcher.flush();
+
+        assertEquals(2, awsIotService.updates.size());
+        assertEquals(Set.of("thing-1", "thing-2"), Set.of(awsIotService.thingName(0), awsIotService.thingName(1)));
+
+        awsIotService.complete(awsIotService.thingName(0).equals("thing-1") ? 0 : 1);
+        batcher.flush();
+        assertEquals(3, awsIotService.updates.size());
+        assertEquals(2, awsIotService.reported(2).get("temperature"));
+    }
+
+    @Test
+    void failedUpdateIsCountedAsLostAndItsValuesAreNotTakenAsReported() {
+        batcher.propertyChanged("thing-1", "temperature", 1);
+        batcher.flush();
+        awsIotService.complete(0);
+        batcher.propertyChanged("thing-1", "temperature", 2);
+        batcher.flush();
+
+        awsIotService.fail(1, InvalidRequestException.builder().statusCode(400).message("Invalid JSON").build());
+        assertEquals(1, batcher.getLostChangeCount());
+
+        batcher.propertyChanged("thing-1", "temperature", 2);
+        batcher.flush();
+        assertEquals(3, awsIotService.updates.size());
+        assertEquals(2, awsIotService.reported(2).get("temperature"));
+    }
+
+    @Test
+    void throttledChangesAreMergedBackBehindNewerChanges() throws InterruptedException {
+        batcher.propertyChanged("thing-1", "temperature", 1);
+        batcher.propertyChanged("thing-1", "humidity", 40);
+        batcher.flush();
+        batcher.propertyChanged("thing-1", "temperature", 2);
+
+        awsIotService.fail(0, ThrottlingException.builder().statusCode(429).message("Rate exceeded").build());
+        assertEquals(1, batcher.getThrottledCount());
+        // the backoff is one batch window
+        Thread.sleep(5);
+        batcher.flush();
+
+        assertEquals(2, awsIotService.updates.size());
+        assertEquals("{\"humidity\":40,\"temperature\":2}", sorted(awsIotService.reported(1)));
+        assertEquals(0, batcher.getLostChangeCount());
+    }
+
+    @Test
+    void unboundThingIsForgottenOnceItsChangesWereSent() {
+        batcher.propertyChanged("thing-1", "temperature", 1);
+        batcher.flush();
+        awsIotService.complete(0);
+        batcher.propertyChanged("thing-1", "temperature", 2);
+
+        batcher.thingUnbound("thing-1");
+        assertEquals(1, batcher.getTrackedThingCount());
+        batcher.flush();
+        awsIotService.complete(1);
+        assertEquals(0, batcher.getTrackedThingCount());
+
+        // nothing is known about the shadow of a thing bound again
+        batcher.propertyChanged("thing-1", "temperature", 2);
+        batcher.flush();
+        assertEquals(3, awsIotService.updates.size());
+    }
+
+    @Test
+    void drainSendsThePendingChanges() throws InterruptedException {
+        batcher.propertyChanged("thing-1", "temperature", 1);
+
+        assertEquals(0, batcher.drain(System.currentTimeMillis() + 1000));
+        assertEquals(1, awsIotService.updates.size());
+        assertFalse(awsIotService.updates.get(0).future.isDone());
+    }
+
+    private static String sorted(JSONObject reported) {
+        StringBuilder json = new StringBuilder("{");
+        reported.keySet().stream().sorted().forEach(key -> json.append(json.length() > 1 ? "," : "").append('"').append(key).append("\":").append(reported.get(key)));
+        return json.append('}').toString();
+    }
+
+    /**
+     * Shadow service whose updates are completed by the test.
+     */
+    private static class FakeAwsIotService implements AwsIotService {
+
+        private final List<Update> updates = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Void> updateThingShadow(String thingName, JSONObject payload) {
+            Update update = new Update(thingName, payload);
+            updates.add(update);
+            return update.future;
+        }
+
+        private String thingName(int index) {
+            return updates.get(index).thingName;
+        }
+
+        private JSONObject reported(int index) {
+            return updates.get(index).payload.getJSONObject("state").getJSONObject("reported");
+        }
+
+        private void complete(int index) {
+            updates.get(index).future.complete(null);
+        }
+
+        private void fail(int index, Throwable error) {
+            updates.get(index).future.completeExceptionally(error);
+        }
+    }
+
+    private static class Update {
+        private final String thingName;
+        private final JSONObject payload;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Update(String thingName, JSONObject payload) {
+            this.thingName = thingName;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package software.amazon.samples.deviceShadow;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.iotdataplane.IotDataPlaneAsyncClient;
+import software.amazon.awssdk.services.iotdataplane.model.InvalidRequestException;
+import software.amazon.awssdk.services.iotdataplane.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.iotdataplane.model.ThrottlingException;
+import software.amazon.awssdk.services.iotdataplane.model.UpdateThingShadowRequest;
+import software.amazon.awssdk.services.iotdataplane.model.UpdateThingShadowResponse;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShadowUpdateDispatcherTest {
+
+    private final FakeIotDataPlaneAsyncClient client = new FakeIotDataPlaneAsyncClient();
+    private ShadowUpdateDispatcher dispatcher;
+
+    @AfterEach
+    void stop() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void keepsAtMostLimitRequestsInFlight() {
+        dispatcher = dispatcher(2, 4, 10, "DROP_OLDEST");
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.submit("thing-" + i, payload());
+        }
+
+        assertEquals(2, client.requestCount());
+        assertEquals(2, dispatcher.getInFlight());
+        assertEquals(3, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void limitGrowsWithSuccessfulRequestsUpToTheMaximum() throws Exception {
+        dispatcher = dispatcher(2, 4, 100, "DROP_OLDEST");
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            updates.add(dispatcher.submit("thing-" + i, payload()));
+        }
+
+        for (int i = 0; i < 40; i++) {
+            client.next().complete(UpdateThingShadowResponse.builder().build());
+            assertTrue(dispatcher.getInFlight() <= 4, "in flight " + dispatcher.getInFlight());
+        }
+
+        assertEquals(4.0, dispatcher.getLimit());
+        assertTrue(updates.stream().allMatch(update -> update.isDone() && !update.isCompletedExceptionally()));
+    }
+
+    @Test
+    void throttlingHalvesTheLimitOncePerRoundAndRetries() throws Exception {
+        dispatcher = dispatcher(4, 4, 10, "DROP_OLDEST");
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            updates.add(dispatcher.submit("thing-" + i, payload()));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            client.next().completeExceptionally(throttling());
+        }
+
+        // the requests sent before the first decrease saw the old limit and do not decrease it again
+        assertEquals(2.0, dispatcher.getLimit());
+        assertEquals(4, dispatcher.getThrottledCount());
+        assertEquals(4, dispatcher.getRetriedCount());
+        for (int i = 0; i < 4; i++) {
+            client.next().complete(UpdateThingShadowResponse.builder().build());
+        }
+        for (CompletableFuture<Void> update : updates) {
+            update.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(8, client.requestCount());
+    }
+
+    @Test
+    void dropOldestRejectsTheOldestQueuedUpdate() {
+        dispatcher = dispatcher(1, 1, 2, "DROP_OLDEST");
+        CompletableFuture<Void> inFlight = dispatcher.submit("thing-0", payload());
+        CompletableFuture<Void> oldest = dispatcher.submit("thing-1", payload());
+        dispatcher.submit("thing-2", payload());
+
+        CompletableFuture<Void> newest = dispatcher.submit("thing-3", payload());
+
+        assertRejected(oldest);
+        assertFalse(newest.isDone());
+        assertFalse(inFlight.isDone());
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    void dropNewestRejectsTheNewUpdate() {
+        dispatcher = dispatcher(1, 1, 2, "DROP_NEWEST");
+        dispatcher.submit("thing-0", payload());
+        CompletableFuture<Void> oldest = dispatcher.submit("thing-1", payload());
+        dispatcher.submit("thing-2", payload());
+
+        CompletableFuture<Void> newest = dispatcher.submit("thing-3", payload());
+
+        assertRejected(newest);
+        assertFalse(oldest.isDone());
+        assertEquals(2, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void missingThingCompletesAndOtherErrorsFail() throws Exception {
+        dispatcher = dispatcher(2, 2, 10, "DROP_OLDEST");
+        CompletableFuture<Void> missing = dispatcher.submit("missing", payload());
+        CompletableFuture<Void> invalid = dispatcher.submit("invalid", payload());
+
+        client.next().completeExceptionally(ResourceNotFoundException.builder().statusCode(404).message("No shadow exists").build());
+        client.next().completeExceptionally(InvalidRequestException.builder().statusCode(400).message("Invalid JSON").build());
+
+        missing.get(5, TimeUnit.SECONDS);
+        ExecutionException error = assertThrows(ExecutionException.class, () -> invalid.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof InvalidRequestException);
+        assertEquals(0, dispatcher.getRetriedCount());
+        assertEquals(1, dispatcher.getFailedCount());
+    }
+
+    @Test
+    void updateFailsOnceTheRetriesAreUsedUp() throws Exception {
+        dispatcher = dispatcher(1, 1, 10, "DROP_OLDEST");
+        CompletableFuture<Void> update = dispatcher.submit("thing-0", payload());
+
+        client.next().completeExceptionally(throttling());
+        client.next().completeExceptionally(throttling());
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> update.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof ThrottlingException);
+        assertEquals(1, dispatcher.getRetriedCount());
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(0, dispatcher.drain(System.currentTimeMillis()));
+    }
+
+    @Test
+    void updateFailsWhenItsRetryCannotBeScheduledAfterStop() throws Exception {
+        dispatcher = dispatcher(1, 1, 10, "DROP_OLDEST");
+        CompletableFuture<Void> update = dispatcher.submit("thing-0", payload());
+        dispatcher.stop();
+
+        client.next().completeExceptionally(throttling());
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> update.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof ThrottlingException);
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(0, dispatcher.drain(System.currentTimeMillis()));
+    }
+
+    private ShadowUpdateDispatcher dispatcher(int initialConcurrency, int maxConcurrency, int queueCapacity, String overflowPolicy) {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getShadowInitialConcurrency()).thenReturn(initialConcurrency);
+        when(appConfigModule.getShadowMaxConcurrency()).thenReturn(maxConcurrency);
+        when(appConfigModule.getShadowQueueCapacity()).thenReturn(queueCapacity);
+        when(appConfigModule.getShadowOverflowPolicy()).thenReturn(overflowPolicy);
+        when(appConfigModule.getShadowMaxRetries()).thenReturn(1);
+        when(appConfigModule.getShadowRetryBaseDelayInMillis()).thenReturn(1);
+        when(appConfigModule.getShadowRetryMaxDelayInMillis()).thenReturn(1);
+
+        ShadowUpdateDispatcher shadowUpdateDispatcher = new ShadowUpdateDispatcher();
+        shadowUpdateDispatcher.appConfigModule = appConfigModule;
+        shadowUpdateDispatcher.iotDataPlaneAsyncClient = client;
+        shadowUpdateDispatcher.start();
+        return shadowUpdateDispatcher;
+    }
+
+    private static byte[] payload() {
+        return "{\"state\":{\"reported\":{\"temperature\":21}}}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ThrottlingException throttling() {
+        return ThrottlingException.builder().statusCode(429).message("Rate exceeded").build();
+    }
+
+    private static void assertRejected(CompletableFuture<Void> update) {
+        ExecutionException error = assertThrows(ExecutionException.class, () -> update.get(0, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof RejectedExecutionException);
+    }
+
+    /**
+     * Data plane client whose requests are completed by the test.
+     */
+    private static class FakeIotDataPlaneAsyncClient implements IotDataPlaneAsyncClient {
+
+        private final BlockingQueue<CompletableFuture<UpdateThingShadowResponse>> outstanding = new LinkedBlockingQueue<>();
+        private final List<String> thingNames = new ArrayList<>();
+
+        @Override
+        public synchronized CompletableFuture<UpdateThingShadowResponse> updateThingShadow(UpdateThingShadowRequest request) {
+            CompletableFuture<UpdateThingShadowResponse> response = new CompletableFuture<>();
+            thingNames.add(request.thingName());
+            outstanding.add(response);
+            return response;
+        }
+
+        /**
+         * @return response of the oldest request not yet completed, retried requests may take a few milliseconds to arrive
+         */
+        private CompletableFuture<UpdateThingShadowResponse> next() throws InterruptedException {
+            CompletableFuture<UpdateThingShadowResponse> response = outstanding.poll(5, TimeUnit.SECONDS);
+            assertNotNull(response, "no shadow update was sent");
+            return response;
+        }
+
+        private synchronized int requestCount() {
+            return thingNames.size();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
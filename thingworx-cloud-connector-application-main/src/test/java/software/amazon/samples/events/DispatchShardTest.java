@@ -0,0 +1,72 @@
+package software.amazon.samples.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.samples.health.ConnectorHealth;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DispatchShardTest {
+
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+
+    @Test
+    void shutdownWorksOffTheQueuedMessages() throws InterruptedException {
+        DispatchShard shard = shard(handled::add);
+        for (int i = 0; i < 5; i++) {
+            shard.submit("thing-" + i, true, "message-" + i);
+        }
+
+        shard.start();
+        shard.shutdown();
+        shard.awaitTermination(5000);
+
+        assertTrue(shard.isTerminated());
+        assertEquals(5, handled.size());
+        assertEquals(0, shard.getQueueDepth());
+    }
+
+    @Test
+    void stopNowInterruptsTheMessageInProgressAndLeavesTheQueue() throws InterruptedException {
+        CountDownLatch handling = new CountDownLatch(1);
+        DispatchShard shard = shard(message -> {
+            handled.add(message);
+            handling.countDown();
+            try {
+                // a thingworx call which does not return before the drain deadline
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            shard.submit("thing-" + i, true, "message-" + i);
+        }
+        shard.start();
+        assertTrue(handling.await(5, TimeUnit.SECONDS));
+
+        shard.shutdown();
+        shard.awaitTermination(100);
+        assertFalse(shard.isTerminated());
+
+        shard.stopNow();
+        shard.awaitTermination(5000);
+
+        assertTrue(shard.isTerminated());
+        assertEquals(1, handled.size());
+        assertEquals(2, shard.getQueueDepth());
+    }
+
+    private static DispatchShard shard(Consumer<String> handler) {
+        IngestionBuffer buffer = new IngestionBuffer(100, 100, 8192, 0, 20, new ObjectMapper(), "payload", "deviceModel");
+        return new DispatchShard(0, buffer, handler, new ConnectorHealth(), runnable -> new Thread(runnable, "thing-dispatch-0"));
+    }
+}
@@ -0,0 +1,177 @@
+package software.amazon.samples.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionBufferTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void thingsWithMessagesOfTheSameSizeTakeTurns() throws Exception {
+        IngestionBuffer buffer = buffer(100, 100, message("a", 1).length(), 0);
+        for (int i = 0; i < 3; i++) {
+            buffer.offer("thing-a", false, message("a", i), 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            buffer.offer("thing-b", false, message("b", i), 0);
+        }
+
+        assertEquals(List.of("a0", "b0", "a1", "b1", "a2", "b2"), pollAll(buffer));
+    }
+
+    @Test
+    void thingSendingLargerMessagesIsServedLessOften() throws Exception {
+        String large = "{\"payload\":{\"value\":\"a0\",\"padding\":\"" + "x".repeat(40) + "\"}}";
+        IngestionBuffer buffer = buffer(100, 100, message("b", 1).length(), 0);
+        buffer.offer("thing-a", false, large, 0);
+        buffer.offer("thing-a", false, large.replace("a0", "a1"), 0);
+        for (int i = 0; i < 5; i++) {
+            buffer.offer("thing-b", false, message("b", i), 0);
+        }
+
+        List<String> order = pollAll(buffer);
+
+        // thing-a needs several rounds of quantum for one message, thing-b is served in each of them
+        assertTrue(order.indexOf("a0") >= 2, order.toString());
+        assertEquals(7, order.size());
+        assertEquals(List.of("b0", "b1", "b2", "b3", "b4"), order.stream().filter(value -> value.startsWith("b")).collect(Collectors.toList()));
+    }
+
+    @Test
+    void telemetryIsConflatedOnceTheThresholdIsReached() throws Exception {
+        IngestionBuffer buffer = buffer(10, 2, 1000, 0);
+
+        assertEquals(IngestionBuffer.Offer.QUEUED, buffer.offer("thing-a", false, "{\"payload\":{\"temperature\":1}}", 0));
+        assertEquals(IngestionBuffer.Offer.QUEUED, buffer.offer("thing-a", false, "{\"payload\":{\"humidity\":1}}", 0));
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, "{\"payload\":{\"temperature\":2}}", 0));
+
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getConflatedCount());
+        assertEquals("{\"payload\":{\"temperature\":1}}", onlyMessage(buffer.poll(0, TimeUnit.MILLISECONDS)));
+        JsonNode merged = mapper.readTree(onlyMessage(buffer.poll(0, TimeUnit.MILLISECONDS)));
+        assertEquals(1, merged.path("payload").path("humidity").asInt());
+        assertEquals(2, merged.path("payload").path("temperature").asInt());
+    }
+
+    @Test
+    void messageWhichCanNotBeMergedIsHandledOnItsOwnInOrder() throws Exception {
+        IngestionBuffer buffer = buffer(10, 0, 1000, 0);
+        buffer.offer("thing-a", false, message("a", 0), 0);
+
+        // nothing is parsed when offered
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, "{\"payload\":", 0));
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, message("a", 2), 0));
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, "{\"payload\":{\"humidity\":40}}", 0));
+
+        List<String> messages = buffer.poll(0, TimeUnit.MILLISECONDS).getMessages();
+        assertEquals(3, messages.size());
+        assertEquals(message("a", 0), messages.get(0));
+        assertEquals("{\"payload\":", messages.get(1));
+        JsonNode merged = mapper.readTree(messages.get(2));
+        assertEquals("a2", merged.path("payload").path("value").asText());
+        assertEquals(40, merged.path("payload").path("humidity").asInt());
+    }
+
+    @Test
+    void entryHoldsABoundedNumberOfConflatedMessages() throws Exception {
+        IngestionBuffer buffer = buffer(10, 0, 1000, 0);
+        buffer.offer("thing-a", false, message("a", 0), 0);
+        for (int i = 1; i <= 64; i++) {
+            assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, message("a", i), 0));
+        }
+
+        assertEquals(IngestionBuffer.Offer.QUEUED, buffer.offer("thing-a", false, message("a", 65), 0));
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, message("a", 66), 0));
+
+        assertEquals(List.of("a64", "a66"), pollAll(buffer));
+    }
+
+    @Test
+    void telemetryIsDroppedWhenFullButStatusMessagesAreNot() {
+        IngestionBuffer buffer = buffer(2, 2, 1000, 0);
+        buffer.offer("thing-a", false, message("a", 0), 0);
+        buffer.offer("thing-b", false, message("b", 0), 0);
+
+        assertEquals(IngestionBuffer.Offer.DROPPED, buffer.offer("thing-c", false, message("c", 0), 0));
+        assertEquals(IngestionBuffer.Offer.QUEUED, buffer.offer("thing-c", true, "{\"status\":\"CONNECTED\"}", 0));
+        assertEquals(3, buffer.size());
+        assertEquals(1, buffer.getDroppedCount());
+    }
+
+    @Test
+    void telemetryIsNeverConflatedAcrossAStatusMessage() throws Exception {
+        IngestionBuffer buffer = buffer(10, 0, 1000, 0);
+        buffer.offer("thing-a", false, message("a", 0), 0);
+        buffer.offer("thing-a", true, "{\"status\":\"DISCONNECTED\"}", 0);
+
+        assertEquals(IngestionBuffer.Offer.QUEUED, buffer.offer("thing-a", false, message("a", 1), 0));
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, message("a", 2), 0));
+
+        assertEquals("a0", value(buffer.poll(0, TimeUnit.MILLISECONDS)));
+        assertEquals("{\"status\":\"DISCONNECTED\"}", onlyMessage(buffer.poll(0, TimeUnit.MILLISECONDS)));
+        assertEquals("a2", value(buffer.poll(0, TimeUnit.MILLISECONDS)));
+        assertNull(buffer.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void telemetryOverTheRateOfAThingIsConflatedAndThrottled() throws Exception {
+        IngestionBuffer buffer = buffer(10, 10, 1000, 1);
+        buffer.offer("thing-a", false, message("a", 0), 0);
+
+        assertEquals(IngestionBuffer.Offer.CONFLATED, buffer.offer("thing-a", false, message("a", 1), 0));
+        assertEquals(IngestionBuffer.Offer.QUEUED, buffer.offer("thing-b", false, message("b", 0), 0));
+        assertEquals("a1", value(buffer.poll(0, TimeUnit.MILLISECONDS)));
+        assertEquals("b0", value(buffer.poll(0, TimeUnit.MILLISECONDS)));
+
+        // the only token of thing-a was taken, its next message waits for the refill
+        buffer.offer("thing-a", false, message("a", 2), 0);
+        assertNull(buffer.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(2, buffer.getThrottledCount());
+        assertEquals("a2", value(buffer.poll(2, TimeUnit.SECONDS)));
+
+        Map<String, ThingFairnessStats> stats = buffer.drainThingStats().stream()
+                .collect(Collectors.toMap(ThingFairnessStats::getThingName, Function.identity()));
+        assertEquals(2, stats.get("thing-a").getMessages());
+        assertEquals(1, stats.get("thing-b").getMessages());
+        assertTrue(buffer.drainThingStats().isEmpty());
+    }
+
+    private IngestionBuffer buffer(int capacity, int conflationThreshold, int quantum, double thingRatePerSecond) {
+        return new IngestionBuffer(capacity, conflationThreshold, quantum, thingRatePerSecond, 1, mapper, "payload", "deviceModel");
+    }
+
+    private static String message(String thing, int index) {
+        return "{\"payload\":{\"value\":\"" + thing + index + "\"}}";
+    }
+
+    private String value(IngestionBuffer.Entry entry) throws Exception {
+        return mapper.readTree(onlyMessage(entry)).path("payload").path("value").asText();
+    }
+
+    private static String onlyMessage(IngestionBuffer.Entry entry) {
+        assertEquals(1, entry.getMessages().size());
+        return entry.getMessages().get(0);
+    }
+
+    private List<String> pollAll(IngestionBuffer buffer) throws Exception {
+        List<String> values = new ArrayList<>();
+        IngestionBuffer.Entry entry;
+        while ((entry = buffer.poll(0, TimeUnit.MILLISECONDS)) != null) {
+            values.add(value(entry));
+        }
+        return values;
+    }
+}
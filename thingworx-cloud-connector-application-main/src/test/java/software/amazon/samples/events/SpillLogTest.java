@@ -0,0 +1,173 @@
+package software.amazon.samples.events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillLogTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void messagesArePolledInAppendOrderAcrossSegments() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(spillLog.append("message-" + i));
+        }
+
+        assertEquals(10, spillLog.getPendingRecords());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("message-" + i, spillLog.poll());
+        }
+        assertNull(spillLog.poll());
+        assertEquals(0, spillLog.getPendingRecords());
+    }
+
+    @Test
+    void replayedSegmentsAreDeleted() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        for (int i = 0; i < 10; i++) {
+            spillLog.append("message-" + i);
+        }
+        assertTrue(segmentFileCount() > 1);
+
+        while (spillLog.poll() != null) {
+            // replay everything
+        }
+
+        assertEquals(1, segmentFileCount());
+        assertEquals(SEGMENT_SIZE, spillLog.getSizeInBytes());
+    }
+
+    @Test
+    void messageLargerThanASegmentIsRejected() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+
+        assertFalse(spillLog.append(new String(new char[SEGMENT_SIZE])));
+        assertEquals(0, spillLog.getPendingRecords());
+    }
+
+    @Test
+    void oldestSegmentIsEvictedAtTheSizeCap() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 2 * SEGMENT_SIZE);
+        for (int i = 0; i < 12; i++) {
+            spillLog.append("message-" + i);
+        }
+
+        assertEquals(2, segmentFileCount());
+        assertTrue(spillLog.getEvictedRecords() > 0);
+        assertEquals(12, spillLog.getPendingRecords() + spillLog.getEvictedRecords());
+        assertEquals("message-" + spillLog.getEvictedRecords(), spillLog.poll());
+    }
+
+    @Test
+    void recoveryContinuesWithTheFirstMessageNotReplayed() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        for (int i = 0; i < 10; i++) {
+            spillLog.append("message-" + i);
+        }
+        for (int i = 0; i < 4; i++) {
+            spillLog.poll();
+        }
+        spillLog.force();
+
+        SpillLog recovered = new SpillLog(directory, SEGMENT_SIZE, 1024);
+
+        assertEquals(6, recovered.getPendingRecords());
+        for (int i = 4; i < 10; i++) {
+            assertEquals("message-" + i, recovered.poll());
+        }
+        assertNull(recovered.poll());
+    }
+
+    @Test
+    void peekedMessageIsNotMarkedReplayed() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        spillLog.append("message-0");
+        spillLog.append("message-1");
+
+        assertEquals("message-0", spillLog.peek());
+        assertEquals("message-0", spillLog.peek());
+        spillLog.force();
+        SpillLog recovered = new SpillLog(directory, SEGMENT_SIZE, 1024);
+
+        assertEquals(2, recovered.getPendingRecords());
+        assertEquals("message-0", recovered.poll());
+        assertEquals("message-1", recovered.peek());
+    }
+
+    @Test
+    void recoveryStopsAtARecordCutShortByACrash() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        spillLog.append("message-0");
+        spillLog.force();
+        // the length of a record reached the disk but its checksum and bytes did not
+        Path segment = onlySegmentFile();
+        int end = Integer.BYTES * 2 + "message-0".length();
+        writeInt(segment, end, 9);
+
+        SpillLog recovered = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        assertEquals(1, recovered.getPendingRecords());
+        recovered.append("message-1");
+        recovered.force();
+
+        SpillLog recoveredAgain = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        assertEquals(2, recoveredAgain.getPendingRecords());
+        assertEquals("message-0", recoveredAgain.poll());
+        assertEquals("message-1", recoveredAgain.poll());
+        assertNull(recoveredAgain.poll());
+    }
+
+    @Test
+    void recoveryClearsLeftoversAfterABrokenRecord() throws IOException {
+        SpillLog spillLog = new SpillLog(directory, SEGMENT_SIZE, 1024);
+        spillLog.append("message-0");
+        spillLog.force();
+        Path segment = onlySegmentFile();
+        int end = Integer.BYTES * 2 + "message-0".length();
+        writeInt(segment, end, 40);
+        writeInt(segment, end + 30, 7);
+
+        new SpillLog(directory, SEGMENT_SIZE, 1024);
+
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(segment));
+        for (int position = end; position < SEGMENT_SIZE; position++) {
+            assertEquals(0, contents.get(position), "byte at " + position);
+        }
+    }
+
+    private long segmentFileCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private Path onlySegmentFile() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findFirst().orElseThrow(IllegalStateException::new);
+        }
+    }
+
+    private static void writeInt(Path file, int position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES);
+            bytes.putInt(value).flip();
+            channel.write(bytes, position);
+        }
+    }
+}
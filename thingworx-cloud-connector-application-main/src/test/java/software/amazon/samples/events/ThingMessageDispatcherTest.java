@@ -0,0 +1,208 @@
+package software.amazon.samples.events;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.execution.ExecutionModel;
+import software.amazon.samples.health.ConnectorHealth;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Status messages are used, so no message is conflated with another.
+ */
+class ThingMessageDispatcherTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final Map<String, String> handlingThreads = new ConcurrentHashMap<>();
+    private final AtomicBoolean connected = new AtomicBoolean();
+    private final List<ThingMessageDispatcher> dispatchers = new ArrayList<>();
+
+    @AfterEach
+    void drain() throws InterruptedException {
+        for (ThingMessageDispatcher dispatcher : dispatchers) {
+            dispatcher.drain(System.currentTimeMillis() + 5000);
+        }
+    }
+
+    @Test
+    void messagesOfAThingAreHandledInOrderOnOneShard() throws InterruptedException {
+        connected.set(true);
+        ThingMessageDispatcher dispatcher = dispatcher(4, false);
+        List<String> dispatched = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String message = message("thing-" + i % 5, i);
+            dispatched.add(message);
+            dispatcher.dispatch(message);
+        }
+        awaitHandled(50);
+
+        for (int thing = 0; thing < 5; thing++) {
+            String thingName = "thing-" + thing;
+            assertEquals(messagesOf(dispatched, thingName), messagesOf(handled, thingName));
+            assertEquals(1, messagesOf(handled, thingName).stream().map(handlingThreads::get).distinct().count());
+        }
+        assertEquals(4, dispatcher.getShardCount());
+    }
+
+    @Test
+    void messagesAreSpilledWhileThingworxIsUnavailableAndReplayedInOrder() throws InterruptedException {
+        ThingMessageDispatcher dispatcher = dispatcher();
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(message(i));
+        }
+
+        awaitReplayWaitingForTheConnection();
+        assertTrue(dispatcher.isSpilling());
+        assertEquals(5, dispatcher.getSpilledCount());
+        assertEquals(5, dispatcher.getSpillPendingCount());
+        assertTrue(handled.isEmpty());
+
+        connected.set(true);
+        awaitHandled(5);
+
+        assertEquals(messages(0, 5), handled);
+        assertEquals(5, dispatcher.getReplayedCount());
+        assertEquals(0, dispatcher.getSpillPendingCount());
+    }
+
+    @Test
+    void messagesAreDispatchedDirectlyOnceTheSpillLogIsReplayed() throws InterruptedException {
+        ThingMessageDispatcher dispatcher = dispatcher();
+        dispatcher.dispatch(message(0));
+        connected.set(true);
+        awaitHandled(1);
+        awaitSpillingStopped(dispatcher);
+
+        dispatcher.dispatch(message(1));
+        awaitHandled(2);
+
+        assertEquals(messages(0, 2), handled);
+        assertEquals(1, dispatcher.getSpilledCount());
+        assertEquals(1, dispatcher.getReplayedCount());
+    }
+
+    @Test
+    void spilledMessagesAreReplayedAfterARestartBeforeNewMessages() throws InterruptedException {
+        ThingMessageDispatcher stopped = dispatcher();
+        for (int i = 0; i < 3; i++) {
+            stopped.dispatch(message(i));
+        }
+        awaitReplayWaitingForTheConnection();
+        stopped.drain(System.currentTimeMillis() + 5000);
+        assertTrue(handled.isEmpty());
+
+        connected.set(true);
+        ThingMessageDispatcher restarted = dispatcher();
+        assertTrue(restarted.isSpilling());
+        restarted.dispatch(message(3));
+        awaitHandled(4);
+
+        assertEquals(messages(0, 4), handled);
+    }
+
+    private ThingMessageDispatcher dispatcher() {
+        return dispatcher(1, true);
+    }
+
+    private ThingMessageDispatcher dispatcher(int shards, boolean spillEnabled) {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getThingNameIndicator()).thenReturn("thingName");
+        when(appConfigModule.getThingStatusIndicator()).thenReturn("status");
+        when(appConfigModule.getThingTelemetryPayloadIndicator()).thenReturn("payload");
+        when(appConfigModule.getThingModelIndicator()).thenReturn("deviceModel");
+        when(appConfigModule.getDispatcherShards()).thenReturn(shards);
+        when(appConfigModule.getDispatcherReportIntervalInSeconds()).thenReturn(60);
+        when(appConfigModule.getIngestionBufferCapacity()).thenReturn(100);
+        when(appConfigModule.getIngestionConflationThreshold()).thenReturn(100);
+        when(appConfigModule.getFairnessQuantum()).thenReturn(8192);
+        when(appConfigModule.getFairnessThingRatePerSecond()).thenReturn(0.0);
+        when(appConfigModule.getFairnessThingBurst()).thenReturn(20);
+        when(appConfigModule.getSpillEnabled()).thenReturn(spillEnabled);
+        when(appConfigModule.getSpillDirectory()).thenReturn(spillDirectory.toString());
+        when(appConfigModule.getSpillSegmentSizeInMB()).thenReturn(1);
+        when(appConfigModule.getSpillMaxSizeInMB()).thenReturn(4);
+        when(appConfigModule.getSpillQueueDepthThreshold()).thenReturn(100);
+        when(appConfigModule.getSpillReplayRatePerSecond()).thenReturn(1000);
+
+        ThingMessageDispatcher dispatcher = new ThingMessageDispatcher() {
+            @Override
+            boolean isConnected(String thingName) {
+                return connected.get();
+            }
+        };
+        dispatcher.appConfigModule = appConfigModule;
+        dispatcher.thingMessageHandler = new ThingMessageHandler() {
+            @Override
+            public void handle(String message) {
+                handled.add(message);
+                handlingThreads.put(message, Thread.currentThread().getName());
+            }
+        };
+        dispatcher.connectorHealth = new ConnectorHealth();
+        dispatcher.executionModel = new ExecutionModel();
+        dispatcher.start();
+        dispatchers.add(dispatcher);
+        return dispatcher;
+    }
+
+    private static String message(int sequence) {
+        return message("thing-1", sequence);
+    }
+
+    private static String message(String thingName, int sequence) {
+        return "{\"thingName\":\"" + thingName + "\",\"status\":\"connected\",\"sequence\":" + sequence + "}";
+    }
+
+    private static List<String> messagesOf(List<String> messages, String thingName) {
+        return messages.stream().filter(message -> message.contains("\"" + thingName + "\"")).collect(Collectors.toList());
+    }
+
+    private static List<String> messages(int from, int to) {
+        List<String> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            messages.add(message(i));
+        }
+        return messages;
+    }
+
+    private void awaitHandled(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handled.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, handled.size());
+    }
+
+    /**
+     * The idle replay checks for spilled messages every 100 milliseconds, then waits with the oldest message for the connection.
+     */
+    private static void awaitReplayWaitingForTheConnection() throws InterruptedException {
+        Thread.sleep(250);
+    }
+
+    private static void awaitSpillingStopped(ThingMessageDispatcher dispatcher) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.isSpilling() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(dispatcher.isSpilling());
+    }
+}
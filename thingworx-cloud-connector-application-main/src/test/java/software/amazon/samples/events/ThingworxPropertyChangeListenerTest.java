@@ -0,0 +1,92 @@
+package software.amazon.samples.events;
+
+import com.thingworx.communications.client.ConnectedThingClient;
+import com.thingworx.communications.client.things.VirtualThingPropertyChangeEvent;
+import com.thingworx.types.primitives.NumberPrimitive;
+import org.junit.jupiter.api.Test;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.deviceShadow.ThingworxPropertyChangeCallback;
+import software.amazon.samples.model.ThingModel;
+import software.amazon.samples.thingworx.AwsConnectedThing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ThingworxPropertyChangeListenerTest {
+
+    private final RecordingCallback callback = new RecordingCallback();
+    private final AwsConnectedThing thing = thing(callback);
+
+    @Test
+    void deviceWritesAreNotSentBackToTheShadow() {
+        assertEquals(2, thing.setPropertiesFromDevice(Map.of("temperature", 21, "humidity", 40)));
+
+        assertTrue(callback.events.isEmpty());
+        assertFalse(AwsConnectedThing.isDeviceWrite());
+    }
+
+    @Test
+    void changesMadeInThingworxAreSentToTheShadow() throws Exception {
+        thing.setPropertyValue("temperature", new NumberPrimitive(22.0));
+
+        assertEquals(1, callback.events.size());
+    }
+
+    @Test
+    void changesOnAnotherThreadAreSentAfterADeviceWrite() throws Exception {
+        thing.setPropertiesFromDevice(Map.of("temperature", 21));
+
+        Thread thingworxWrite = new Thread(() -> {
+            try {
+                thing.setPropertyValue("humidity", new NumberPrimitive(50.0));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thingworxWrite.start();
+        thingworxWrite.join();
+
+        assertEquals(1, callback.events.size());
+    }
+
+    @Test
+    void deviceWriteFlagIsClearedWhenAValueCannotBeWritten() {
+        thing.setPropertiesFromDevice(Map.of("temperature", "warm"));
+
+        assertFalse(AwsConnectedThing.isDeviceWrite());
+        assertTrue(callback.events.isEmpty());
+    }
+
+    private static AwsConnectedThing thing(ThingworxPropertyChangeCallback callback) {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getModelParametersDataTypeIndicator()).thenReturn("type");
+        AwsConnectedThing thing = new AwsConnectedThing("thing-1", "", "", mock(ConnectedThingClient.class), appConfigModule, callback);
+        HashMap<String, Map<String, String>> attributes = new HashMap<>();
+        attributes.put("temperature", Map.of("type", "NUMBER"));
+        attributes.put("humidity", Map.of("type", "NUMBER"));
+        thing.updateProperties(new ThingModel("thing-1", "connected", attributes));
+        return thing;
+    }
+
+    private static class RecordingCallback implements ThingworxPropertyChangeCallback {
+
+        private final List<VirtualThingPropertyChangeEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void call(VirtualThingPropertyChangeEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void thingUnbound(String thingName) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package software.amazon.samples.execution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Time to run the blocking calls of 10000 things, each call waiting 10 ms as a thingworx or redis round trip would,
+ * on the bounded executor of each execution mode. The executor lives for the whole trial as the connector executors do,
+ * so platform threads are started once. The VIRTUAL mode needs a Java 21 runtime.
+ * Run with {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ExecutionModel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExecutionModelBenchmark {
+
+    private static final int THINGS = 10000;
+    private static final int CALL_MILLIS = 10;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    String mode;
+
+    @Param({"200", "10000"})
+    int maxConcurrency;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getExecutionMode()).thenReturn(mode);
+        ExecutionModel executionModel = new ExecutionModel();
+        executionModel.appConfigModule = appConfigModule;
+        executionModel.init();
+        if (!executionModel.getMode().name().equals(mode)) {
+            throw new IllegalStateException("The " + mode + " execution mode is not available on Java " + System.getProperty("java.version"));
+        }
+        executor = executionModel.newBoundedExecutor("benchmark-", maxConcurrency);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void blockingCallsOfAllThings() throws InterruptedException {
+        CountDownLatch calls = new CountDownLatch(THINGS);
+        for (int i = 0; i < THINGS; i++) {
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(CALL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    calls.countDown();
+                }
+            });
+        }
+        calls.await();
+    }
+}
@@ -0,0 +1,101 @@
+package software.amazon.samples.execution;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExecutionModelTest {
+
+    @Test
+    void unknownModeFallsBackToPlatform() {
+        assertEquals(ExecutionModel.Mode.PLATFORM, ExecutionModel.resolve("green"));
+        assertEquals(ExecutionModel.Mode.PLATFORM, ExecutionModel.resolve(null));
+        assertEquals(ExecutionModel.Mode.PLATFORM, ExecutionModel.resolve("platform"));
+    }
+
+    @Test
+    void virtualModeNeedsVirtualThreads() {
+        ExecutionModel.Mode expected = Runtime.version().feature() >= 21 ? ExecutionModel.Mode.VIRTUAL : ExecutionModel.Mode.PLATFORM;
+
+        assertEquals(expected, ExecutionModel.resolve("virtual"));
+    }
+
+    @Test
+    void platformThreadsAreNamedDaemons() {
+        ThreadFactory threadFactory = new ExecutionModel().threadFactory("thing-dispatch-");
+
+        Thread first = threadFactory.newThread(() -> {
+        });
+        Thread second = threadFactory.newThread(() -> {
+        });
+
+        assertEquals("thing-dispatch-0", first.getName());
+        assertEquals("thing-dispatch-1", second.getName());
+        assertTrue(first.isDaemon());
+    }
+
+    @Test
+    void platformBoundedExecutorRunsTasks() throws Exception {
+        ExecutorService executor = new ExecutionModel().newBoundedExecutor("warm-up-", 2);
+        try {
+            assertEquals("warm-up-0", executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void virtualBoundedExecutorRunsTenThousandBlockingCallsWithinItsLimit() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21");
+        ExecutionModel executionModel = executionModel("virtual");
+        ExecutorService executor = executionModel.newBoundedExecutor("thing-call-", 100);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Thread>> calls = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                calls.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                        return Thread.currentThread();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }));
+            }
+            for (Future<Thread> call : calls) {
+                Thread thread = call.get(30, TimeUnit.SECONDS);
+                assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+                assertTrue(thread.getName().startsWith("thing-call-"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(executionModel.isVirtual());
+        assertTrue(maxRunning.get() <= 100, "at most 100 calls at once, but " + maxRunning.get() + " were running");
+    }
+
+    private static ExecutionModel executionModel(String mode) {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getExecutionMode()).thenReturn(mode);
+        ExecutionModel executionModel = new ExecutionModel();
+        executionModel.appConfigModule = appConfigModule;
+        executionModel.init();
+        return executionModel;
+    }
+}
@@ -0,0 +1,81 @@
+package software.amazon.samples.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SemaphoreBoundedExecutorTest {
+
+    @Test
+    void runsAtMostMaxConcurrencyTasksAtOnce() throws Exception {
+        // a cached pool starts a thread per waiting task, like the thread per task executor of virtual threads
+        SemaphoreBoundedExecutor executor = new SemaphoreBoundedExecutor(Executors.newCachedThreadPool(), 4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(maxRunning.get() <= 4, maxRunning.get() + " tasks ran at once");
+        assertEquals(0, running.get());
+    }
+
+    @Test
+    void submittingDoesNotBlockWhenAllPermitsAreTaken() throws Exception {
+        SemaphoreBoundedExecutor executor = new SemaphoreBoundedExecutor(Executors.newCachedThreadPool(), 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Future<String> waiting = executor.submit(() -> "done");
+
+            release.countDown();
+            assertEquals("done", waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shutdownIsDelegated() throws Exception {
+        SemaphoreBoundedExecutor executor = new SemaphoreBoundedExecutor(Executors.newCachedThreadPool(), 2);
+        executor.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        executor.shutdown();
+
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+}
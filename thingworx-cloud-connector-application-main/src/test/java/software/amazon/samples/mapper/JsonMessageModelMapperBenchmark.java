@@ -0,0 +1,106 @@
+package software.amazon.samples.mapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.model.PayloadModel;
+import software.amazon.samples.model.ThingModel;
+import software.amazon.samples.thingworx.ThingModelCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Decoding cost of a telemetry message from the message router lambda, with the thing model embedded as the lambda sends it.
+ * tripleParse is the decoding the streaming mapper replaced: the message parsed into a JSONObject, then the payload and the
+ * model written back to strings and parsed again by new object mappers.
+ * Run with {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main JsonMessageModelMapper -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonMessageModelMapperBenchmark {
+
+    @Param({"10", "100"})
+    int properties;
+
+    private String message;
+    private JsonMessageModelMapper appliedModelMapper;
+    private JsonMessageModelMapper newModelMapper;
+
+    @Setup
+    public void setUp() {
+        StringBuilder model = new StringBuilder("{");
+        StringBuilder payload = new StringBuilder("{");
+        for (int i = 0; i < properties; i++) {
+            String separator = i == 0 ? "" : ",";
+            model.append(separator).append("\"temperature").append(i).append("\":{\"dataType\":\"NUMBER\",\"unit\":\"C\"}");
+            payload.append(separator).append("\"temperature").append(i).append("\":").append(20 + i).append(".5");
+        }
+        message = "{\"deviceModel\":" + model + "},\"thingName\":\"thing-1\",\"payload\":" + payload + "}}";
+
+        appliedModelMapper = mapper(new ThingModelCache());
+        ThingModel thingModel = appliedModelMapper.messageToThingMessage(message).getThingModel();
+        appliedModelMapper.thingModelCache.put("thing-1", thingModel.getModelFingerprint(), thingModel.getModel());
+        newModelMapper = mapper(new ThingModelCache());
+    }
+
+    /**
+     * Steady state, the model in the message is the one already applied to the thing.
+     */
+    @Benchmark
+    public Object decode() {
+        return appliedModelMapper.messageToThingMessage(message);
+    }
+
+    /**
+     * First message of a thing or a changed model, the model is parsed as well.
+     */
+    @Benchmark
+    public Object decodeNewModel() {
+        return newModelMapper.messageToThingMessage(message);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void tripleParse(Blackhole blackhole) throws Exception {
+        JSONObject json = new JSONObject(message);
+        blackhole.consume(json.get("thingName").toString());
+        blackhole.consume(new ObjectMapper().readValue(String.valueOf(json.get("payload")), PayloadModel.class));
+        HashMap<String, Map<String, String>> attributes = new HashMap<>();
+        blackhole.consume(new ObjectMapper().readValue(json.get("deviceModel").toString(), attributes.getClass()));
+    }
+
+    private static JsonMessageModelMapper mapper(ThingModelCache thingModelCache) {
+        // stub only, so the mock does not record the lookups of every decoded message
+        AppConfigModule appConfigModule = mock(AppConfigModule.class, withSettings().stubOnly());
+        when(appConfigModule.getThingNameIndicator()).thenReturn("thingName");
+        when(appConfigModule.getThingStatusIndicator()).thenReturn("status");
+        when(appConfigModule.getThingTelemetryPayloadIndicator()).thenReturn("payload");
+        when(appConfigModule.getThingModelIndicator()).thenReturn("deviceModel");
+        JsonMessageModelMapper mapper = new JsonMessageModelMapper();
+        mapper.appConfigModule = appConfigModule;
+        mapper.thingModelCache = thingModelCache;
+        return mapper;
+    }
+}
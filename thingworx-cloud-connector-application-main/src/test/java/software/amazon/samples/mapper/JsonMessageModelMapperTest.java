@@ -1,53 +1,104 @@
-/*
-package pl.ttpsc.thingworxconnector.mapper;
+package software.amazon.samples.mapper;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.model.ThingMessage;
+import software.amazon.samples.model.ThingModel;
+import software.amazon.samples.thingworx.ThingModelCache;
 
-import static net.bytebuddy.matcher.ElementMatchers.is;
-import static net.javacrumbs.jsonunit.JsonMatchers.jsonEquals;
-import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.*;
-import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class JsonMessageModelMapperTest {
 
+    private static final String MODEL = "{\"temperature\":{\"dataType\":\"NUMBER\",\"unit\":\"C\"},\"online\":{\"dataType\":\"BOOLEAN\"}}";
+
+    private final JsonMessageModelMapper mapper = new JsonMessageModelMapper();
+
+    @BeforeEach
+    void setUp() {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getThingNameIndicator()).thenReturn("thingName");
+        when(appConfigModule.getThingStatusIndicator()).thenReturn("status");
+        when(appConfigModule.getThingTelemetryPayloadIndicator()).thenReturn("payload");
+        when(appConfigModule.getThingModelIndicator()).thenReturn("deviceModel");
+        mapper.appConfigModule = appConfigModule;
+        mapper.thingModelCache = new ThingModelCache();
+    }
+
+    @Test
+    void decodesThingModelAndPayloadInAnyOrder() {
+        String message = "{\"deviceModel\":" + MODEL + ",\"payload\":{\"temperature\":21.5,\"count\":3,\"total\":12345678901,\"label\":\"kitchen\","
+                + "\"online\":true,\"error\":null,\"position\":{\"x\":1},\"tags\":[\"a\"]},\"ignored\":{\"nested\":[1,2]},\"thingName\":\"thing-1\"}";
+
+        ThingMessage thingMessage = mapper.messageToThingMessage(message);
+
+        ThingModel thingModel = thingMessage.getThingModel();
+        assertEquals("thing-1", thingModel.getDeviceName());
+        assertNull(thingModel.getStatus());
+        assertTrue(thingModel.isModelChanged());
+        assertEquals(ThingModelCache.fingerprint(MODEL, 0, MODEL.length()), thingModel.getModelFingerprint());
+        assertEquals(Map.of("dataType", "NUMBER", "unit", "C"), thingModel.getModel().get("temperature"));
+        assertEquals(Map.of("dataType", "BOOLEAN"), thingModel.getModel().get("online"));
+
+        Map<String, Object> parameters = thingMessage.getPayloadModel().getParameters();
+        assertEquals(21.5, parameters.get("temperature"));
+        assertEquals(3, parameters.get("count"));
+        assertEquals(12345678901L, parameters.get("total"));
+        assertEquals("kitchen", parameters.get("label"));
+        assertEquals(true, parameters.get("online"));
+        assertTrue(parameters.containsKey("error"));
+        assertNull(parameters.get("error"));
+        assertEquals(Map.of("x", 1), parameters.get("position"));
+        assertEquals(List.of("a"), parameters.get("tags"));
+        assertFalse(parameters.containsKey("ignored"));
+    }
+
+    @Test
+    void statusMessageHasNoPayload() {
+        ThingMessage thingMessage = mapper.messageToThingMessage("{\"thingName\":\"thing-1\",\"status\":\"CONNECTED\"}");
+
+        assertEquals("CONNECTED", thingMessage.getThingModel().getStatus());
+        assertNull(thingMessage.getPayloadModel());
+        assertTrue(thingMessage.getThingModel().getModel().isEmpty());
+    }
+
     @Test
-    void jsonToPayloadModel() {
-        //given
+    void modelAppliedToTheThingIsReused() {
+        String message = "{\"thingName\":\"thing-1\",\"deviceModel\":" + MODEL + ",\"payload\":{\"temperature\":21}}";
+        ThingModel first = mapper.messageToThingMessage(message).getThingModel();
+        mapper.thingModelCache.put("thing-1", first.getModelFingerprint(), first.getModel());
 
-        //when
+        ThingModel second = mapper.messageToThingMessage(message).getThingModel();
 
-        //then
+        assertFalse(second.isModelChanged());
+        assertSame(first.getModel(), second.getModel());
+        assertEquals(1, mapper.thingModelCache.getHitCount());
     }
 
     @Test
-    void jsonToThingModel() {
+    void modelOfTheDeviceDataMatchesTheModelOfMessages() {
+        ThingModel fromDeviceData = mapper.deviceDataToThingModel("thing-1", "{\"deviceModel\": {\"temperature\": {\"dataType\": \"NUMBER\", \"unit\": \"C\"}, \"online\": {\"dataType\": \"BOOLEAN\"}}}");
+        mapper.thingModelCache.put("thing-1", fromDeviceData.getModelFingerprint(), fromDeviceData.getModel());
+
+        ThingModel fromMessage = mapper.messageToThingMessage("{\"thingName\":\"thing-1\",\"deviceModel\":" + MODEL + "}").getThingModel();
 
+        assertFalse(fromMessage.isModelChanged());
+        assertNull(mapper.deviceDataToThingModel("thing-2", "{\"other\":{}}"));
     }
 
     @Test
-    void shouldConvertStringMessageToJSONObject() {
-        //given
-        JsonMessageModelMapper jsonMessageModelMapper = new JsonMessageModelMapper();
-        String stringMessage = "{\n" +
-                "  \"payload\": {\n" +
-                "    \"temp\": 222,\n" +
-                "    \"_id_\": \"GFDSGFDgfdgfd\"\n" +
-                "  },\n" +
-                "  \"deviceName\": \"Station_1\",\n" +
-                "  \"deviceModelName\": \"Demo Wind Farm Asset Model\",\n" +
-                "  \"deviceModel\": {\n" +
-                "    \"temp\": {\n" +
-                "      \"type\": \"INTEGER\"\n" +
-                "  }\n" +
-                "}\n" +
-                "}";
-        //when
-        JSONObject result = jsonMessageModelMapper.MessageStringToJSONObject(stringMessage);
-        //then
-        assertThat(result, jsonEquals(stringMessage));
+    void invalidMessagesAreNotDecoded() {
+        assertNull(mapper.messageToThingMessage("[1,2]"));
+        assertNull(mapper.messageToThingMessage("{\"thingName\":"));
     }
-}*/
+}
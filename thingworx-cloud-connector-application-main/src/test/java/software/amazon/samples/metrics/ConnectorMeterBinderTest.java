@@ -0,0 +1,109 @@
+package software.amazon.samples.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RedissonClient;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.deviceShadow.MqttShadowPublisher;
+import software.amazon.samples.deviceShadow.ShadowUpdateBatcher;
+import software.amazon.samples.deviceShadow.ShadowUpdateDispatcher;
+import software.amazon.samples.events.ThingFairnessStats;
+import software.amazon.samples.events.ThingMessageDispatcher;
+import software.amazon.samples.health.ConnectorHealth;
+import software.amazon.samples.services.WarmUpService;
+import software.amazon.samples.thingworx.LastValueTable;
+import software.amazon.samples.thingworx.ScanScheduler;
+import software.amazon.samples.thingworx.ThingModelCache;
+import software.amazon.samples.thingworx.ThingworxConnectionSupervisor;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConnectorMeterBinderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ConnectorMeterBinder binder = new ConnectorMeterBinder();
+    private final ThingMessageDispatcher dispatcher = mock(ThingMessageDispatcher.class);
+
+    @BeforeEach
+    void bind() {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getThingworxConnectionCount()).thenReturn(2);
+        when(dispatcher.getShardCount()).thenReturn(2);
+        when(dispatcher.getQueueDepth(1)).thenReturn(7);
+        when(dispatcher.getSpilledCount()).thenReturn(12L);
+        when(dispatcher.isSpilling()).thenReturn(true);
+        ThingModelCache thingModelCache = new ThingModelCache();
+        thingModelCache.put("thing-1", 1, new HashMap<>());
+        thingModelCache.get("thing-1", 1);
+
+        binder.appConfigModule = appConfigModule;
+        binder.connectorHealth = new ConnectorHealth();
+        binder.thingMessageDispatcher = dispatcher;
+        binder.scanScheduler = mock(ScanScheduler.class);
+        binder.thingModelCache = thingModelCache;
+        binder.shadowUpdateBatcher = mock(ShadowUpdateBatcher.class);
+        binder.shadowUpdateDispatcher = mock(ShadowUpdateDispatcher.class);
+        binder.mqttShadowPublisher = mock(MqttShadowPublisher.class);
+        binder.redissonClient = mock(RedissonClient.class);
+        binder.warmUpService = mock(WarmUpService.class);
+        binder.connectionSupervisor = mock(ThingworxConnectionSupervisor.class);
+        binder.lastValueTable = new LastValueTable();
+        binder.bindTo(registry);
+    }
+
+    @Test
+    void metersReadTheComponentsWhenScraped() {
+        assertEquals(7, registry.get("connector.dispatch.queue.depth").tag("shard", "1").gauge().value());
+        assertEquals(0, registry.get("connector.dispatch.queue.depth").tag("shard", "0").gauge().value());
+        assertEquals(12, registry.get("connector.spill.spilled").functionCounter().count());
+        assertEquals(1, registry.get("connector.spill.active").gauge().value());
+        assertEquals(1, registry.get("connector.model.cache.hits").functionCounter().count());
+
+        when(dispatcher.getSpilledCount()).thenReturn(20L);
+
+        assertEquals(20, registry.get("connector.spill.spilled").functionCounter().count());
+    }
+
+    @Test
+    void connectionMetersReadZeroBeforeTheConnectionsAreCreated() {
+        assertEquals(0, registry.get("connector.thingworx.connection.connected").tag("connection", "1").gauge().value());
+        assertEquals(0, registry.get("connector.thingworx.connection.pushes").tag("connection", "0").functionCounter().count());
+    }
+
+    @Test
+    void mqttMetersAreOnlyBoundWhenThePublisherIsEnabled() {
+        assertNull(registry.find("connector.shadow.mqtt.connected").gauge());
+        assertEquals(0, registry.get("connector.shadow.queue.depth").gauge().value());
+    }
+
+    @Test
+    void unreadableRedisPoolIsNotANumber() {
+        assertTrue(Double.isNaN(registry.get("connector.redis.connections.free").gauge().value()));
+    }
+
+    @Test
+    void mostLaggingThingsAreTaggedAfterEachReport() {
+        ThingFairnessStats lagging = mock(ThingFairnessStats.class);
+        when(lagging.getThingName()).thenReturn("thing-1");
+        when(lagging.getMaxLagMillis()).thenReturn(250L);
+        when(dispatcher.getMostLaggingThings()).thenReturn(List.of(lagging));
+        when(dispatcher.getMostThrottledThings()).thenReturn(List.of());
+        ArgumentCaptor<Runnable> reportListener = ArgumentCaptor.forClass(Runnable.class);
+        verify(dispatcher).addReportListener(reportListener.capture());
+
+        reportListener.getValue().run();
+
+        assertEquals(250, registry.get("connector.dispatch.thing.lag").tag("thing", "thing-1").gauge().value());
+        assertNull(registry.find("connector.dispatch.thing.throttled").gauge());
+    }
+}
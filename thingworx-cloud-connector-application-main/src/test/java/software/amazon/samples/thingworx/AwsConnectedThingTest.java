@@ -0,0 +1,106 @@
+package software.amazon.samples.thingworx;
+
+import com.thingworx.communications.client.ConnectedThingClient;
+import com.thingworx.metadata.PropertyDefinition;
+import com.thingworx.types.BaseTypes;
+import com.thingworx.types.primitives.NumberPrimitive;
+import org.junit.jupiter.api.Test;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.deviceShadow.ThingworxPropertyChangeCallback;
+import software.amazon.samples.model.ThingModel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AwsConnectedThingTest {
+
+    private final AwsConnectedThing thing = thing();
+
+    @Test
+    void propertiesAreDefinedFromTheModel() {
+        thing.updateProperties(model("temperature", "NUMBER", "location", "STRING", "color", "RAINBOW"));
+
+        assertEquals(BaseTypes.NUMBER, thing.getProperty("temperature").getPropertyDefinition().getBaseType());
+        assertEquals(BaseTypes.STRING, thing.getProperty("location").getPropertyDefinition().getBaseType());
+        assertNull(thing.getProperty("color"));
+        assertTrue(thing.isPropertySubscriptionsStale());
+    }
+
+    @Test
+    void unchangedModelKeepsTheValuesAndSubscriptions() throws Exception {
+        define("temperature", BaseTypes.NUMBER, "location", BaseTypes.STRING);
+        thing.setPropertyValue("temperature", new NumberPrimitive(21.0));
+
+        thing.updateProperties(model("temperature", "NUMBER", "location", "STRING"));
+
+        assertEquals(21.0, thing.getProperty("temperature").getValue().getValue());
+        assertFalse(thing.isPropertySubscriptionsStale());
+    }
+
+    @Test
+    void removedPropertyMarksTheSubscriptionsStale() throws Exception {
+        define("temperature", BaseTypes.NUMBER, "location", BaseTypes.STRING);
+        thing.setPropertyValue("temperature", new NumberPrimitive(21.0));
+
+        thing.updateProperties(model("temperature", "NUMBER"));
+
+        assertNull(thing.getProperty("location"));
+        assertEquals(21.0, thing.getProperty("temperature").getValue().getValue());
+        assertTrue(thing.isPropertySubscriptionsStale());
+    }
+
+    @Test
+    void retypedPropertyIsRedefinedAndConvertedByItsNewType() {
+        define("temperature", BaseTypes.NUMBER);
+
+        thing.updateProperties(model("temperature", "STRING"));
+        thing.setPropertiesFromDevice(Map.of("temperature", "warm"));
+
+        assertEquals(BaseTypes.STRING, thing.getProperty("temperature").getPropertyDefinition().getBaseType());
+        assertEquals("warm", thing.getProperty("temperature").getValue().getValue());
+        assertTrue(thing.isPropertySubscriptionsStale());
+    }
+
+    @Test
+    void onlyModelPropertiesPresentInThePayloadAreWritten() {
+        thing.updateProperties(model("temperature", "NUMBER", "location", "STRING"));
+
+        assertEquals(1, thing.setPropertiesFromDevice(Map.of("temperature", 21, "pressure", 1013)));
+        assertEquals(21.0, thing.getProperty("temperature").getValue().getValue());
+    }
+
+    /**
+     * Defines properties as a previous reconciliation would have, without marking the subscriptions stale.
+     *
+     * @param properties property names each followed by its type
+     */
+    private void define(Object... properties) {
+        for (int i = 0; i < properties.length; i += 2) {
+            thing.defineProperty(new PropertyDefinition((String) properties[i], "", (BaseTypes) properties[i + 1]));
+        }
+    }
+
+    private static AwsConnectedThing thing() {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getModelParametersDataTypeIndicator()).thenReturn("type");
+        return new AwsConnectedThing("thing-1", "", "", mock(ConnectedThingClient.class), appConfigModule, mock(ThingworxPropertyChangeCallback.class));
+    }
+
+    /**
+     * @param properties property names each followed by its type
+     */
+    private static ThingModel model(String... properties) {
+        HashMap<String, Map<String, String>> attributes = new HashMap<>();
+        for (int i = 0; i < properties.length; i += 2) {
+            attributes.put(properties[i], Map.of("type", properties[i + 1]));
+        }
+        return new ThingModel("thing-1", "connected", attributes);
+    }
+}
@@ -0,0 +1,75 @@
+package software.amazon.samples.thingworx;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final int THINGS = 20000;
+
+    @Test
+    void singleNodeOwnsEveryThing() {
+        ConsistentHashRing ring = new ConsistentHashRing(1, VIRTUAL_NODES);
+
+        for (int thing = 0; thing < 100; thing++) {
+            assertEquals(0, ring.nodeOf("thing-" + thing));
+        }
+    }
+
+    @Test
+    void placementIsStableAcrossRings() {
+        ConsistentHashRing first = new ConsistentHashRing(4, VIRTUAL_NODES);
+        ConsistentHashRing second = new ConsistentHashRing(4, VIRTUAL_NODES);
+
+        for (int thing = 0; thing < 1000; thing++) {
+            assertEquals(first.nodeOf("thing-" + thing), second.nodeOf("thing-" + thing));
+        }
+    }
+
+    @Test
+    void thingsAreSpreadEvenly() {
+        int nodes = 4;
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, VIRTUAL_NODES);
+        int[] owned = new int[nodes];
+
+        for (int thing = 0; thing < THINGS; thing++) {
+            owned[ring.nodeOf("Station_" + thing)]++;
+        }
+
+        for (int node = 0; node < nodes; node++) {
+            double share = (double) owned[node] / THINGS;
+            assertTrue(share > 0.15 && share < 0.35, "node " + node + " owns " + share + " of the things");
+        }
+    }
+
+    @Test
+    void addingANodeMovesThingsOnlyToTheNewNode() {
+        ConsistentHashRing before = new ConsistentHashRing(3, VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(4, VIRTUAL_NODES);
+        int moved = 0;
+
+        for (int thing = 0; thing < THINGS; thing++) {
+            String thingName = "Station_" + thing;
+            int oldNode = before.nodeOf(thingName);
+            int newNode = after.nodeOf(thingName);
+            if (oldNode != newNode) {
+                assertEquals(3, newNode, thingName + " moved between existing nodes");
+                moved++;
+            }
+        }
+
+        double movedShare = (double) moved / THINGS;
+        assertTrue(movedShare > 0.15 && movedShare < 0.35, movedShare + " of the things moved");
+    }
+
+    @Test
+    void hashSpreadsSimilarNames() {
+        long first = ConsistentHashRing.hash("Station_1");
+        long second = ConsistentHashRing.hash("Station_2");
+
+        assertTrue(Long.bitCount(first ^ second) > 16, "hashes of similar names share most bits");
+    }
+}
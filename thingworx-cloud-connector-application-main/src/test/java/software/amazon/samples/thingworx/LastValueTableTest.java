@@ -0,0 +1,51 @@
+package software.amazon.samples.thingworx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LastValueTableTest {
+
+    private final LastValueTable lastValueTable = new LastValueTable();
+
+    @Test
+    void newerValuesAreMergedAndNullValuesAreIgnored() {
+        lastValueTable.record("thing-1", Map.of("temperature", 20, "humidity", 40));
+        Map<String, Object> values = new HashMap<>();
+        values.put("temperature", 21);
+        values.put("humidity", null);
+        lastValueTable.record("thing-1", values);
+
+        assertEquals(Map.of("temperature", 21, "humidity", 40), lastValueTable.get("thing-1"));
+    }
+
+    @Test
+    void onlyThingsWithValuesAreMarkedStale() {
+        lastValueTable.record("thing-1", Map.of("temperature", 20));
+
+        lastValueTable.markStale("thing-1");
+        lastValueTable.markStale("thing-1");
+        lastValueTable.markStale("thing-2");
+
+        assertEquals(1, lastValueTable.getStaleThingCount());
+        assertEquals(List.of("thing-1"), lastValueTable.drainStaleThings());
+        assertEquals(0, lastValueTable.getStaleThingCount());
+        assertEquals(List.of(), lastValueTable.drainStaleThings());
+    }
+
+    @Test
+    void removedThingIsNoLongerResynced() {
+        lastValueTable.record("thing-1", Map.of("temperature", 20));
+        lastValueTable.markStale("thing-1");
+
+        lastValueTable.remove("thing-1");
+
+        assertNull(lastValueTable.get("thing-1"));
+        assertEquals(List.of(), lastValueTable.drainStaleThings());
+    }
+}
@@ -0,0 +1,110 @@
+package software.amazon.samples.thingworx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.execution.ExecutionModel;
+import software.amazon.samples.health.ConnectorHealth;
+import software.amazon.samples.metrics.StageTimers;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * No thingworx connection is created, so every bound thing fails to push and is marked stale for the connection supervisor.
+ */
+class ScanSchedulerTest {
+
+    private final LastValueTable lastValueTable = new LastValueTable();
+    private ScanScheduler scanScheduler;
+
+    @AfterEach
+    void stop() {
+        if (scanScheduler != null) {
+            scanScheduler.stop();
+        }
+    }
+
+    @Test
+    void drainFlushesTheDirtyThingsOnce() {
+        scanScheduler = scanScheduler(60000);
+        scanScheduler.markDirty(thing("thing-1", true));
+        scanScheduler.markDirty(thing("thing-2", false));
+
+        assertEquals(2, scanScheduler.drain());
+        assertEquals(0, scanScheduler.getDirtyThingCount());
+        assertEquals(List.of("thing-1"), lastValueTable.drainStaleThings());
+        assertEquals(0, scanScheduler.drain());
+    }
+
+    @Test
+    void scanCycleFlushesTheDirtyThings() throws InterruptedException {
+        scanScheduler = scanScheduler(5);
+        scanScheduler.markDirty(thing("thing-1", true));
+
+        awaitStaleThing();
+
+        assertEquals(0, scanScheduler.getDirtyThingCount());
+        assertEquals(List.of("thing-1"), lastValueTable.drainStaleThings());
+    }
+
+    @Test
+    void scanCyclesStopOnDrain() throws InterruptedException {
+        scanScheduler = scanScheduler(5);
+        scanScheduler.markDirty(thing("thing-1", true));
+        awaitStaleThing();
+        scanScheduler.drain();
+        // lets a scan cycle which was running during the drain finish
+        Thread.sleep(20);
+
+        scanScheduler.markDirty(thing("thing-2", true));
+        Thread.sleep(50);
+
+        assertEquals(1, scanScheduler.getDirtyThingCount());
+    }
+
+    @Test
+    void thingIsPushedRightAwayWithoutScanInterval() {
+        scanScheduler = scanScheduler(0);
+
+        scanScheduler.markDirty(thing("thing-1", true));
+
+        assertEquals(0, scanScheduler.getDirtyThingCount());
+        assertEquals(List.of("thing-1"), lastValueTable.drainStaleThings());
+    }
+
+    private ScanScheduler scanScheduler(int scanIntervalInMillis) {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getScanIntervalInMillis()).thenReturn(scanIntervalInMillis);
+        when(appConfigModule.getScanJitterInMillis()).thenReturn(0);
+
+        ScanScheduler scheduler = new ScanScheduler();
+        scheduler.appConfigModule = appConfigModule;
+        scheduler.connectorHealth = mock(ConnectorHealth.class);
+        scheduler.stageTimers = mock(StageTimers.class);
+        scheduler.lastValueTable = lastValueTable;
+        scheduler.executionModel = mock(ExecutionModel.class);
+        scheduler.start();
+        return scheduler;
+    }
+
+    private AwsConnectedThing thing(String thingName, boolean bound) {
+        lastValueTable.record(thingName, Map.of("temperature", 21));
+        AwsConnectedThing thing = mock(AwsConnectedThing.class);
+        when(thing.getName()).thenReturn(thingName);
+        when(thing.isBound()).thenReturn(bound);
+        return thing;
+    }
+
+    private void awaitStaleThing() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lastValueTable.getStaleThingCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, lastValueTable.getStaleThingCount());
+    }
+}
@@ -0,0 +1,63 @@
+package software.amazon.samples.thingworx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ThingModelCacheTest {
+
+    private static final String MODEL = "{\"temperature\":{\"dataType\":\"NUMBER\"}}";
+
+    private final ThingModelCache thingModelCache = new ThingModelCache();
+    private final HashMap<String, Map<String, String>> model = new HashMap<>(Map.of("temperature", Map.of("dataType", "NUMBER")));
+
+    @Test
+    void fingerprintCoversOnlyTheModelCharacters() {
+        String message = "{\"thingName\":\"thing-1\",\"deviceModel\":" + MODEL + "}";
+        int start = message.indexOf(MODEL);
+
+        assertEquals(ThingModelCache.fingerprint(MODEL, 0, MODEL.length()), ThingModelCache.fingerprint(message, start, start + MODEL.length()));
+        assertNotEquals(ThingModelCache.fingerprint(MODEL, 0, MODEL.length()),
+                ThingModelCache.fingerprint(MODEL.replace("NUMBER", "STRING"), 0, MODEL.length()));
+    }
+
+    @Test
+    void modelIsReusedOnlyForTheSameThingAndFingerprint() {
+        long fingerprint = ThingModelCache.fingerprint(MODEL, 0, MODEL.length());
+        thingModelCache.put("thing-1", fingerprint, model);
+
+        assertSame(model, thingModelCache.get("thing-1", fingerprint));
+        assertNull(thingModelCache.get("thing-1", fingerprint + 1));
+        assertNull(thingModelCache.get("thing-2", fingerprint));
+        assertNull(thingModelCache.get(null, fingerprint));
+        assertEquals(1, thingModelCache.getHitCount());
+        assertEquals(3, thingModelCache.getMissCount());
+        assertEquals(0.25, thingModelCache.getHitRate());
+    }
+
+    @Test
+    void newerModelReplacesTheAppliedModel() {
+        HashMap<String, Map<String, String>> newerModel = new HashMap<>(Map.of("temperature", Map.of("dataType", "STRING")));
+        thingModelCache.put("thing-1", 1, model);
+        thingModelCache.put("thing-1", 2, newerModel);
+
+        assertNull(thingModelCache.get("thing-1", 1));
+        assertSame(newerModel, thingModelCache.get("thing-1", 2));
+    }
+
+    @Test
+    void unboundThingIsNotServedItsOldModel() {
+        thingModelCache.put("thing-1", 1, model);
+
+        thingModelCache.invalidate("thing-1");
+
+        assertNull(thingModelCache.get("thing-1", 1));
+        assertEquals(0, thingModelCache.getHitRate());
+    }
+}
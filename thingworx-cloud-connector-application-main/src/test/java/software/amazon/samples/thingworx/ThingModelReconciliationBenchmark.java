@@ -0,0 +1,99 @@
+package software.amazon.samples.thingworx;
+
+import com.thingworx.communications.client.ConnectedThingClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+import software.amazon.samples.deviceShadow.ThingworxPropertyChangeCallback;
+import software.amazon.samples.model.ThingModel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Cost of reconciling a thing with large models, when the model is unchanged and when one property changes its type.
+ * linearScanOfUnchangedModel repeats the check of the reconciliation this replaced, which scanned the model keys for every thing property.
+ * Run with {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ThingModelReconciliation}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ThingModelReconciliationBenchmark {
+
+    @Param({"500", "2000"})
+    int properties;
+
+    private AwsConnectedThing thing;
+    private ThingModel model;
+    private ThingModel[] retypedModels;
+    private int retypes;
+
+    @Setup
+    public void setUp() {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class, withSettings().stubOnly());
+        when(appConfigModule.getModelParametersDataTypeIndicator()).thenReturn("type");
+        thing = new AwsConnectedThing("thing-1", "", "", mock(ConnectedThingClient.class, withSettings().stubOnly()),
+                appConfigModule, mock(ThingworxPropertyChangeCallback.class, withSettings().stubOnly()));
+        model = model(properties, "NUMBER");
+        // the last property flips between the two types, so every invocation retypes exactly one property
+        retypedModels = new ThingModel[]{model(properties, "STRING"), model};
+        thing.updateProperties(model);
+    }
+
+    @Benchmark
+    public AwsConnectedThing unchangedModel() {
+        thing.updateProperties(model);
+        return thing;
+    }
+
+    @Benchmark
+    public AwsConnectedThing oneRetypedProperty() {
+        thing.updateProperties(retypedModels[retypes++ & 1]);
+        return thing;
+    }
+
+    @Benchmark
+    public boolean linearScanOfUnchangedModel() {
+        Set<String> modelKeys = model.getModel().keySet();
+        boolean changed = false;
+        for (String propertyName : thing.getProperties().keySet()) {
+            boolean inModel = false;
+            for (String modelKey : modelKeys) {
+                if (modelKey.equals(propertyName)) {
+                    inModel = true;
+                    break;
+                }
+            }
+            changed |= !inModel || !model.getModel().get(propertyName).get("type")
+                    .equalsIgnoreCase(thing.getProperty(propertyName).getPropertyDefinition().getBaseType().friendlyName());
+        }
+        return changed;
+    }
+
+    private static ThingModel model(int properties, String lastPropertyType) {
+        HashMap<String, Map<String, String>> attributes = new HashMap<>();
+        for (int i = 0; i < properties - 1; i++) {
+            attributes.put("property" + i, Map.of("type", "NUMBER"));
+        }
+        attributes.put("property" + (properties - 1), Map.of("type", lastPropertyType));
+        return new ThingModel("thing-1", "connected", attributes);
+    }
+}
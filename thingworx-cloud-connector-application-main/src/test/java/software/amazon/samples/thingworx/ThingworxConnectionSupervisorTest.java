@@ -0,0 +1,172 @@
+package software.amazon.samples.thingworx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.samples.configuration.awsAppconfig.AppConfigModule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The checks are run by the test, the scheduled check waits a minute.
+ */
+class ThingworxConnectionSupervisorTest {
+
+    private static final Map<String, Object> VALUES = Map.of("temperature", 20);
+
+    private final AtomicBoolean connectionUp = new AtomicBoolean();
+    private final AtomicBoolean connectSucceeds = new AtomicBoolean();
+    private final AtomicInteger connectAttempts = new AtomicInteger();
+    private final Set<String> waitingThings = ConcurrentHashMap.newKeySet();
+    private final Map<String, AwsConnectedThing> things = new HashMap<>();
+    private final LastValueTable lastValueTable = new LastValueTable();
+    private final ScanScheduler scanScheduler = mock(ScanScheduler.class);
+    private final ThingworxConnection connection = mock(ThingworxConnection.class);
+    private ThingworxConnectionSupervisor supervisor;
+
+    @BeforeEach
+    void start() {
+        when(connection.getIndex()).thenReturn(0);
+        when(connection.isConnected()).thenAnswer(invocation -> connectionUp.get());
+        supervisor = supervisor(2);
+    }
+
+    @AfterEach
+    void stop() {
+        supervisor.stop();
+    }
+
+    @Test
+    void lostConnectionIsNotRetriedBeforeTheBackoffDelay() {
+        supervisor.check();
+        supervisor.check();
+
+        assertEquals(1, connectAttempts.get());
+        assertEquals(0, supervisor.getReconnectCount());
+    }
+
+    @Test
+    void staleThingsArePushedAgainOnceReconnected() {
+        AwsConnectedThing thing = staleThing("thing-1");
+        connectSucceeds.set(true);
+
+        supervisor.check();
+        supervisor.check();
+
+        verify(thing).setPropertiesFromDevice(VALUES, true);
+        verify(scanScheduler).markDirty(thing);
+        assertEquals(1, supervisor.getReconnectCount());
+        assertEquals(1, supervisor.getResyncedThingCount());
+        assertEquals(0, lastValueTable.getStaleThingCount());
+        assertTrue(supervisor.getLastResyncDurationMillis() >= 0);
+    }
+
+    @Test
+    void atMostABatchOfThingsIsPushedPerCheck() {
+        connectionUp.set(true);
+        staleThing("thing-1");
+        staleThing("thing-2");
+        staleThing("thing-3");
+
+        supervisor.check();
+        assertEquals(2, supervisor.getResyncedThingCount());
+
+        supervisor.check();
+        assertEquals(3, supervisor.getResyncedThingCount());
+    }
+
+    @Test
+    void thingWaitsForItsOwnConnection() {
+        connectionUp.set(true);
+        AwsConnectedThing waiting = staleThing("thing-1");
+        waitingThings.add("thing-1");
+        AwsConnectedThing ready = staleThing("thing-2");
+
+        supervisor.check();
+
+        verify(waiting, never()).setPropertiesFromDevice(anyMap(), eq(true));
+        verify(ready).setPropertiesFromDevice(VALUES, true);
+
+        waitingThings.clear();
+        supervisor.check();
+
+        verify(waiting).setPropertiesFromDevice(VALUES, true);
+        assertEquals(2, supervisor.getResyncedThingCount());
+    }
+
+    @Test
+    void unboundThingIsDropped() {
+        connectionUp.set(true);
+        AwsConnectedThing thing = staleThing("thing-1");
+        when(thing.isBound()).thenReturn(false);
+
+        supervisor.check();
+
+        verify(thing, never()).setPropertiesFromDevice(anyMap(), eq(true));
+        verify(scanScheduler, never()).markDirty(any());
+        assertEquals(0, supervisor.getResyncedThingCount());
+    }
+
+    private AwsConnectedThing staleThing(String thingName) {
+        AwsConnectedThing thing = mock(AwsConnectedThing.class);
+        when(thing.isBound()).thenReturn(true);
+        when(thing.setPropertiesFromDevice(VALUES, true)).thenReturn(1);
+        things.put(thingName, thing);
+        lastValueTable.record(thingName, VALUES);
+        lastValueTable.markStale(thingName);
+        return thing;
+    }
+
+    private ThingworxConnectionSupervisor supervisor(int resyncBatchSize) {
+        AppConfigModule appConfigModule = mock(AppConfigModule.class);
+        when(appConfigModule.getSupervisorCheckIntervalInMillis()).thenReturn(60000);
+        when(appConfigModule.getReconnectBaseDelayInMillis()).thenReturn(60000);
+        when(appConfigModule.getReconnectMaxDelayInMillis()).thenReturn(60000);
+        when(appConfigModule.getResyncBatchSize()).thenReturn(resyncBatchSize);
+
+        ThingworxConnectionSupervisor supervisor = new ThingworxConnectionSupervisor() {
+            @Override
+            List<ThingworxConnection> getConnections() {
+                return List.of(connection);
+            }
+
+            @Override
+            boolean connect(ThingworxConnection connection) {
+                connectAttempts.incrementAndGet();
+                connectionUp.set(connectSucceeds.get());
+                return connectionUp.get();
+            }
+
+            @Override
+            boolean isConnected(String thingName) {
+                return connectionUp.get() && !waitingThings.contains(thingName);
+            }
+
+            @Override
+            AwsConnectedThing getThing(String thingName) {
+                return things.get(thingName);
+            }
+        };
+        supervisor.appConfigModule = appConfigModule;
+        supervisor.lastValueTable = lastValueTable;
+        supervisor.scanScheduler = scanScheduler;
+        supervisor.start();
+        return supervisor;
+    }
+}